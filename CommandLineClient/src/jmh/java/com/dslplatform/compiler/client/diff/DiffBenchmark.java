@@ -0,0 +1,66 @@
+package com.dslplatform.compiler.client.diff;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of diff engines on generated DSL files.
+ * Run with: mvn -P benchmark test-compile exec:java
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+	@Param({"200", "5000"})
+	public int lines;
+
+	//percentage of changed lines
+	@Param({"1", "20"})
+	public int changes;
+
+	private String previous;
+	private String current;
+
+	private final DiffEngine line = new LineDiff();
+	private final DiffEngine histogram = new HistogramDiff();
+
+	@Setup
+	public void setup() {
+		final Random rnd = new Random(42);
+		final StringBuilder before = new StringBuilder();
+		final StringBuilder after = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			final String line = "  aggregate Entity" + i + " { string(" + rnd.nextInt(100) + ") name; int? count; }\n";
+			before.append(line);
+			if (rnd.nextInt(100) >= changes) {
+				after.append(line);
+			} else if (rnd.nextBoolean()) {
+				after.append("  aggregate Renamed").append(i).append(" { string name; long count; }\n");
+			}
+		}
+		previous = before.toString();
+		current = after.toString();
+	}
+
+	@Benchmark
+	public List<diff_match_patch.Diff> legacy() {
+		return new diff_match_patch().diff_main(previous, current);
+	}
+
+	@Benchmark
+	public List<diff_match_patch.Diff> line() {
+		return line.diff(previous, current, Long.MAX_VALUE);
+	}
+
+	@Benchmark
+	public List<diff_match_patch.Diff> histogram() {
+		return histogram.diff(previous, current, Long.MAX_VALUE);
+	}
+}
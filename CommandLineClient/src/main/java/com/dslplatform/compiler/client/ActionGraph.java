@@ -0,0 +1,181 @@
+package com.dslplatform.compiler.client;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs parameter actions as soon as the actions they depend on are finished.
+ * Action depends on a previous action when one of them produces a resource the other one uses.
+ * Output of each action is shown in the order of parameters:
+ * the first unfinished action shows its output as it arrives, while others are recorded until its turn.
+ * First failure stops all other actions.
+ */
+final class ActionGraph {
+
+	private static class Node {
+		final CompileParameter parameter;
+		final Set<ActionResources.Resource> consumes;
+		final Set<ActionResources.Resource> produces;
+		final DeferredContext context;
+		final List<Node> dependencies = new ArrayList<Node>();
+		Future<?> future;
+		boolean done;
+
+		Node(final CompileParameter parameter, final Context parent) {
+			this.parameter = parameter;
+			if (parameter instanceof ActionResources) {
+				final ActionResources resources = (ActionResources) parameter;
+				this.consumes = resources.consumes(parent);
+				this.produces = resources.produces(parent);
+			} else {
+				this.consumes = null;
+				this.produces = null;
+			}
+			this.context = new DeferredContext(parent);
+		}
+
+		boolean isBarrier() {
+			return consumes == null || produces == null;
+		}
+
+		boolean conflicts(final Node other) {
+			return isBarrier() || other.isBarrier()
+					|| !Collections.disjoint(produces, other.consumes)
+					|| !Collections.disjoint(produces, other.produces)
+					|| !Collections.disjoint(consumes, other.produces);
+		}
+
+		boolean isReady() {
+			for (final Node d : dependencies) {
+				if (!d.done) return false;
+			}
+			return true;
+		}
+	}
+
+	static boolean isEnabled(final Context context) {
+		return !context.canInteract() && !"false".equals(System.getProperty("dsl-platform.parallel"));
+	}
+
+	static List<List<CompileParameter>> dependencies(final Context context, final List<CompileParameter> parameters) {
+		final List<Node> nodes = build(context, parameters);
+		final List<List<CompileParameter>> result = new ArrayList<List<CompileParameter>>(nodes.size());
+		for (final Node n : nodes) {
+			final List<CompileParameter> deps = new ArrayList<CompileParameter>(n.dependencies.size());
+			for (final Node d : n.dependencies) {
+				deps.add(d.parameter);
+			}
+			result.add(deps);
+		}
+		return result;
+	}
+
+	private static List<Node> build(final Context context, final List<CompileParameter> parameters) {
+		final List<Node> nodes = new ArrayList<Node>(parameters.size());
+		for (final CompileParameter cp : parameters) {
+			final Node node = new Node(cp, context);
+			for (final Node previous : nodes) {
+				if (node.conflicts(previous)) {
+					node.dependencies.add(previous);
+				}
+			}
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	private static Runnable action(final Node node) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Main.run(node.context, node.parameter);
+				} catch (ExitException ex) {
+					throw new ActionFailure(ex);
+				}
+			}
+		};
+	}
+
+	private static class ActionFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ActionFailure(final ExitException cause) {
+			super(cause);
+		}
+	}
+
+	static void run(final Context context, final List<CompileParameter> parameters) throws ExitException {
+		final List<Node> nodes = build(context, parameters);
+		final ExecutorCompletionService<Node> completion = new ExecutorCompletionService<Node>(ProcessExecutor.executor());
+		final Map<Future<Node>, Node> running = new HashMap<Future<Node>, Node>();
+		final Set<Node> submitted = new HashSet<Node>();
+		int head = 0;
+		int finished = 0;
+		try {
+			while (finished < nodes.size()) {
+				for (final Node n : nodes) {
+					if (!submitted.contains(n) && n.isReady()) {
+						submitted.add(n);
+						final Future<Node> f = completion.submit(action(n), n);
+						n.future = f;
+						running.put(f, n);
+					}
+				}
+				if (head < nodes.size() && submitted.contains(nodes.get(head))) {
+					nodes.get(head).context.goLive();
+				}
+				final Future<Node> f;
+				try {
+					f = completion.take();
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				final Node node = running.remove(f);
+				try {
+					f.get();
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				} catch (ExecutionException ex) {
+					failed(nodes, node);
+					final Throwable cause = ex.getCause();
+					if (cause instanceof ActionFailure) {
+						throw (ExitException) cause.getCause();
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new ExitException();
+				}
+				node.done = true;
+				finished++;
+				//show output of finished actions in order
+				while (head < nodes.size() && nodes.get(head).done) {
+					nodes.get(head).context.goLive();
+					head++;
+				}
+			}
+		} finally {
+			for (final Future<Node> f : running.keySet()) {
+				f.cancel(true);
+			}
+		}
+	}
+
+	//output of finished actions and the failed one is shown in order, while output of cancelled actions is dropped
+	private static void failed(final List<Node> nodes, final Node failure) {
+		for (final Node n : nodes) {
+			if (n.future != null && n != failure && !n.done) {
+				n.future.cancel(true);
+			}
+		}
+		for (final Node n : nodes) {
+			if (n.done || n == failure) {
+				n.context.goLive();
+			} else {
+				n.context.discard();
+			}
+		}
+	}
+}
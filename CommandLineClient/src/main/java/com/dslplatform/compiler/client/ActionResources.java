@@ -0,0 +1,23 @@
+package com.dslplatform.compiler.client;
+
+import java.util.Set;
+
+/**
+ * Resources used by the run action of a parameter.
+ * Action which will not run in the current context uses no resources.
+ * Actions which don't share resources can run at the same time.
+ * Parameters without this interface run after all previous actions and before all following ones.
+ */
+public interface ActionResources {
+	enum Resource {
+		DSL,
+		COMPILER,
+		LIBRARIES,
+		PREVIOUS_DSL,
+		MIGRATION
+	}
+
+	Set<Resource> consumes(final Context context);
+
+	Set<Resource> produces(final Context context);
+}
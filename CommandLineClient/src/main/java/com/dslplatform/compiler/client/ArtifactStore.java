@@ -0,0 +1,193 @@
+package com.dslplatform.compiler.client;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * User level content addressed store for downloaded dependencies.
+ * Files are stored by their SHA-256 and shared between projects.
+ * Dependency folders are recorded in an index and restored from the store
+ * by hard linking (or copying) files into the folder.
+ * Files are verified against their checksum when reused (once per process, unless they change).
+ */
+public abstract class ArtifactStore {
+
+	private static final Map<String, String> VERIFIED = new ConcurrentHashMap<String, String>();
+
+	public static boolean isEnabled() {
+		return !"false".equals(System.getProperty("dsl-platform.store"));
+	}
+
+	private static File root() {
+		return new File(Utils.getUserCachePath(), "store");
+	}
+
+	private static File blob(final String hash) {
+		return new File(new File(new File(root(), "sha256"), hash.substring(0, 2)), hash);
+	}
+
+	private static File index(final String key) {
+		try {
+			return new File(new File(root(), "index"), hex(MessageDigest.getInstance("SHA-256").digest(key.getBytes("UTF-8"))));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static String hex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	public static String sha256(final File file) throws IOException {
+		return Utils.checksum(file, "SHA-256");
+	}
+
+	private static boolean verify(final Context context, final String hash) throws IOException {
+		final File blob = blob(hash);
+		if (!blob.isFile()) {
+			return false;
+		}
+		final String stamp = blob.length() + ":" + blob.lastModified();
+		if (stamp.equals(VERIFIED.get(hash))) {
+			return true;
+		}
+		if (!hash.equals(sha256(blob))) {
+			context.warning("Corrupted file found in dependency store: " + blob.getAbsolutePath());
+			if (!blob.delete()) {
+				context.warning("Unable to remove corrupted file: " + blob.getAbsolutePath());
+			}
+			return false;
+		}
+		VERIFIED.put(hash, stamp);
+		return true;
+	}
+
+	private static void collect(final File folder, final String prefix, final Map<String, File> files) {
+		final File[] children = folder.listFiles();
+		if (children == null) return;
+		for (final File f : children) {
+			if (f.isDirectory()) {
+				collect(f, prefix + f.getName() + "/", files);
+			} else {
+				files.put(prefix + f.getName(), f);
+			}
+		}
+	}
+
+	/**
+	 * Restore previously recorded folder content from the store.
+	 *
+	 * @param context context for logging
+	 * @param key     identity of the folder content, eg. download url with version info
+	 * @param folder  target folder
+	 * @return true if all files were found in the store and restored
+	 */
+	public static boolean restore(final Context context, final String key, final File folder) {
+		if (!isEnabled()) return false;
+		final File index = index(key);
+		if (!index.isFile()) return false;
+		final Properties manifest = new Properties();
+		try {
+			final InputStream is = new FileInputStream(index);
+			try {
+				manifest.load(is);
+			} finally {
+				is.close();
+			}
+			for (final String path : manifest.stringPropertyNames()) {
+				if (!verify(context, manifest.getProperty(path))) {
+					context.log("Dependency store is missing " + path + " for " + key);
+					return false;
+				}
+			}
+			for (final String path : manifest.stringPropertyNames()) {
+				final File target = new File(folder, path);
+				final File parent = target.getParentFile();
+				if (!parent.exists() && !parent.mkdirs()) {
+					throw new IOException("Unable to create folder: " + parent.getAbsolutePath());
+				}
+				FileSync.copyFile(blob(manifest.getProperty(path)), target);
+			}
+		} catch (IOException ex) {
+			context.warning("Unable to restore dependencies from store: " + ex.getMessage());
+			return false;
+		}
+		context.show("Restored " + manifest.size() + " files from dependency store into " + folder.getAbsolutePath());
+		return true;
+	}
+
+	/**
+	 * Move folder content into the store and record it under the specified key.
+	 * Files in the folder are replaced with links into the store when possible.
+	 * Failures are reported as warnings since store is only an optimization.
+	 *
+	 * @param context context for logging
+	 * @param key     identity of the folder content
+	 * @param folder  folder with downloaded files
+	 */
+	public static void record(final Context context, final String key, final File folder) {
+		if (!isEnabled()) return;
+		final Map<String, File> files = new TreeMap<String, File>();
+		collect(folder, "", files);
+		if (files.isEmpty()) return;
+		final Properties manifest = new Properties();
+		try {
+			for (final Map.Entry<String, File> kv : files.entrySet()) {
+				final File file = kv.getValue();
+				final String hash = sha256(file);
+				final File blob = blob(hash);
+				//existing file is checked, so a corrupted one is replaced instead of shared
+				if (!verify(context, hash)) {
+					final File parent = blob.getParentFile();
+					if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+						throw new IOException("Unable to create folder: " + parent.getAbsolutePath());
+					}
+					final File tmp = new File(parent, hash + "." + UUID.randomUUID() + ".tmp");
+					FileSync.copyFile(file, tmp);
+					if (!tmp.renameTo(blob)) {
+						blob.delete();
+						final boolean moved = tmp.renameTo(blob);
+						tmp.delete();
+						//another process could have stored the same file in the meantime
+						if (!moved && !verify(context, hash)) {
+							throw new IOException("Unable to store file: " + blob.getAbsolutePath());
+						}
+					}
+				}
+				VERIFIED.put(hash, blob.length() + ":" + blob.lastModified());
+				//replace downloaded file with a link to the stored one
+				FileSync.shareFile(blob, file);
+				manifest.setProperty(kv.getKey(), hash);
+			}
+			final File index = index(key);
+			final File parent = index.getParentFile();
+			if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+				throw new IOException("Unable to create folder: " + parent.getAbsolutePath());
+			}
+			final File tmp = new File(parent, index.getName() + "." + UUID.randomUUID() + ".tmp");
+			final OutputStream os = new FileOutputStream(tmp);
+			try {
+				manifest.store(os, key);
+			} finally {
+				os.close();
+			}
+			if (!tmp.renameTo(index)) {
+				if (!index.delete() || !tmp.renameTo(index)) {
+					tmp.delete();
+				}
+			}
+			context.log("Recorded " + files.size() + " files from " + folder.getAbsolutePath() + " in dependency store");
+		} catch (IOException ex) {
+			context.warning("Unable to record dependencies in store: " + ex.getMessage());
+		}
+	}
+}
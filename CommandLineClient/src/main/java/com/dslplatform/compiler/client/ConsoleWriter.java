@@ -0,0 +1,127 @@
+package com.dslplatform.compiler.client;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+
+/**
+ * Writes console output from a background thread.
+ * Messages are kept in a bounded ring buffer and written in batches with a single flush,
+ * so callers don't wait on console I/O. When the buffer is full callers wait for the writer.
+ * Messages are written in the order they were added.
+ */
+final class ConsoleWriter implements Closeable {
+
+	static final int DEFAULT_CAPACITY = 4096;
+
+	private final PrintStream console;
+	private final String[] ring;
+	private final Thread thread;
+	private int head;
+	private int count;
+	private boolean writing;
+	private boolean closed;
+
+	ConsoleWriter(final PrintStream console, final int capacity) {
+		this.console = console;
+		this.ring = new String[capacity];
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "dsl-clc-console");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	void write(final String value) {
+		synchronized (this) {
+			if (!closed) {
+				while (count == ring.length) {
+					try {
+						wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				if (count < ring.length) {
+					ring[(head + count) % ring.length] = value;
+					count++;
+					if (count == 1) notifyAll();
+					return;
+				}
+			}
+		}
+		//closed or interrupted while waiting. Write directly after everything already queued
+		flush();
+		synchronized (console) {
+			console.print(value);
+			console.flush();
+		}
+	}
+
+	private void drain() {
+		final String[] batch = new String[ring.length];
+		while (true) {
+			final int size;
+			synchronized (this) {
+				while (count == 0 && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException ignore) {
+					}
+				}
+				if (count == 0) return;
+				size = count;
+				for (int i = 0; i < size; i++) {
+					final int index = (head + i) % ring.length;
+					batch[i] = ring[index];
+					ring[index] = null;
+				}
+				head = (head + size) % ring.length;
+				count = 0;
+				writing = true;
+				notifyAll();
+			}
+			synchronized (console) {
+				for (int i = 0; i < size; i++) {
+					console.print(batch[i]);
+					batch[i] = null;
+				}
+				console.flush();
+			}
+			synchronized (this) {
+				writing = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Wait until all queued messages are written.
+	 */
+	synchronized void flush() {
+		while ((count > 0 || writing) && thread.isAlive()) {
+			try {
+				wait();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
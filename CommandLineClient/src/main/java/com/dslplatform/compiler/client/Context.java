@@ -8,25 +8,60 @@ import org.fusesource.jansi.Ansi.Color;
 import org.fusesource.jansi.AnsiConsole;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Parameters, cached objects and output of a run.
+ * Context is safe to use from concurrent actions.
+ * Cached objects can be accessed through typed keys,
+ * while work which needs its own parameters, cache or output prefix can use a {@link ScopedContext}.
+ */
 public class Context implements Closeable {
-	private final Map<String, String> parameters = new HashMap<String, String>();
-	private final Map<String, Object> cache = new HashMap<String, Object>();
 
-	private PrintStream console;
+	/**
+	 * Typed name of a cached object.
+	 */
+	public static final class Key<T> {
+		public final String name;
 
-	private boolean withLog;
-	private boolean noPrompt;
-	private boolean withColor = true;
+		public Key(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	//concurrent maps don't allow nulls, while parameters without value are common
+	private static final String NO_VALUE = new String("");
+
+	private final ConcurrentMap<String, String> parameters = new ConcurrentHashMap<String, String>();
+	//cache can be populated from background tasks
+	private final ConcurrentMap<String, Object> cache = new ConcurrentHashMap<String, Object>();
+
+	private volatile PrintStream console;
+	//only the process console is replaced when colors are disabled
+	private final boolean systemConsole;
+	//with log enabled output goes through an asynchronous writer, since there is a lot of it
+	private ConsoleWriter writer;
+	private Thread flushOnExit;
+
+	private volatile boolean withLog;
+	private volatile boolean noPrompt;
+	private volatile boolean withColor = true;
 
 	public Context() {
-		this(AnsiConsole.out());
+		this.console = AnsiConsole.out();
+		this.systemConsole = true;
 	}
 
 	protected Context(PrintStream console) {
 		this.console = console;
+		this.systemConsole = false;
 	}
 
 	public void put(final CompileParameter parameter, final String value) {
@@ -36,13 +71,15 @@ public class Context implements Closeable {
 			withLog = true;
 		} else if (parameter instanceof DisableColors) {
 			withColor = false;
-			console = System.out;
+			if (systemConsole) {
+				console = System.out;
+			}
 		}
-		parameters.put(parameter.getAlias(), value);
+		parameters.put(parameter.getAlias(), value != null ? value : NO_VALUE);
 	}
 
 	public void put(final String parameter, final String value) {
-		parameters.put(parameter.toLowerCase(), value);
+		parameters.put(parameter.toLowerCase(), value != null ? value : NO_VALUE);
 	}
 
 	public boolean contains(final CompileParameter parameter) {
@@ -54,19 +91,53 @@ public class Context implements Closeable {
 	}
 
 	public String get(final CompileParameter parameter) {
-		return parameters.get(parameter.getAlias());
+		final String value = parameters.get(parameter.getAlias());
+		return value != NO_VALUE ? value : null;
 	}
 
 	public String get(final String parameter) {
-		return parameters.get(parameter.toLowerCase());
+		final String value = parameters.get(parameter.toLowerCase());
+		return value != NO_VALUE ? value : null;
 	}
 
+	/**
+	 * Cache object under the specified name. Null value removes the cached object.
+	 */
 	public void cache(final String name, final Object value) {
-		cache.put(name, value);
+		if (value == null) {
+			cache.remove(name);
+		} else {
+			cache.put(name, value);
+		}
+	}
+
+	public <T> void cache(final Key<T> key, final T value) {
+		cache(key.name, value);
+	}
+
+	/**
+	 * Cache object unless some other object is already cached under the same name.
+	 *
+	 * @return object in the cache after the call
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T cacheIfAbsent(final String name, final T value) {
+		final Object existing = cache.putIfAbsent(name, value);
+		return existing != null ? (T) existing : value;
+	}
+
+	public <T> T cacheIfAbsent(final Key<T> key, final T value) {
+		return cacheIfAbsent(key.name, value);
 	}
 
 	public <T> T notify(final String action, final T target) {
-		log("Notify: " + action + " for " + target);
+		final Profiler profiler = load(Profiler.KEY);
+		if (profiler != null) {
+			profiler.mark(action);
+		}
+		if (withLog) {
+			log("Notify: " + action + " for " + target);
+		}
 		return target;
 	}
 
@@ -75,6 +146,54 @@ public class Context implements Closeable {
 		return (T) cache.get(name);
 	}
 
+	public <T> T load(final Key<T> key) {
+		return this.<T>load(key.name);
+	}
+
+	private static final String NEW_LINE = System.getProperty("line.separator");
+
+	private synchronized ConsoleWriter asyncWriter() {
+		if (writer == null) {
+			final ConsoleWriter cw = new ConsoleWriter(console, ConsoleWriter.DEFAULT_CAPACITY);
+			//output must be written when the process exits without closing the context
+			flushOnExit = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					cw.close();
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(flushOnExit);
+			writer = cw;
+		}
+		return writer;
+	}
+
+	private void write(final boolean newLine, final String... values) {
+		if (!withLog || "false".equals(System.getProperty("dsl-platform.async-console"))) {
+			write(console, newLine, values);
+			return;
+		}
+		final ConsoleWriter cw = asyncWriter();
+		if (values.length == 0) {
+			cw.write(NEW_LINE);
+		} else if (values.length == 1) {
+			cw.write(newLine ? values[0] + NEW_LINE : values[0]);
+		} else {
+			final StringBuilder sb = new StringBuilder();
+			for (final String v : values) {
+				sb.append(v);
+				if (newLine) sb.append(NEW_LINE);
+			}
+			cw.write(sb.toString());
+		}
+	}
+
+	protected synchronized void flushConsole() {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
 	private static synchronized void write(final PrintStream console, final boolean newLine, final String... values) {
 		if (values.length == 0) {
 			console.println();
@@ -93,34 +212,39 @@ public class Context implements Closeable {
 	}
 
 	public void show(final String... values) {
-		write(console, true, values);
+		write(true, values);
 	}
 
 	public static String inColor(final Ansi.Color color, final String message) {
 		return Ansi.ansi().fg(color).a(message).reset().toString();
 	}
 
+	public boolean isLogEnabled() {
+		return withLog;
+	}
+
 	public void log(final String value) {
 		if (withLog) {
-			write(console, true, withColor ? inColor(Color.YELLOW, value) : value);
+			write(true, withColor ? inColor(Color.YELLOW, value) : value);
 		}
 	}
 
 	public void log(final char[] value, final int len) {
 		if (withLog) {
 			final String msg = new String(value, 0, len);
-			write(console, false, withColor ? inColor(Color.YELLOW, msg) : msg);
+			write(false, withColor ? inColor(Color.YELLOW, msg) : msg);
 		}
 	}
 
 
 	public void warning(final String value) {
-		write(console, true, withColor ? inColor(Color.MAGENTA, value) : value);
+		write(true, withColor ? inColor(Color.MAGENTA, value) : value);
 	}
 
 	public void warning(final Exception ex) {
 		warning(ex.getMessage());
-		if (withLog) {
+		//scoped contexts take log setting from their parent
+		if (isLogEnabled()) {
 			final StringWriter sw = new StringWriter();
 			ex.printStackTrace(new PrintWriter(sw));
 			warning(sw.toString());
@@ -128,7 +252,7 @@ public class Context implements Closeable {
 	}
 
 	public void error(final String value) {
-		write(console, true, withColor ? inColor(Color.RED, value) : value);
+		write(true, withColor ? inColor(Color.RED, value) : value);
 	}
 
 	public void error(final Exception ex) {
@@ -136,7 +260,7 @@ public class Context implements Closeable {
 		final String description = ex.getMessage();
 		if (description == null) error(ex.getClass().getName() + " error without description");
 		else error(description);
-		if (withLog) {
+		if (isLogEnabled()) {
 			final StringWriter sw = new StringWriter();
 			ex.printStackTrace(new PrintWriter(sw));
 			error(sw.toString());
@@ -148,6 +272,7 @@ public class Context implements Closeable {
 	}
 
 	private void askSafe(final String question, final Color color) {
+		flushConsole();
 		if (withColor) {
 			try {
 				write(console, false, Ansi.ansi().fgBright(color).bold().a(question + " ").boldOff().reset().toString());
@@ -172,7 +297,7 @@ public class Context implements Closeable {
 
 	@Override
 	public void close() {
-		for (Object it : cache.values()) {
+		for (Object it : new ArrayList<Object>(cache.values())) {
 			if (it instanceof Closeable) {
 				try {
 					((Closeable) it).close();
@@ -181,5 +306,15 @@ public class Context implements Closeable {
 				}
 			}
 		}
+		synchronized (this) {
+			if (writer != null) {
+				writer.close();
+				writer = null;
+				try {
+					Runtime.getRuntime().removeShutdownHook(flushOnExit);
+				} catch (IllegalStateException ignore) {
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,300 @@
+package com.dslplatform.compiler.client;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Thin client for a resident dsl-clc process ({@link DaemonServer}).
+ * Arguments are forwarded to the daemon started in the current folder,
+ * while its output is streamed back and questions are answered from this console.
+ * Only JDK classes are used, so the client doesn't pay for loading and warming up the compiler client.
+ * Environment and dsl-platform system properties are sent too.
+ * When they differ from the daemon ones, arguments are processed locally.
+ */
+public final class DaemonClient {
+
+	static final String RUN = "run";
+	static final String STOP = "stop";
+
+	static final byte OUTPUT = 'O';
+	static final byte ASK = 'A';
+	static final byte EXIT = 'X';
+	static final byte REJECTED = 'R';
+
+	private static final int CONNECT_TIMEOUT = 1000;
+	private static final int MAX_TEXT = 1 << 20;
+
+	//variables of the shell session which don't change how arguments are processed
+	private static final Set<String> SESSION_VARIABLES = new HashSet<String>(Arrays.asList(
+			"_", "PWD", "OLDPWD", "SHLVL", "PS1", "PROMPT", "TERM", "TERM_SESSION_ID", "TERM_PROGRAM",
+			"TERM_PROGRAM_VERSION", "COLUMNS", "LINES", "WINDOWID", "SSH_TTY", "SSH_CLIENT", "SSH_CONNECTION"));
+	//properties which are used only to start the client or the daemon
+	private static final Set<String> PROCESS_PROPERTIES = new HashSet<String>(Arrays.asList(
+			"dsl-platform.daemon", "dsl-platform.daemon-idle"));
+
+	static boolean isEnabled() {
+		return !"false".equals(System.getProperty("dsl-platform.daemon"));
+	}
+
+	/**
+	 * Daemon command when it's the only argument.
+	 *
+	 * @return start, stop or null when arguments should be processed
+	 */
+	static String command(final String[] args) {
+		if (args.length != 1) return null;
+		String arg = args[0];
+		if (arg.startsWith("-") || arg.startsWith("/")) arg = arg.substring(1);
+		if ("daemon".equalsIgnoreCase(arg)) return "start";
+		if ("daemon=stop".equalsIgnoreCase(arg)) return STOP;
+		return null;
+	}
+
+	static File portFile(final String folder) {
+		final String custom = System.getProperty("dsl-platform.cache");
+		final File cache = custom != null
+				? new File(custom)
+				: new File(System.getProperty("user.home"), ".dsl-platform");
+		final StringBuilder name = new StringBuilder("daemon-");
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			for (final byte b : md.digest(folder.getBytes("UTF-8"))) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+		} catch (Exception ex) {
+			name.append(Integer.toHexString(folder.hashCode()));
+		}
+		return new File(cache, name.append(".port").toString());
+	}
+
+	static String currentFolder() {
+		try {
+			return new File(".").getCanonicalPath();
+		} catch (IOException ex) {
+			return new File(".").getAbsolutePath();
+		}
+	}
+
+	//daemon started from a different build of the client must not be used
+	static String codeVersion() {
+		try {
+			final URL location = DaemonClient.class.getProtectionDomain().getCodeSource().getLocation();
+			final File code = new File(location.toURI());
+			return code.getAbsolutePath() + ":" + code.lastModified();
+		} catch (Exception ex) {
+			return "unknown";
+		}
+	}
+
+	/**
+	 * Environment variables and dsl-platform system properties which a run depends on.
+	 * Variables are used by toolchain discovery, Maven and started processes,
+	 * while properties switch optimizations on and off.
+	 */
+	static Map<String, String> environment() {
+		final Map<String, String> result = new TreeMap<String, String>();
+		for (final Map.Entry<String, String> kv : System.getenv().entrySet()) {
+			if (!SESSION_VARIABLES.contains(kv.getKey())) {
+				result.put("env." + kv.getKey(), kv.getValue());
+			}
+		}
+		for (final String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("dsl-platform.") && !PROCESS_PROPERTIES.contains(name)) {
+				result.put(name, System.getProperty(name));
+			}
+		}
+		return result;
+	}
+
+	//writeUTF is limited to 64KB, which is not enough for all values
+	static void writeText(final DataOutputStream os, final String value) throws IOException {
+		final byte[] bytes = value.getBytes("UTF-8");
+		os.writeInt(bytes.length);
+		os.write(bytes);
+	}
+
+	static String readText(final DataInputStream is) throws IOException {
+		final int length = is.readInt();
+		if (length < 0 || length > MAX_TEXT) {
+			throw new IOException("Invalid text length: " + length);
+		}
+		final byte[] bytes = new byte[length];
+		is.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	static void writeEnvironment(final DataOutputStream os, final Map<String, String> environment) throws IOException {
+		os.writeInt(environment.size());
+		for (final Map.Entry<String, String> kv : environment.entrySet()) {
+			writeText(os, kv.getKey());
+			writeText(os, kv.getValue());
+		}
+	}
+
+	static Map<String, String> readEnvironment(final DataInputStream is) throws IOException {
+		final int size = is.readInt();
+		if (size < 0 || size > MAX_TEXT) {
+			throw new IOException("Invalid environment size: " + size);
+		}
+		final Map<String, String> result = new TreeMap<String, String>();
+		for (int i = 0; i < size; i++) {
+			result.put(readText(is), readText(is));
+		}
+		return result;
+	}
+
+	private static Socket connect(final File portFile, final String command, final String folder) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(portFile), "UTF-8"));
+		final int port;
+		final String token;
+		try {
+			port = Integer.parseInt(reader.readLine());
+			token = reader.readLine();
+		} catch (NumberFormatException ex) {
+			throw new IOException("Invalid daemon file: " + portFile.getAbsolutePath());
+		} finally {
+			reader.close();
+		}
+		final Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress("127.0.0.1", port), CONNECT_TIMEOUT);
+			final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			os.writeUTF(token);
+			os.writeUTF(command);
+			os.writeUTF(folder);
+			os.writeUTF(codeVersion());
+			writeEnvironment(os, environment());
+			os.flush();
+			return socket;
+		} catch (IOException ex) {
+			socket.close();
+			throw ex;
+		}
+	}
+
+	static boolean isRunning(final File portFile) {
+		if (!portFile.exists()) return false;
+		try {
+			connect(portFile, "ping", "").close();
+			return true;
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Run arguments on the daemon started in the current folder.
+	 *
+	 * @return exit code, or null when there is no such daemon and arguments should be processed locally
+	 */
+	public static Integer run(final String[] args) {
+		final String folder = currentFolder();
+		final boolean terminal = System.console() != null;
+		//on Windows escape codes are shown through jansi, as in the local run
+		final PrintStream out = terminal && System.getProperty("os.name").toLowerCase().contains("windows")
+				? org.fusesource.jansi.AnsiConsole.out()
+				: System.out;
+		return run(portFile(folder), folder, args, terminal, out);
+	}
+
+	static Integer run(
+			final File portFile,
+			final String folder,
+			final String[] args,
+			final boolean terminal,
+			final PrintStream out) {
+		if (!portFile.exists()) return null;
+		final Socket socket;
+		try {
+			socket = connect(portFile, RUN, folder);
+		} catch (IOException ex) {
+			//daemon is not running anymore
+			portFile.delete();
+			return null;
+		}
+		try {
+			final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			os.writeBoolean(terminal);
+			os.writeInt(args.length);
+			for (final String a : args) {
+				os.writeUTF(a);
+			}
+			os.flush();
+			final DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			byte[] buffer = new byte[8192];
+			while (true) {
+				final byte kind = is.readByte();
+				if (kind == REJECTED) {
+					return null;
+				} else if (kind == OUTPUT) {
+					final int length = is.readInt();
+					if (length > buffer.length) {
+						buffer = new byte[length];
+					}
+					is.readFully(buffer, 0, length);
+					out.write(buffer, 0, length);
+					out.flush();
+				} else if (kind == ASK) {
+					final String question = is.readUTF();
+					final boolean secret = is.readBoolean();
+					os.writeUTF(ask(out, question, secret));
+					os.flush();
+				} else if (kind == EXIT) {
+					return is.readInt();
+				} else {
+					throw new IOException("Unknown message from daemon: " + kind);
+				}
+			}
+		} catch (IOException ex) {
+			out.println("Connection to daemon lost: " + ex.getMessage());
+			out.flush();
+			return 1;
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	private static String ask(final PrintStream out, final String question, final boolean secret) {
+		out.print(question + " ");
+		out.flush();
+		final Console console = System.console();
+		if (console == null) return "";
+		if (secret) {
+			final char[] value = console.readPassword();
+			return value != null ? new String(value) : "";
+		}
+		final String value = console.readLine();
+		return value != null ? value : "";
+	}
+
+	/**
+	 * Stop the daemon started in the current folder.
+	 *
+	 * @return false when daemon is not running
+	 */
+	public static boolean stop() {
+		return stop(portFile(currentFolder()));
+	}
+
+	static boolean stop(final File portFile) {
+		if (!portFile.exists()) return false;
+		try {
+			final Socket socket = connect(portFile, STOP, "");
+			try {
+				return new DataInputStream(socket.getInputStream()).readByte() == EXIT;
+			} finally {
+				socket.close();
+			}
+		} catch (IOException ex) {
+			portFile.delete();
+			return false;
+		}
+	}
+}
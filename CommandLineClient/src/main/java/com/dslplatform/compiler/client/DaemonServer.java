@@ -0,0 +1,442 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.parameters.DisableColors;
+import com.dslplatform.compiler.client.parameters.DisablePrompt;
+import com.dslplatform.compiler.client.parameters.Download;
+import com.dslplatform.compiler.client.parameters.DslCompiler;
+
+import java.io.*;
+import java.net.*;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Resident dsl-clc process, started with the daemon option and used through {@link DaemonClient}.
+ * It serves runs from the folder where it was started, one at a time.
+ * Client connecting while a run is in progress is rejected and processes its arguments locally.
+ * Classes, JIT compiled code, discovered plugins and process wide caches
+ * (toolchain discovery, download versions, verified artifacts) stay warm between runs.
+ * DSL compiler used by a run is kept in server mode and reused by following runs
+ * which don't specify compiler, download or properties.
+ * Port and access token are saved in a file readable only by the current user.
+ * Runs from clients with a different environment or dsl-platform properties are processed by the client,
+ * since they could be processed differently.
+ */
+public final class DaemonServer implements Closeable {
+
+	private static final int DEFAULT_IDLE_MINUTES = 180;
+	private static final int COMPILER_PROBE_TIMEOUT = 200;
+	private static final int HANDSHAKE_TIMEOUT = 10000;
+
+	private final Context context;
+	private final List<CompileParameter> parameters;
+	private final String folder;
+	private final File portFile;
+	private final String token;
+	private final String codeVersion;
+	private final Map<String, String> environment;
+	private final ServerSocket server;
+	//only one run at a time, since runs share the warm compiler and the project folder
+	private final Semaphore running = new Semaphore(1);
+
+	private DslCompiler.TokenParser compiler;
+	private File compilerPath;
+
+	DaemonServer(
+			final Context context,
+			final List<CompileParameter> parameters,
+			final String folder,
+			final File portFile) throws IOException {
+		this.context = context;
+		this.parameters = parameters;
+		this.folder = folder;
+		this.portFile = portFile;
+		this.codeVersion = DaemonClient.codeVersion();
+		this.environment = DaemonClient.environment();
+		final byte[] secret = new byte[16];
+		new SecureRandom().nextBytes(secret);
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : secret) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		this.token = sb.toString();
+		this.server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		try {
+			savePortFile();
+		} catch (IOException ex) {
+			server.close();
+			throw ex;
+		}
+	}
+
+	private void savePortFile() throws IOException {
+		final File parent = portFile.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Unable to create folder for daemon file: " + parent.getAbsolutePath());
+		}
+		portFile.delete();
+		if (!portFile.createNewFile()) {
+			throw new IOException("Unable to create daemon file: " + portFile.getAbsolutePath());
+		}
+		portFile.setReadable(false, false);
+		portFile.setWritable(false, false);
+		portFile.setReadable(true, true);
+		portFile.setWritable(true, true);
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(portFile), "UTF-8");
+		try {
+			writer.write(server.getLocalPort() + "\n" + token + "\n");
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Start daemon for the current folder and serve runs until stopped or idle.
+	 *
+	 * @return exit code
+	 */
+	public static int serve() {
+		final Context context = new Context();
+		final String folder = DaemonClient.currentFolder();
+		final File portFile = DaemonClient.portFile(folder);
+		if (DaemonClient.isRunning(portFile)) {
+			context.error("Daemon is already running for: " + folder);
+			return 1;
+		}
+		final List<CompileParameter> parameters = Main.initializeParameters(context, ".");
+		final DaemonServer daemon;
+		try {
+			daemon = new DaemonServer(context, parameters, folder, portFile);
+		} catch (IOException ex) {
+			context.error("Unable to start daemon");
+			context.error(ex);
+			return 1;
+		}
+		final Thread cleanup = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				daemon.close();
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(cleanup);
+		context.show("DSL Platform daemon started for: " + folder);
+		daemon.serve(idleMillis());
+		context.show("DSL Platform daemon stopped");
+		daemon.close();
+		context.close();
+		return 0;
+	}
+
+	private static int idleMillis() {
+		final String value = System.getProperty("dsl-platform.daemon-idle");
+		try {
+			return (value != null ? Integer.parseInt(value) : DEFAULT_IDLE_MINUTES) * 60000;
+		} catch (NumberFormatException ex) {
+			return DEFAULT_IDLE_MINUTES * 60000;
+		}
+	}
+
+	/**
+	 * Serve runs until stopped or no connection arrives in the specified time.
+	 * Connections are handled on their own threads, so a busy daemon can reject them right away.
+	 */
+	void serve(final int idleMillis) {
+		try {
+			server.setSoTimeout(idleMillis);
+		} catch (SocketException ignore) {
+		}
+		while (!server.isClosed()) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (SocketTimeoutException ex) {
+				//long run is not idle time
+				if (running.availablePermits() == 0) {
+					continue;
+				}
+				context.show("Stopping idle daemon");
+				break;
+			} catch (IOException ex) {
+				break;
+			}
+			final Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					connection(socket);
+				}
+			}, "dsl-clc-daemon-connection");
+			worker.setDaemon(true);
+			worker.start();
+		}
+		stopAccepting();
+		//run in progress is finished before the daemon is closed
+		running.acquireUninterruptibly();
+		running.release();
+	}
+
+	private void connection(final Socket socket) {
+		try {
+			if (!handle(socket)) {
+				stopAccepting();
+			}
+		} catch (IOException ex) {
+			context.log("Daemon connection failed: " + ex.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	private void stopAccepting() {
+		try {
+			server.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+	//returns false when daemon should stop
+	private boolean handle(final Socket socket) throws IOException {
+		socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+		final DataInputStream is = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (!token.equals(is.readUTF())) {
+			context.warning("Daemon connection with invalid token rejected");
+			return true;
+		}
+		final String command = is.readUTF();
+		final String clientFolder = is.readUTF();
+		final String clientVersion = is.readUTF();
+		final Map<String, String> clientEnvironment = DaemonClient.readEnvironment(is);
+		if (DaemonClient.STOP.equals(command)) {
+			os.writeByte(DaemonClient.EXIT);
+			os.writeInt(0);
+			os.flush();
+			return false;
+		} else if (!DaemonClient.RUN.equals(command)) {
+			return true;
+		}
+		final boolean terminal = is.readBoolean();
+		final String[] args = new String[is.readInt()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = is.readUTF();
+		}
+		//paths are resolved from the daemon folder, so other folders are processed by the client
+		if (!folder.equals(clientFolder)
+				|| !codeVersion.equals(clientVersion)
+				|| !environment.equals(clientEnvironment)) {
+			os.writeByte(DaemonClient.REJECTED);
+			os.flush();
+			if (!codeVersion.equals(clientVersion)) {
+				context.show("Stopping daemon since client was updated");
+				return false;
+			}
+			if (!environment.equals(clientEnvironment)) {
+				context.log("Run left to the client due to different settings: " + differences(clientEnvironment));
+			}
+			return true;
+		}
+		if (!running.tryAcquire()) {
+			os.writeByte(DaemonClient.REJECTED);
+			os.flush();
+			context.log("Run left to the client since daemon is busy");
+			return true;
+		}
+		final Channel channel = new Channel(is, os);
+		final int code;
+		try {
+			//answers to questions can take a while
+			socket.setSoTimeout(0);
+			final RemoteContext remote = new RemoteContext(channel, terminal);
+			code = run(remote, args);
+			remote.close();
+		} finally {
+			//released before the exit code is sent, so the next run from the same client is accepted
+			running.release();
+		}
+		channel.exit(code);
+		return true;
+	}
+
+	private String differences(final Map<String, String> clientEnvironment) {
+		final TreeSet<String> names = new TreeSet<String>(environment.keySet());
+		names.addAll(clientEnvironment.keySet());
+		final StringBuilder sb = new StringBuilder();
+		for (final String name : names) {
+			final String value = environment.get(name);
+			if (value == null || !value.equals(clientEnvironment.get(name))) {
+				sb.append(sb.length() == 0 ? "" : ", ").append(name);
+			}
+		}
+		return sb.toString();
+	}
+
+	int run(final Context remote, final String[] args) {
+		final long start = System.currentTimeMillis();
+		if (!Main.parse(args, remote, parameters)) {
+			return 2;
+		}
+		final boolean warm = useWarmCompiler(remote);
+		final boolean success = Main.processContext(remote, parameters);
+		if (success && !warm) {
+			keepCompilerWarm(remote);
+		}
+		context.log("Daemon run finished in " + (System.currentTimeMillis() - start) + "ms");
+		return success ? 0 : 1;
+	}
+
+	private boolean useWarmCompiler(final Context remote) {
+		if (compiler == null
+				|| remote.contains(DslCompiler.INSTANCE)
+				|| remote.contains(Download.INSTANCE)
+				|| remote.contains("properties")
+				|| !compilerPath.isFile()) {
+			return false;
+		}
+		final Socket probe = new Socket();
+		try {
+			probe.connect(new InetSocketAddress("127.0.0.1", compiler.getPort()), COMPILER_PROBE_TIMEOUT);
+		} catch (IOException ex) {
+			return false;
+		} finally {
+			try {
+				probe.close();
+			} catch (IOException ignore) {
+			}
+		}
+		remote.log("Using DSL compiler running in daemon on port " + compiler.getPort());
+		remote.put(DslCompiler.INSTANCE, Integer.toString(compiler.getPort()));
+		remote.cache(DslCompiler.SOCKET_COMPILER, compilerPath);
+		return true;
+	}
+
+	private void keepCompilerWarm(final Context remote) {
+		final String value = remote.get(DslCompiler.INSTANCE);
+		final File path = value != null ? new File(value) : null;
+		if (path == null || !path.isFile() || path.equals(compilerPath)) {
+			return;
+		}
+		final Either<DslCompiler.TokenParser> started = DslCompiler.setupServer(context, path);
+		if (!started.isSuccess()) {
+			context.warning("Unable to keep DSL compiler running: " + started.explainError());
+			return;
+		}
+		closeCompiler();
+		compiler = started.get();
+		compilerPath = path;
+	}
+
+	private void closeCompiler() {
+		if (compiler != null) {
+			compiler.close();
+			compiler = null;
+			compilerPath = null;
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		closeCompiler();
+		try {
+			server.close();
+		} catch (IOException ignore) {
+		}
+		portFile.delete();
+	}
+
+	//output is sent to the client in frames, while questions wait for the answer from the client console
+	private static class Channel extends OutputStream {
+		private final DataInputStream is;
+		private final DataOutputStream os;
+		private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+		private boolean failed;
+
+		Channel(final DataInputStream is, final DataOutputStream os) {
+			this.is = is;
+			this.os = os;
+		}
+
+		@Override
+		public synchronized void write(final int b) {
+			pending.write(b);
+		}
+
+		@Override
+		public synchronized void write(final byte[] b, final int off, final int len) {
+			pending.write(b, off, len);
+		}
+
+		@Override
+		public synchronized void flush() {
+			if (pending.size() == 0 || failed) return;
+			try {
+				os.writeByte(DaemonClient.OUTPUT);
+				os.writeInt(pending.size());
+				pending.writeTo(os);
+				os.flush();
+			} catch (IOException ex) {
+				//client is gone, but run should still finish
+				failed = true;
+			}
+			pending.reset();
+		}
+
+		synchronized String ask(final String question, final boolean secret) {
+			flush();
+			if (failed) return "";
+			try {
+				os.writeByte(DaemonClient.ASK);
+				os.writeUTF(question);
+				os.writeBoolean(secret);
+				os.flush();
+				return is.readUTF();
+			} catch (IOException ex) {
+				failed = true;
+				return "";
+			}
+		}
+
+		synchronized void exit(final int code) throws IOException {
+			flush();
+			os.writeByte(DaemonClient.EXIT);
+			os.writeInt(code);
+			os.flush();
+		}
+	}
+
+	private static class RemoteContext extends Context {
+		private final Channel channel;
+		private final boolean terminal;
+
+		RemoteContext(final Channel channel, final boolean terminal) {
+			super(new PrintStream(channel));
+			this.channel = channel;
+			this.terminal = terminal;
+			//escape codes are not stripped when output is redirected on the client
+			if (!terminal) {
+				put(DisableColors.INSTANCE, null);
+			}
+		}
+
+		@Override
+		public boolean canInteract() {
+			return terminal && !contains(DisablePrompt.INSTANCE);
+		}
+
+		@Override
+		public String ask(final String question) {
+			flushConsole();
+			return channel.ask(question, false);
+		}
+
+		@Override
+		public char[] askSecret(final String question) {
+			flushConsole();
+			return channel.ask(question, true).toCharArray();
+		}
+	}
+}
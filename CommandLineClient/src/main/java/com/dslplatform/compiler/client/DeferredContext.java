@@ -0,0 +1,179 @@
+package com.dslplatform.compiler.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Context for work running in the background.
+ * Parameters and cache are shared with the parent context, while output is recorded
+ * and replayed on the parent when requested, so messages keep a deterministic order.
+ * After {@link #goLive()} output is passed to the parent as it arrives.
+ */
+public class DeferredContext extends Context {
+	private final Context parent;
+	private final boolean withLog;
+	private final List<Object[]> messages = new ArrayList<Object[]>();
+	private boolean live;
+
+	public DeferredContext(final Context parent) {
+		super(new PrintStream(new ByteArrayOutputStream()));
+		this.parent = parent;
+		this.withLog = parent.isLogEnabled();
+	}
+
+	@Override
+	public void put(final CompileParameter parameter, final String value) {
+		parent.put(parameter, value);
+	}
+
+	@Override
+	public void put(final String parameter, final String value) {
+		parent.put(parameter, value);
+	}
+
+	@Override
+	public boolean contains(final CompileParameter parameter) {
+		return parent.contains(parameter);
+	}
+
+	@Override
+	public boolean contains(final String parameter) {
+		return parent.contains(parameter);
+	}
+
+	@Override
+	public String get(final CompileParameter parameter) {
+		return parent.get(parameter);
+	}
+
+	@Override
+	public String get(final String parameter) {
+		return parent.get(parameter);
+	}
+
+	@Override
+	public void cache(final String name, final Object value) {
+		parent.cache(name, value);
+	}
+
+	@Override
+	public <T> T cacheIfAbsent(final String name, final T value) {
+		return parent.cacheIfAbsent(name, value);
+	}
+
+	@Override
+	public <T> T load(final String name) {
+		return parent.load(name);
+	}
+
+	@Override
+	public <T> T notify(final String action, final T target) {
+		return parent.notify(action, target);
+	}
+
+	private synchronized void record(final String kind, final Object value) {
+		if (live) {
+			forward(parent, kind, value);
+		} else {
+			messages.add(new Object[]{kind, value});
+		}
+	}
+
+	private static void forward(final Context target, final String kind, final Object value) {
+		if ("show".equals(kind)) {
+			target.show((String[]) value);
+		} else if ("log".equals(kind)) {
+			target.log((String) value);
+		} else if ("warning".equals(kind)) {
+			if (value instanceof Exception) target.warning((Exception) value);
+			else target.warning((String) value);
+		} else if (value instanceof Exception) {
+			target.error((Exception) value);
+		} else {
+			target.error((String) value);
+		}
+	}
+
+	@Override
+	public void show(final String... values) {
+		record("show", values);
+	}
+
+	@Override
+	public boolean isLogEnabled() {
+		return withLog;
+	}
+
+	@Override
+	public void log(final String value) {
+		if (withLog) record("log", value);
+	}
+
+	@Override
+	public void log(final char[] value, final int len) {
+		if (withLog) record("log", new String(value, 0, len));
+	}
+
+	@Override
+	public void warning(final String value) {
+		record("warning", value);
+	}
+
+	@Override
+	public void warning(final Exception ex) {
+		record("warning", ex);
+	}
+
+	@Override
+	public void error(final String value) {
+		record("error", value);
+	}
+
+	@Override
+	public void error(final Exception ex) {
+		record("error", ex);
+	}
+
+	@Override
+	public boolean canInteract() {
+		return false;
+	}
+
+	/**
+	 * Show recorded output on the parent context.
+	 */
+	public void replay() {
+		replay(parent);
+	}
+
+	/**
+	 * Show recorded output on the specified context.
+	 */
+	public synchronized void replay(final Context target) {
+		for (final Object[] m : messages) {
+			forward(target, (String) m[0], m[1]);
+		}
+		messages.clear();
+	}
+
+	/**
+	 * Show recorded output and pass all further output directly to the parent context.
+	 */
+	public synchronized void goLive() {
+		replay();
+		live = true;
+	}
+
+	/**
+	 * Drop recorded output.
+	 */
+	public synchronized void discard() {
+		messages.clear();
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,296 @@
+package com.dslplatform.compiler.client;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Binary safe copy of folder content.
+ * Files which already match (same size and content) are skipped.
+ * When supported (Java 7+ on the same file system) files are hard linked instead of copied.
+ * File transfer is done in parallel.
+ */
+public abstract class FileSync {
+
+	public static class Result {
+		public final int copied;
+		public final int linked;
+		public final int skipped;
+		public final int deleted;
+
+		Result(final int copied, final int linked, final int skipped, final int deleted) {
+			this.copied = copied;
+			this.linked = linked;
+			this.skipped = skipped;
+			this.deleted = deleted;
+		}
+
+		@Override
+		public String toString() {
+			return "copied: " + copied + ", linked: " + linked + ", unchanged: " + skipped + ", deleted: " + deleted;
+		}
+	}
+
+	private enum Outcome {
+		COPIED, LINKED, SKIPPED
+	}
+
+	private static final boolean HAS_NIO;
+
+	static {
+		boolean nio;
+		try {
+			Class.forName("java.nio.file.Files");
+			nio = true;
+		} catch (Exception ignore) {
+			nio = false;
+		}
+		HAS_NIO = nio;
+	}
+
+	private static boolean useHardLinks() {
+		return HAS_NIO && !"false".equals(System.getProperty("dsl-platform.hardlinks"));
+	}
+
+	//java.nio.file is only available in Java 7+. Class is loaded only when available
+	private static class Nio {
+		static boolean isSameFile(final File source, final File target) {
+			try {
+				return java.nio.file.Files.isSameFile(source.toPath(), target.toPath());
+			} catch (IOException ignore) {
+				return false;
+			}
+		}
+
+		static boolean link(final File source, final File target) {
+			try {
+				java.nio.file.Files.createLink(target.toPath(), source.toPath());
+				return true;
+			} catch (Exception ignore) {
+				return false;
+			}
+		}
+
+		static void copy(final File source, final File target) throws IOException {
+			java.nio.file.Files.copy(source.toPath(), target.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void streamCopy(final File source, final File target) throws IOException {
+		final InputStream is = new FileInputStream(source);
+		try {
+			final OutputStream os = new FileOutputStream(target);
+			try {
+				final byte[] buffer = new byte[65536];
+				int len;
+				while ((len = is.read(buffer)) != -1) {
+					os.write(buffer, 0, len);
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+	private static int readFully(final InputStream is, final byte[] buffer) throws IOException {
+		int total = 0;
+		int len;
+		while (total < buffer.length && (len = is.read(buffer, total, buffer.length - total)) != -1) {
+			total += len;
+		}
+		return total;
+	}
+
+	static boolean sameContent(final File source, final File target) throws IOException {
+		if (!target.isFile() || source.length() != target.length()) {
+			return false;
+		}
+		if (HAS_NIO && Nio.isSameFile(source, target)) {
+			return true;
+		}
+		final InputStream left = new FileInputStream(source);
+		try {
+			final InputStream right = new FileInputStream(target);
+			try {
+				final byte[] lb = new byte[65536];
+				final byte[] rb = new byte[65536];
+				int len;
+				while ((len = readFully(left, lb)) > 0) {
+					if (readFully(right, rb) != len) return false;
+					for (int i = 0; i < len; i++) {
+						if (lb[i] != rb[i]) return false;
+					}
+				}
+				return true;
+			} finally {
+				right.close();
+			}
+		} finally {
+			left.close();
+		}
+	}
+
+	private static Outcome transfer(final File source, final File target, final boolean hardLinks) throws IOException {
+		if (sameContent(source, target)) {
+			return Outcome.SKIPPED;
+		}
+		//folder from a previous run can be replaced by a file with the same name
+		if (target.isDirectory()) {
+			Utils.deletePath(target);
+		}
+		if (target.exists() && !target.delete()) {
+			throw new IOException("Unable to replace file: " + target.getAbsolutePath());
+		}
+		if (hardLinks && Nio.link(source, target)) {
+			return Outcome.LINKED;
+		}
+		if (HAS_NIO) {
+			Nio.copy(source, target);
+		} else {
+			streamCopy(source, target);
+		}
+		return Outcome.COPIED;
+	}
+
+	/**
+	 * Copy (or hard link) a single file unless target already has the same content.
+	 *
+	 * @param source source file
+	 * @param target target file
+	 * @throws IOException when file could not be copied
+	 */
+	public static void copyFile(final File source, final File target) throws IOException {
+		transfer(source, target, useHardLinks());
+	}
+
+	/**
+	 * Replace target file with a hard link to the source file with the same content.
+	 *
+	 * @param source source file
+	 * @param target existing file with the same content
+	 * @return true if target is now linked to the source
+	 */
+	public static boolean shareFile(final File source, final File target) {
+		if (!useHardLinks()) return false;
+		if (Nio.isSameFile(source, target)) return true;
+		final File tmp = new File(target.getParentFile(), target.getName() + "." + UUID.randomUUID() + ".link");
+		if (!Nio.link(source, tmp)) return false;
+		if (!tmp.renameTo(target)) {
+			if (!target.delete() || !tmp.renameTo(target)) {
+				tmp.delete();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void collect(
+			final File source,
+			final File target,
+			final boolean deleteStale,
+			final List<File[]> files,
+			final List<File> stale) throws IOException {
+		final String[] children = source.list();
+		if (children == null) {
+			throw new IOException("Unable to list files in: " + source.getAbsolutePath());
+		}
+		if (target.isFile() && !target.delete() || !target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Failed to create folder: " + target.getAbsolutePath());
+		}
+		final Set<String> names = new HashSet<String>(Arrays.asList(children));
+		if (deleteStale) {
+			final String[] existing = target.list();
+			if (existing != null) {
+				for (final String fn : existing) {
+					if (!names.contains(fn)) {
+						stale.add(new File(target, fn));
+					}
+				}
+			}
+		}
+		for (final String fn : children) {
+			final File sf = new File(source, fn);
+			final File tf = new File(target, fn);
+			if (sf.isDirectory()) {
+				collect(sf, tf, deleteStale, files, stale);
+			} else {
+				files.add(new File[]{sf, tf});
+			}
+		}
+	}
+
+	/**
+	 * Copy folder content into the target folder.
+	 *
+	 * @param context     context for logging
+	 * @param source      source folder
+	 * @param target      target folder. Will be created if missing
+	 * @param deleteStale remove target files which don't exist in source
+	 * @return summary of performed operations
+	 */
+	public static Either<Result> copyFolder(
+			final Context context,
+			final File source,
+			final File target,
+			final boolean deleteStale) {
+		final List<File[]> files = new ArrayList<File[]>();
+		final List<File> stale = new ArrayList<File>();
+		try {
+			collect(source, target, deleteStale, files, stale);
+			for (final File f : stale) {
+				if (f.isDirectory()) {
+					Utils.deletePath(f);
+				}
+				if (!f.delete()) {
+					return Either.fail("Failed to delete: " + f.getAbsolutePath());
+				}
+			}
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		final boolean hardLinks = useHardLinks();
+		final int threads = Math.max(1, Math.min(files.size(), Math.min(8, Runtime.getRuntime().availableProcessors() * 2)));
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Outcome>> results = new ArrayList<Future<Outcome>>(files.size());
+			for (final File[] pair : files) {
+				results.add(pool.submit(new Callable<Outcome>() {
+					@Override
+					public Outcome call() throws IOException {
+						return transfer(pair[0], pair[1], hardLinks);
+					}
+				}));
+			}
+			int copied = 0, linked = 0, skipped = 0;
+			for (int i = 0; i < results.size(); i++) {
+				final Outcome outcome;
+				try {
+					outcome = results.get(i).get();
+				} catch (ExecutionException ex) {
+					final Throwable cause = ex.getCause();
+					return Either.fail("Error copying " + files.get(i)[0].getAbsolutePath() + ": " + cause.getMessage());
+				}
+				switch (outcome) {
+					case COPIED:
+						copied++;
+						break;
+					case LINKED:
+						linked++;
+						break;
+					default:
+						skipped++;
+						break;
+				}
+			}
+			final Result result = new Result(copied, linked, skipped, stale.size());
+			context.log("Copied " + source.getAbsolutePath() + " to " + target.getAbsolutePath() + " (" + result + ")");
+			return Either.success(result);
+		} catch (InterruptedException ex) {
+			return Either.fail(ex);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.dslplatform.compiler.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleans up folders without waiting for the files to be deleted.
+ * Content is renamed into a graveyard folder and deleted by a low priority background thread.
+ * Graveyards are kept only in the DSL Platform system temp folder and in the user cache folder,
+ * so nothing is left behind in project folders. The first one on the same file system is used.
+ * Leftovers from previous runs (eg. when process exits before deletion is done)
+ * are deleted the next time some folder is cleaned or temporary path is prepared.
+ */
+public abstract class Graveyard {
+
+	public static final String FOLDER_NAME = ".dsl-graveyard";
+
+	private static final Object LOCK = new Object();
+	private static final Set<String> PENDING = Collections.synchronizedSet(new HashSet<String>());
+
+	private static final ExecutorService DELETER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "dsl-clc-graveyard");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	/**
+	 * Remove all files from the specified folder, but keep the folder.
+	 * Same contract as Utils.deletePath, but actual deletion is done in the background.
+	 * When files can't be moved to graveyard (eg. different file system) they are deleted immediately.
+	 *
+	 * @param path folder to clean
+	 * @throws IOException when files could not be moved or deleted
+	 */
+	public static void clear(final File path) throws IOException {
+		final String[] files = path.list();
+		if (files == null || files.length == 0) return;
+		synchronized (LOCK) {
+			bury(path, files);
+		}
+		sweepAll();
+	}
+
+	static File[] locations() {
+		return new File[]{
+				new File(new File(System.getProperty("java.io.tmpdir"), "DSL-Platform"), FOLDER_NAME),
+				new File(Utils.getUserCachePath(), FOLDER_NAME)
+		};
+	}
+
+	private static File dig(final File path, final String first) {
+		for (final File graveyard : locations()) {
+			final File grave = new File(graveyard, path.getName() + "-" + UUID.randomUUID());
+			if (!grave.mkdirs()) continue;
+			//rename works only within the same file system
+			if (new File(path, first).renameTo(new File(grave, first))) {
+				return grave;
+			}
+			grave.delete();
+		}
+		return null;
+	}
+
+	private static void bury(final File path, final String[] files) throws IOException {
+		final File grave = dig(path, files[0]);
+		if (grave == null) {
+			Utils.deletePath(path);
+			return;
+		}
+		for (int i = 1; i < files.length; i++) {
+			final String fn = files[i];
+			final File f = new File(path, fn);
+			if (!f.renameTo(new File(grave, fn))) {
+				if (f.isDirectory()) {
+					Utils.deletePath(f);
+				}
+				if (f.exists() && !f.delete()) {
+					throw new IOException("Error cleaning up temporary resource. Failed to delete: " + f.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedule background deletion of content in all graveyards.
+	 */
+	public static void sweepAll() {
+		for (final File graveyard : locations()) {
+			sweep(graveyard);
+		}
+	}
+
+	/**
+	 * Schedule background deletion of graveyard content.
+	 * Includes the content left behind by previous runs.
+	 *
+	 * @param graveyard graveyard folder
+	 */
+	public static void sweep(final File graveyard) {
+		final String key = graveyard.getAbsolutePath();
+		if (!graveyard.isDirectory() || !PENDING.add(key)) return;
+		DELETER.submit(new Runnable() {
+			@Override
+			public void run() {
+				PENDING.remove(key);
+				final File[] graves;
+				synchronized (LOCK) {
+					graves = graveyard.listFiles();
+				}
+				if (graves == null) return;
+				try {
+					for (final File grave : graves) {
+						if (grave.isDirectory()) {
+							Utils.deletePath(grave);
+						}
+						grave.delete();
+					}
+				} catch (IOException ignore) {
+					//will be retried on next sweep
+				}
+				synchronized (LOCK) {
+					graveyard.delete();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wait for scheduled deletions to finish.
+	 *
+	 * @param timeout maximum wait in milliseconds
+	 * @return true if all deletions have finished
+	 */
+	public static boolean await(final long timeout) {
+		try {
+			return DELETER.submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			}).get(timeout, TimeUnit.MILLISECONDS) == null;
+		} catch (Exception ignore) {
+			return false;
+		}
+	}
+}
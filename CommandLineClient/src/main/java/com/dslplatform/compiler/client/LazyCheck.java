@@ -0,0 +1,14 @@
+package com.dslplatform.compiler.client;
+
+import java.util.Set;
+
+/**
+ * Check which validates or prepares resources for actions, such as compiler, toolchain or database connection.
+ * Such check runs only when some requested action uses one of the prepared resources,
+ * so a run doesn't pay for validation of tools it will never use.
+ * Independent lazy checks can run at the same time.
+ * Checks of parameters without this interface always run.
+ */
+public interface LazyCheck {
+	Set<ActionResources.Resource> prepares(final Context context);
+}
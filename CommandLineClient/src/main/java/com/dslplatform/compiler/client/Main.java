@@ -14,6 +14,17 @@ import java.util.jar.Manifest;
 
 public class Main {
 	public static void main(final String[] args) {
+		final String daemon = DaemonClient.command(args);
+		if (DaemonClient.STOP.equals(daemon)) {
+			System.exit(DaemonClient.stop() ? 0 : 1);
+		} else if (daemon != null) {
+			System.exit(DaemonServer.serve());
+		} else if (DaemonClient.isEnabled()) {
+			final Integer remoteCode = DaemonClient.run(args);
+			if (remoteCode != null) {
+				System.exit(remoteCode);
+			}
+		}
 		final Context context = new Context();
 		final List<CompileParameter> parameters = initializeParameters(context, ".");
 		final int returnCode = parse(args, context, parameters) ? (processContext(context, parameters) ? 0 : 1) : 2;
@@ -62,21 +73,25 @@ public class Main {
 		return parameters;
 	}
 
+	//compiler, toolchain and database checks are grouped, so they can run at the same time
 	private static CompileParameter[] DEFAULT_PARAMETERS = new CompileParameter[]{
+			Profile.INSTANCE,
 			DslPath.INSTANCE,
 			SqlPath.INSTANCE,
-			Download.INSTANCE,
+			DownloadTtl.INSTANCE,
 			Dependencies.INSTANCE,
+			Repository.INSTANCE,
+			TempPath.INSTANCE,
+			Namespace.INSTANCE,
+			Version.INSTANCE,
+			Settings.INSTANCE,
+			Download.INSTANCE,
 			DotNet.INSTANCE,
 			Mono.INSTANCE,
-			TempPath.INSTANCE,
 			DslCompiler.INSTANCE,
 			Maven.INSTANCE,
 			JavaPath.INSTANCE,
 			ScalaPath.INSTANCE,
-			Namespace.INSTANCE,
-			Version.INSTANCE,
-			Settings.INSTANCE,
 			PostgresConnection.INSTANCE,
 			OracleConnection.INSTANCE,
 			DisablePrompt.INSTANCE,
@@ -86,31 +101,48 @@ public class Main {
 			Force.INSTANCE,
 			Migration.INSTANCE,
 			ApplyMigration.INSTANCE,
+			Tenants.INSTANCE,
+			TenantWorkers.INSTANCE,
 			DisableColors.INSTANCE,
 			LogOutput.INSTANCE,
 			VarraySize.INSTANCE,
-			GrantRole.INSTANCE
+			GrantRole.INSTANCE,
+			Daemon.INSTANCE
 	};
 
 	public static boolean processContext(final Context context, final List<CompileParameter> parameters) {
 		try {
 			context.notify("PROCESS", parameters);
-			for (final CompileParameter cp : parameters) {
-				if (!cp.check(context)) {
-					if (cp.getDetailedDescription() != null) {
-						context.show();
-						context.show();
-						context.show(cp.getDetailedDescription());
-					}
-					return false;
-				}
+			if (!ParameterChecks.run(context, parameters)) {
+				return false;
 			}
-			for (final CompileParameter cp : parameters) {
-				cp.run(context);
+			if (ActionGraph.isEnabled(context)) {
+				ActionGraph.run(context, parameters);
+			} else {
+				for (final CompileParameter cp : parameters) {
+					run(context, cp);
+				}
 			}
 			return true;
 		} catch (ExitException ex) {
 			return false;
+		} finally {
+			Profile.report(context);
+		}
+	}
+
+	static boolean isBuiltIn(final CompileParameter parameter) {
+		return parameter instanceof Help
+				|| parameter instanceof PropertiesFile
+				|| Arrays.asList(DEFAULT_PARAMETERS).contains(parameter);
+	}
+
+	static void run(final Context context, final CompileParameter parameter) throws ExitException {
+		final Profiler.Span span = Profiler.start(context, "action", parameter.getAlias());
+		try {
+			parameter.run(context);
+		} finally {
+			span.end();
 		}
 	}
 
@@ -123,7 +155,7 @@ public class Main {
 		return null;
 	}
 
-	private static boolean parse(final String[] args, final Context context, final List<CompileParameter> parameters) {
+	static boolean parse(final String[] args, final Context context, final List<CompileParameter> parameters) {
 		if (args.length == 1 && ("/?".equals(args[0]) || "-?".equals(args[0]) || "?".equals(args[0]))) {
 			showHelpAndExit(context, true, parameters);
 			return false;
@@ -0,0 +1,169 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.ActionResources.Resource;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs parameter checks before actions.
+ * Checks which only prepare resources ({@link LazyCheck}) run when some requested action uses those resources,
+ * so eg. parse or diff doesn't validate toolchain or download server.
+ * Requested actions are known from the resources they declare, which can change as checks run
+ * (eg. apply migration requests migration), so skipped checks are reconsidered until nothing new is required.
+ * Consecutive lazy checks are independent and run at the same time, with output shown in the order of parameters.
+ * Other checks run in order, one at a time.
+ * When no action is requested, all checks run, since then the checks themselves are the work (eg. compiler download).
+ */
+final class ParameterChecks {
+
+	static boolean isLazy() {
+		return !"false".equals(System.getProperty("dsl-platform.lazy-checks"));
+	}
+
+	static Set<Resource> demand(final Context context, final List<CompileParameter> parameters) {
+		final Set<Resource> demand = EnumSet.noneOf(Resource.class);
+		for (final CompileParameter cp : parameters) {
+			if (cp instanceof ActionResources) {
+				final ActionResources resources = (ActionResources) cp;
+				demand.addAll(resources.consumes(context));
+				demand.addAll(resources.produces(context));
+			} else if (!(cp instanceof LazyCheck) && !Main.isBuiltIn(cp) && context.contains(cp)) {
+				//plugin action without declared resources can use anything
+				return EnumSet.allOf(Resource.class);
+			}
+		}
+		return demand;
+	}
+
+	private static boolean isRequired(final Context context, final CompileParameter cp, final Set<Resource> demand) {
+		return !Collections.disjoint(((LazyCheck) cp).prepares(context), demand);
+	}
+
+	/**
+	 * Check required parameters.
+	 *
+	 * @return false when some check failed
+	 */
+	static boolean run(final Context context, final List<CompileParameter> parameters) throws ExitException {
+		if (!isLazy() || demand(context, parameters).isEmpty()) {
+			for (final CompileParameter cp : parameters) {
+				if (!check(context, cp)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		final Set<CompileParameter> checked = new HashSet<CompileParameter>();
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			int i = 0;
+			while (i < parameters.size()) {
+				final CompileParameter cp = parameters.get(i);
+				if (checked.contains(cp)) {
+					i++;
+				} else if (!(cp instanceof LazyCheck)) {
+					if (!check(context, cp)) {
+						return false;
+					}
+					checked.add(cp);
+					progress = true;
+					i++;
+				} else {
+					final Set<Resource> demand = demand(context, parameters);
+					final List<CompileParameter> batch = new ArrayList<CompileParameter>();
+					while (i < parameters.size()
+							&& (parameters.get(i) instanceof LazyCheck || checked.contains(parameters.get(i)))) {
+						final CompileParameter next = parameters.get(i);
+						if (!checked.contains(next) && isRequired(context, next, demand)) {
+							batch.add(next);
+						}
+						i++;
+					}
+					if (!checkAll(context, batch)) {
+						return false;
+					}
+					checked.addAll(batch);
+					progress = progress || !batch.isEmpty();
+				}
+			}
+		}
+		for (final CompileParameter cp : parameters) {
+			if (!checked.contains(cp)) {
+				context.log("Skipped check of " + cp.getAlias() + " since no action requires it");
+			}
+		}
+		return true;
+	}
+
+	private static boolean check(final Context context, final CompileParameter cp) throws ExitException {
+		final Profiler.Span span = Profiler.start(context, "check", cp.getAlias());
+		try {
+			if (cp.check(context)) {
+				return true;
+			}
+			if (cp.getDetailedDescription() != null) {
+				context.show();
+				context.show();
+				context.show(cp.getDetailedDescription());
+			}
+			return false;
+		} finally {
+			span.end();
+		}
+	}
+
+	private static boolean checkAll(final Context context, final List<CompileParameter> batch) throws ExitException {
+		if (batch.size() < 2 || !ActionGraph.isEnabled(context)) {
+			for (final CompileParameter cp : batch) {
+				if (!check(context, cp)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		final List<DeferredContext> contexts = new ArrayList<DeferredContext>(batch.size());
+		final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(batch.size());
+		for (final CompileParameter cp : batch) {
+			final DeferredContext deferred = new DeferredContext(context);
+			contexts.add(deferred);
+			results.add(ProcessExecutor.executor().submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws ExitException {
+					return check(deferred, cp);
+				}
+			}));
+		}
+		//output of checks after the failed one is dropped
+		try {
+			for (int i = 0; i < batch.size(); i++) {
+				contexts.get(i).goLive();
+				final boolean valid;
+				try {
+					valid = results.get(i).get();
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				} catch (ExecutionException ex) {
+					final Throwable cause = ex.getCause();
+					if (cause instanceof ExitException) {
+						throw (ExitException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new ExitException();
+				}
+				if (!valid) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			for (final Future<Boolean> f : results) {
+				f.cancel(true);
+			}
+		}
+	}
+}
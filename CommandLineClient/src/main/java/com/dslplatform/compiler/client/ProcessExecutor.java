@@ -0,0 +1,342 @@
+package com.dslplatform.compiler.client;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs external processes on a shared executor.
+ * Output is consumed line by line, passed to an optional listener
+ * and captured up to the specified limit.
+ * When available (Java 21+) virtual threads are used for stream consumers.
+ */
+public abstract class ProcessExecutor {
+
+	public static final int UNLIMITED = -1;
+	public static final int DEFAULT_CAPTURE_LIMIT = 256 * 1024;
+
+	public interface LineListener {
+		void onLine(final String line, final boolean isError);
+	}
+
+	private static final ExecutorService EXECUTOR = createExecutor();
+	private static final ScheduledExecutorService WATCHDOG =
+			Executors.newSingleThreadScheduledExecutor(new DaemonFactory("dsl-clc-watchdog"));
+
+	private static class DaemonFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		DaemonFactory(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			final Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (Exception ignore) {
+			return Executors.newCachedThreadPool(new DaemonFactory("dsl-clc-process"));
+		}
+	}
+
+	/**
+	 * Shared executor for short lived background work, such as stream consumers.
+	 * Threads will not prevent JVM from exiting.
+	 */
+	public static ExecutorService executor() {
+		return EXECUTOR;
+	}
+
+	private static final class StreamConsumer implements Callable<Boolean> {
+		private final InputStream stream;
+		private final boolean isError;
+		private final Context context;
+		private final LineListener listener;
+		private final int captureLimit;
+		private final Execution execution;
+		private final StringBuilder output = new StringBuilder();
+		private boolean truncated;
+
+		StreamConsumer(
+				final InputStream stream,
+				final boolean isError,
+				final Context context,
+				final LineListener listener,
+				final int captureLimit,
+				final Execution execution) {
+			this.stream = stream;
+			this.isError = isError;
+			this.context = context;
+			this.listener = listener;
+			this.captureLimit = captureLimit;
+			this.execution = execution;
+		}
+
+		@Override
+		public Boolean call() throws IOException {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					//once a line doesn't fit, output is cut there, so later lines are not captured
+					if (!truncated && (captureLimit == UNLIMITED || output.length() + line.length() < captureLimit)) {
+						output.append(line).append('\n');
+					} else {
+						truncated = true;
+					}
+					if (listener != null) {
+						listener.onLine(line, isError);
+					}
+					if (context != null && context.isLogEnabled()) {
+						context.log(line);
+					}
+					execution.sampleCpu(false);
+				}
+			} finally {
+				reader.close();
+			}
+			execution.sampleCpu(true);
+			return truncated;
+		}
+	}
+
+	/**
+	 * Handle to a started process. Result can be awaited or process can be canceled.
+	 */
+	public static final class Execution {
+		private final Process process;
+		private final long startedAt;
+		private final Future<Boolean> output;
+		private final Future<Boolean> error;
+		private final StreamConsumer outputConsumer;
+		private final StreamConsumer errorConsumer;
+		private final ScheduledFuture<?> timeout;
+		private volatile boolean canceled;
+		private volatile boolean timedOut;
+		private volatile long cpuNanos = -1;
+		private volatile long lastSample;
+
+		private Execution(
+				final Process process,
+				final Context context,
+				final LineListener listener,
+				final int captureLimit,
+				final long timeoutMillis) {
+			this.process = process;
+			this.startedAt = System.nanoTime();
+			this.outputConsumer = new StreamConsumer(process.getInputStream(), false, context, listener, captureLimit, this);
+			this.errorConsumer = new StreamConsumer(process.getErrorStream(), true, context, listener, captureLimit, this);
+			this.output = EXECUTOR.submit(outputConsumer);
+			this.error = EXECUTOR.submit(errorConsumer);
+			this.timeout = timeoutMillis > 0
+					? WATCHDOG.schedule(new Runnable() {
+						@Override
+						public void run() {
+							timedOut = true;
+							process.destroy();
+						}
+					}, timeoutMillis, TimeUnit.MILLISECONDS)
+					: null;
+		}
+
+		void sampleCpu(final boolean force) {
+			final long now = System.nanoTime();
+			if (!force && now - lastSample < 100000000L) {
+				return;
+			}
+			lastSample = now;
+			final long cpu = cpuTime(process);
+			if (cpu > cpuNanos) {
+				cpuNanos = cpu;
+			}
+		}
+
+		public void cancel() {
+			canceled = true;
+			process.destroy();
+		}
+
+		public Either<Utils.CommandResult> await() {
+			try {
+				final int exitCode = process.waitFor();
+				final boolean outputTruncated = output.get();
+				final boolean errorTruncated = error.get();
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+				if (timedOut) {
+					return Either.fail("Process timed out and was terminated");
+				}
+				if (canceled) {
+					return Either.fail("Process was canceled");
+				}
+				final long wallTime = (System.nanoTime() - startedAt) / 1000000;
+				return Either.success(
+						new Utils.CommandResult(
+								outputConsumer.output.toString(),
+								errorConsumer.output.toString(),
+								exitCode,
+								wallTime,
+								cpuNanos < 0 ? -1 : cpuNanos / 1000000,
+								outputTruncated || errorTruncated));
+			} catch (InterruptedException ex) {
+				cancel();
+				Thread.currentThread().interrupt();
+				return Either.fail(ex);
+			} catch (ExecutionException ex) {
+				process.destroy();
+				final Throwable cause = ex.getCause();
+				return Either.fail(cause instanceof Exception ? (Exception) cause : ex);
+			}
+		}
+	}
+
+	private static final Method TO_HANDLE;
+	private static final Method INFO;
+	private static final Method TOTAL_CPU;
+	private static final Method IS_PRESENT;
+	private static final Method GET;
+	private static final Method TO_NANOS;
+
+	static {
+		Method toHandle = null, info = null, totalCpu = null, isPresent = null, get = null, toNanos = null;
+		try {
+			toHandle = Process.class.getMethod("toHandle");
+			info = Class.forName("java.lang.ProcessHandle").getMethod("info");
+			totalCpu = Class.forName("java.lang.ProcessHandle$Info").getMethod("totalCpuDuration");
+			final Class<?> optional = Class.forName("java.util.Optional");
+			isPresent = optional.getMethod("isPresent");
+			get = optional.getMethod("get");
+			toNanos = Class.forName("java.time.Duration").getMethod("toNanos");
+		} catch (Exception ignore) {
+			toHandle = null;
+		}
+		TO_HANDLE = toHandle;
+		INFO = info;
+		TOTAL_CPU = totalCpu;
+		IS_PRESENT = isPresent;
+		GET = get;
+		TO_NANOS = toNanos;
+	}
+
+	//ProcessHandle is only available in Java9+, so use reflection to access it
+	private static long cpuTime(final Process process) {
+		if (TO_HANDLE == null) {
+			return -1;
+		}
+		try {
+			final Object handle = TO_HANDLE.invoke(process);
+			final Object optional = TOTAL_CPU.invoke(INFO.invoke(handle));
+			if ((Boolean) IS_PRESENT.invoke(optional)) {
+				return (Long) TO_NANOS.invoke(GET.invoke(optional));
+			}
+		} catch (Exception ignore) {
+		}
+		return -1;
+	}
+
+	private static void logCommand(final Context context, final ProcessBuilder builder) {
+		if (context.isLogEnabled()) {
+			final StringBuilder description = new StringBuilder("Running: ");
+			for (final String arg : builder.command()) {
+				description.append(arg).append(" ");
+			}
+			context.log(description.toString());
+		}
+		context.notify("EXEC", builder);
+	}
+
+	/**
+	 * Start a process and consume its output in the background.
+	 *
+	 * @param context       context used for logging process output (when log is enabled)
+	 * @param command       command with arguments
+	 * @param directory     working directory or null for current one
+	 * @param listener      optional callback invoked for every output line
+	 * @param captureLimit  maximum number of captured characters per stream or UNLIMITED
+	 * @param timeoutMillis process will be terminated after specified time. 0 for no timeout
+	 * @return execution handle
+	 * @throws IOException when process could not be started
+	 */
+	public static Execution start(
+			final Context context,
+			final List<String> command,
+			final File directory,
+			final LineListener listener,
+			final int captureLimit,
+			final long timeoutMillis) throws IOException {
+		final ProcessBuilder pb = new ProcessBuilder(new ArrayList<String>(command));
+		if (directory != null) {
+			pb.directory(directory);
+		}
+		logCommand(context, pb);
+		final Process process = pb.start();
+		return new Execution(process, context, listener, captureLimit, timeoutMillis);
+	}
+
+	public static Either<Utils.CommandResult> run(
+			final Context context,
+			final List<String> command,
+			final File directory,
+			final LineListener listener,
+			final int captureLimit,
+			final long timeoutMillis) {
+		final Execution execution;
+		try {
+			execution = start(context, command, directory, listener, captureLimit, timeoutMillis);
+		} catch (IOException ex) {
+			return Either.fail(ex);
+		}
+		final Either<Utils.CommandResult> result = execution.await();
+		if (result.isSuccess()) {
+			final Utils.CommandResult cr = result.get();
+			context.log("Process finished in " + cr.wallTime + "ms" + (cr.cpuTime >= 0 ? " (CPU: " + cr.cpuTime + "ms)" : ""));
+		}
+		return result;
+	}
+
+	/**
+	 * Collects output lines containing specified marker, up to the specified limit.
+	 * Used for extracting errors from compiler output without scanning the whole output afterwards.
+	 */
+	public static class LineCollector implements LineListener {
+		private final String marker;
+		private final boolean fromError;
+		private final int limit;
+		private final StringBuilder lines = new StringBuilder();
+
+		public LineCollector(final String marker, final boolean fromError, final int limit) {
+			this.marker = marker;
+			this.fromError = fromError;
+			this.limit = limit;
+		}
+
+		@Override
+		public synchronized void onLine(final String line, final boolean isError) {
+			if (isError == fromError && line.contains(marker) && lines.length() < limit) {
+				lines.append(line).append('\n');
+			}
+		}
+
+		public synchronized boolean isEmpty() {
+			return lines.length() == 0;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return lines.toString();
+		}
+	}
+}
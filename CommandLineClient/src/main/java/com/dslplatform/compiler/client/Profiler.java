@@ -0,0 +1,118 @@
+package com.dslplatform.compiler.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects timed spans of the main phases (discovery, compiler calls, file writes, builds, downloads, ...).
+ * Profiler is registered in the context cache when profiling is requested.
+ * Without it spans are shared no-op instances, so instrumentation costs nothing.
+ */
+public final class Profiler {
+
+	public static final Context.Key<Profiler> KEY = new Context.Key<Profiler>("profiler");
+
+	public static class Span {
+		public final String name;
+		public final String category;
+		public final long thread;
+		public final long start;
+		public final long heapStart;
+		private final Profiler profiler;
+		private long end;
+		private long bytes;
+		private int files;
+		private long heapEnd;
+
+		private Span(final Profiler profiler, final String name, final String category) {
+			this.profiler = profiler;
+			this.name = name;
+			this.category = category;
+			this.thread = Thread.currentThread().getId();
+			this.heapStart = profiler != null ? usedHeap() : 0;
+			this.start = System.nanoTime();
+		}
+
+		public Span bytes(final long value) {
+			if (profiler != null) bytes += value;
+			return this;
+		}
+
+		public Span files(final int value) {
+			if (profiler != null) files += value;
+			return this;
+		}
+
+		public void end() {
+			if (profiler == null || end != 0) return;
+			end = System.nanoTime();
+			heapEnd = usedHeap();
+			profiler.add(this);
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public int getFiles() {
+			return files;
+		}
+
+		public long getHeapDelta() {
+			return heapEnd - heapStart;
+		}
+	}
+
+	//Marker from Context.notify
+	public static class Event {
+		public final String name;
+		public final long thread;
+		public final long time;
+
+		Event(final String name) {
+			this.name = name;
+			this.thread = Thread.currentThread().getId();
+			this.time = System.nanoTime();
+		}
+	}
+
+	private static final Span NONE = new Span(null, "", "");
+
+	public final long origin = System.nanoTime();
+	private final List<Span> spans = new ArrayList<Span>();
+	private final List<Event> events = new ArrayList<Event>();
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private synchronized void add(final Span span) {
+		spans.add(span);
+	}
+
+	synchronized void mark(final String name) {
+		events.add(new Event(name));
+	}
+
+	public synchronized List<Span> getSpans() {
+		return new ArrayList<Span>(spans);
+	}
+
+	public synchronized List<Event> getEvents() {
+		return new ArrayList<Event>(events);
+	}
+
+	/**
+	 * Start a span. Call end on the result when the work is done.
+	 * Context can be null, in which case nothing is measured.
+	 */
+	public static Span start(final Context context, final String category, final String name) {
+		final Profiler profiler = context != null ? context.load(KEY) : null;
+		return profiler != null ? new Span(profiler, name, category) : NONE;
+	}
+}
@@ -0,0 +1,85 @@
+package com.dslplatform.compiler.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Context for a unit of work running alongside others, eg. a single tenant database.
+ * Parameters put on the scope override the parent ones, everything else is read from the parent.
+ * Cache is local to the scope, so objects such as connections are not shared between scopes.
+ * Output is passed to the parent with the scope prefix.
+ */
+public class ScopedContext extends Context {
+	private final Context parent;
+	private final String prefix;
+
+	public ScopedContext(final Context parent, final String label) {
+		super(new PrintStream(new ByteArrayOutputStream()));
+		this.parent = parent;
+		this.prefix = "[" + label + "] ";
+		//spans from the scope are part of the same profile
+		cache(Profiler.KEY, parent.load(Profiler.KEY));
+	}
+
+	@Override
+	public boolean contains(final CompileParameter parameter) {
+		return super.contains(parameter) || parent.contains(parameter);
+	}
+
+	@Override
+	public boolean contains(final String parameter) {
+		return super.contains(parameter) || parent.contains(parameter);
+	}
+
+	@Override
+	public String get(final CompileParameter parameter) {
+		return super.contains(parameter) ? super.get(parameter) : parent.get(parameter);
+	}
+
+	@Override
+	public String get(final String parameter) {
+		return super.contains(parameter.toLowerCase()) ? super.get(parameter) : parent.get(parameter);
+	}
+
+	@Override
+	public <T> T notify(final String action, final T target) {
+		return parent.notify(action, target);
+	}
+
+	@Override
+	public void show(final String... values) {
+		for (final String v : values) {
+			parent.show(prefix + v);
+		}
+	}
+
+	@Override
+	public boolean isLogEnabled() {
+		return parent.isLogEnabled();
+	}
+
+	@Override
+	public void log(final String value) {
+		parent.log(prefix + value);
+	}
+
+	@Override
+	public void log(final char[] value, final int len) {
+		parent.log(prefix + new String(value, 0, len));
+	}
+
+	@Override
+	public void warning(final String value) {
+		parent.warning(prefix + value);
+	}
+
+	@Override
+	public void error(final String value) {
+		parent.error(prefix + value);
+	}
+
+	@Override
+	public boolean canInteract() {
+		return false;
+	}
+}
@@ -0,0 +1,151 @@
+package com.dslplatform.compiler.client;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of tool validation results (javac, jar, scalac, csc, mono, mvn, dsl compiler...).
+ * Result is valid as long as PATH, JAVA_HOME and the size and modification time
+ * of the tool binary (and file arguments) don't change.
+ * Cache is stored in the user cache folder and kept in memory for the duration of the process.
+ */
+public abstract class ToolchainCache {
+
+	private static final String CACHE_FILE = "toolchain.properties";
+
+	private static final Map<String, String> MEMORY = new ConcurrentHashMap<String, String>();
+	private static boolean loaded;
+
+	public static boolean isEnabled() {
+		return !"false".equals(System.getProperty("dsl-platform.toolchain-cache"));
+	}
+
+	public static String key(final String command, final String contains, final List<String> arguments) {
+		final StringBuilder sb = new StringBuilder(command);
+		for (final String arg : arguments) {
+			sb.append(' ').append(arg);
+		}
+		return sb.append(" ~ ").append(contains).toString();
+	}
+
+	private static void describe(final StringBuilder sb, final File file) {
+		if (file != null && file.isFile()) {
+			sb.append(file.getAbsolutePath()).append(':').append(file.length()).append(':').append(file.lastModified());
+		} else {
+			sb.append("missing");
+		}
+	}
+
+	static File resolve(final String command) {
+		final File file = new File(command);
+		if (file.isAbsolute() || command.indexOf('/') != -1 || command.indexOf('\\') != -1) {
+			return file;
+		}
+		final String path = System.getenv("PATH");
+		if (path == null) {
+			return null;
+		}
+		final String[] extensions = Utils.isWindows()
+				? new String[]{"", ".exe", ".bat", ".cmd"}
+				: new String[]{""};
+		for (final String dir : path.split(File.pathSeparator)) {
+			if (dir.length() == 0) continue;
+			for (final String ext : extensions) {
+				final File candidate = new File(dir, command + ext);
+				if (candidate.isFile()) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Describe the environment in which the command would be resolved and executed.
+	 * Any change in the description invalidates cached result.
+	 */
+	public static String fingerprint(final String command, final List<String> arguments) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(System.getenv("PATH")).append('|').append(System.getenv("JAVA_HOME")).append('|');
+		describe(sb, resolve(command));
+		for (final String arg : arguments) {
+			final File file = new File(arg);
+			if (file.isFile()) {
+				sb.append('|');
+				describe(sb, file);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static File cacheFile() {
+		return new File(Utils.getUserCachePath(), CACHE_FILE);
+	}
+
+	private static synchronized void load() {
+		if (loaded) return;
+		loaded = true;
+		final File file = cacheFile();
+		if (!file.exists()) return;
+		final Properties properties = new Properties();
+		try {
+			final InputStream is = new FileInputStream(file);
+			try {
+				properties.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException ignore) {
+			return;
+		}
+		for (final String name : properties.stringPropertyNames()) {
+			MEMORY.put(name, properties.getProperty(name));
+		}
+	}
+
+	/**
+	 * Lookup cached validation result.
+	 *
+	 * @return null when result is unknown or stale
+	 */
+	public static Boolean lookup(final String key, final String fingerprint) {
+		if (!isEnabled()) return null;
+		load();
+		final String value = MEMORY.get(key);
+		if (value == null) return null;
+		final int split = value.indexOf('|');
+		if (split == -1 || !value.substring(split + 1).equals(fingerprint)) {
+			return null;
+		}
+		return Boolean.valueOf(value.substring(0, split));
+	}
+
+	public static synchronized void store(final String key, final String fingerprint, final boolean result) {
+		if (!isEnabled()) return;
+		load();
+		final String value = result + "|" + fingerprint;
+		if (value.equals(MEMORY.put(key, value))) return;
+		final Properties properties = new Properties();
+		properties.putAll(MEMORY);
+		final File file = cacheFile();
+		final File tmp = new File(file.getAbsolutePath() + ".tmp");
+		try {
+			final OutputStream os = new FileOutputStream(tmp);
+			try {
+				properties.store(os, "dsl-clc toolchain cache");
+			} finally {
+				os.close();
+			}
+			if (!tmp.renameTo(file)) {
+				if (!file.delete() || !tmp.renameTo(file)) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException ignore) {
+			tmp.delete();
+		}
+	}
+}
@@ -7,8 +7,13 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 public abstract class Utils {
 
@@ -37,7 +42,9 @@ public abstract class Utils {
 	}
 
 	public static void saveFile(final Context context, final File file, final String content) throws IOException {
-		context.log("Saving file: " + file.getAbsolutePath());
+		if (context.isLogEnabled()) {
+			context.log("Saving file: " + file.getAbsolutePath());
+		}
 		final FileOutputStream fos = new FileOutputStream(file);
 		try {
 			final Writer writer = new OutputStreamWriter(fos, "UTF-8");
@@ -53,8 +60,10 @@ public abstract class Utils {
 		for (final String ext : extensions) {
 			context.log("Matching: " + ext);
 		}
+		final Profiler.Span span = Profiler.start(context, "io", "discovery");
 		final List<File> foundFiles = new LinkedList<File>();
 		findFiles(context, path, foundFiles, extensions);
+		span.files(foundFiles.size()).end();
 		return foundFiles;
 	}
 
@@ -68,7 +77,9 @@ public abstract class Utils {
 			} else {
 				for (final String e : extensions) {
 					if (f.getName().endsWith(e)) {
-						context.log("Found: " + f.getAbsolutePath());
+						if (context.isLogEnabled()) {
+							context.log("Found: " + f.getAbsolutePath());
+						}
 						foundFiles.add(f);
 						break;
 					}
@@ -77,81 +88,292 @@ public abstract class Utils {
 		}
 	}
 
+	/**
+	 * Download zip to a temporary file, verify and extract its entries in parallel
+	 * and move extracted files into the specified folder.
+	 * Interrupted downloads are resumed, so partial files are never extracted.
+	 *
+	 * @param context   context for logging
+	 * @param path      target folder
+	 * @param remoteUrl zip location
+	 * @return last modified info of the remote file
+	 * @throws IOException when zip could not be downloaded or extracted
+	 */
 	public static long unpackZip(final Context context, final File path, final URL remoteUrl) throws IOException {
-		return unpackZip(context, path, remoteUrl, new ArrayList<File>(), 3);
+		final File archive = File.createTempFile("dsl-download", ".zip");
+		try {
+			final Profiler.Span span = Profiler.start(context, "network", "download");
+			final long lastModified;
+			try {
+				lastModified = resumableDownload(context, archive, remoteUrl, 3);
+			} finally {
+				span.bytes(archive.length()).files(1).end();
+			}
+			final File staging = new File(path, ".staging-" + UUID.randomUUID());
+			try {
+				extractZip(context, archive, staging);
+				moveInto(staging, path);
+			} finally {
+				deletePath(staging);
+				staging.delete();
+			}
+			return lastModified;
+		} finally {
+			if (!archive.delete()) {
+				archive.deleteOnExit();
+			}
+		}
 	}
 
-	private static long unpackZip(
+	private static void extractEntry(
 			final Context context,
-			final File path,
-			final URL remoteUrl,
-			final ArrayList<File> unpackedFiles,
-			final int retry) throws IOException {
+			final ZipFile zip,
+			final ZipEntry entry,
+			final File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final InputStream is = zip.getInputStream(entry);
+		long size = 0;
 		try {
-			final URLConnection connection = remoteUrl.openConnection();
-			//60 seconds timeout to prevent handing if case of site issues
-			connection.setConnectTimeout(60 * 1000);
-			final long lastModified = connection.getLastModified();
-			final InputStream response = connection.getInputStream();
-			final ZipInputStream zip = new ZipInputStream(new BufferedInputStream(response));
-			ZipEntry entry;
-			final byte[] buffer = new byte[8192];
-			while ((entry = zip.getNextEntry()) != null) {
-				long size = 0;
-				final File file = new File(path, entry.getName());
-				unpackedFiles.add(file);
-				final FileOutputStream fos = new FileOutputStream(file);
+			final FileOutputStream fos = new FileOutputStream(file);
+			try {
+				final byte[] buffer = new byte[65536];
 				int len;
-				while ((len = zip.read(buffer)) != -1) {
+				while ((len = is.read(buffer)) != -1) {
 					fos.write(buffer, 0, len);
+					crc.update(buffer, 0, len);
 					size += len;
 				}
+			} finally {
 				fos.close();
-				context.log("Unpacked: " + entry.getName() + ". Size: " + (size / 1024) + "kB");
-				zip.closeEntry();
 			}
-			zip.close();
-			return lastModified;
-		} catch (IOException io) {
-			context.error(io);
-			for (final File f : unpackedFiles) {
-				if (f.delete()) {
-					context.log("Cleaned up: " + f);
-				} else {
-					context.log("Failed to clean up: " + f);
+		} finally {
+			is.close();
+		}
+		if (entry.getCrc() != -1 && entry.getCrc() != crc.getValue()) {
+			throw new IOException("Checksum mismatch for " + entry.getName() + " in downloaded zip");
+		}
+		if (context.isLogEnabled()) {
+			context.log("Unpacked: " + entry.getName() + ". Size: " + (size / 1024) + "kB");
+		}
+	}
+
+	private static void extractZip(final Context context, final File archive, final File target) throws IOException {
+		final ZipFile zip = new ZipFile(archive);
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+		try {
+			final List<Future<?>> tasks = new ArrayList<Future<?>>();
+			final String root = target.getCanonicalPath() + File.separator;
+			final Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				final File file = new File(target, entry.getName());
+				if (!file.getCanonicalPath().startsWith(root)) {
+					throw new IOException("Invalid zip entry: " + entry.getName());
+				}
+				if (entry.isDirectory()) {
+					if (!file.isDirectory() && !file.mkdirs()) {
+						throw new IOException("Unable to create folder: " + file.getAbsolutePath());
+					}
+					continue;
 				}
+				final File parent = file.getParentFile();
+				if (!parent.isDirectory() && !parent.mkdirs()) {
+					throw new IOException("Unable to create folder: " + parent.getAbsolutePath());
+				}
+				tasks.add(pool.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws IOException {
+						extractEntry(context, zip, entry, file);
+						return null;
+					}
+				}));
 			}
-			if (retry > 0) {
-				context.warning("Retrying download... from " + remoteUrl);
-				return unpackZip(context, path, remoteUrl, new ArrayList<File>(), retry - 1);
+			for (final Future<?> t : tasks) {
+				try {
+					t.get();
+				} catch (ExecutionException ex) {
+					final Throwable cause = ex.getCause();
+					throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage());
+				} catch (InterruptedException ex) {
+					throw new IOException("Extraction interrupted");
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+			zip.close();
+		}
+	}
+
+	/**
+	 * Move (rename) files from source folder into the target folder,
+	 * replacing existing files.
+	 */
+	private static void moveInto(final File source, final File target) throws IOException {
+		final String[] children = source.list();
+		if (children == null) return;
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException("Unable to create folder: " + target.getAbsolutePath());
+		}
+		for (final String fn : children) {
+			final File sf = new File(source, fn);
+			final File tf = new File(target, fn);
+			if (sf.isDirectory() && tf.isDirectory()) {
+				moveInto(sf, tf);
+			} else if (!sf.renameTo(tf)) {
+				if (tf.isDirectory()) {
+					deletePath(tf);
+				}
+				if (tf.exists() && !tf.delete() || !sf.renameTo(tf)) {
+					throw new IOException("Unable to move " + sf.getAbsolutePath() + " to " + tf.getAbsolutePath());
+				}
 			}
-			throw io;
 		}
 	}
 
 	public static void downloadFile(final File file, final URL url) throws IOException {
-		downloadFileAndRetry(file, url, 3);
+		downloadFile(null, file, url, null);
 	}
 
-	private static void downloadFileAndRetry(final File file, final URL url, final int retry) throws IOException {
-		final FileOutputStream fos = new FileOutputStream(file);
+	/**
+	 * Download file into a temporary .part file and rename it to the target when complete.
+	 * Interrupted downloads are resumed with HTTP Range requests validated with If-Range.
+	 *
+	 * @param context context for logging. Can be null
+	 * @param file    target file
+	 * @param url     remote location
+	 * @param sha1    expected SHA-1 checksum in hex format. Null when unknown
+	 * @throws IOException when download fails or checksum doesn't match
+	 */
+	public static void downloadFile(final Context context, final File file, final URL url, final String sha1) throws IOException {
+		final File part = new File(file.getParentFile(), file.getName() + ".part");
 		try {
-			final byte[] buffer = new byte[8192];
-			final InputStream stream = new BufferedInputStream(url.openConnection().getInputStream());
+			final Profiler.Span span = Profiler.start(context, "network", "download");
 			try {
-				int len;
-				while ((len = stream.read(buffer)) != -1) {
-					fos.write(buffer, 0, len);
-				}
+				resumableDownload(context, part, url, 3);
 			} finally {
-				stream.close();
+				span.bytes(part.length()).files(1).end();
+			}
+			if (sha1 != null) {
+				final String actual = checksum(part, "SHA-1");
+				if (!sha1.equalsIgnoreCase(actual)) {
+					throw new IOException("Checksum mismatch for " + url + ". Expected: " + sha1 + ", found: " + actual);
+				}
+			}
+			if (!part.renameTo(file)) {
+				if (!file.delete() || !part.renameTo(file)) {
+					throw new IOException("Unable to save downloaded file: " + file.getAbsolutePath());
+				}
 			}
-		} catch (IOException io) {
-			if (retry > 0) {
-				downloadFileAndRetry(file, url, retry - 1);
-			} else throw io;
 		} finally {
-			fos.close();
+			if (part.exists()) {
+				part.delete();
+			}
+		}
+	}
+
+	public static String checksum(final File file, final String algorithm) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex.getMessage());
+		}
+		final InputStream is = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[65536];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, len);
+			}
+		} finally {
+			is.close();
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	private static long contentLength(final URLConnection conn) {
+		final String length = conn.getHeaderField("Content-Length");
+		if (length == null) return -1;
+		try {
+			return Long.parseLong(length.trim());
+		} catch (NumberFormatException ignore) {
+			return -1;
+		}
+	}
+
+	private static int responseCode(final HttpURLConnection conn) {
+		try {
+			return conn.getResponseCode();
+		} catch (IOException ignore) {
+			return -1;
+		}
+	}
+
+	private static long resumableDownload(
+			final Context context,
+			final File part,
+			final URL url,
+			final int retry) throws IOException {
+		String validator = null;
+		long lastModified = 0;
+		int attempt = 0;
+		while (true) {
+			final URLConnection conn = url.openConnection();
+			//60 seconds timeout to prevent handing if case of site issues
+			conn.setConnectTimeout(60 * 1000);
+			conn.setReadTimeout(60 * 1000);
+			final long offset = part.exists() ? part.length() : 0;
+			final boolean resume = conn instanceof HttpURLConnection && offset > 0 && validator != null;
+			if (resume) {
+				conn.setRequestProperty("Range", "bytes=" + offset + "-");
+				conn.setRequestProperty("If-Range", validator);
+			}
+			try {
+				final InputStream is = conn.getInputStream();
+				final boolean append = resume && ((HttpURLConnection) conn).getResponseCode() == 206;
+				if (!append) {
+					final String etag = conn.getHeaderField("ETag");
+					validator = etag != null && !etag.startsWith("W/") ? etag : conn.getHeaderField("Last-Modified");
+					lastModified = conn.getLastModified();
+				} else if (context != null) {
+					context.log("Resuming download of " + url + " from " + offset + " bytes");
+				}
+				final long expected = contentLength(conn);
+				long received = 0;
+				try {
+					final OutputStream os = new FileOutputStream(part, append);
+					try {
+						final byte[] buffer = new byte[65536];
+						int len;
+						while ((len = is.read(buffer)) != -1) {
+							os.write(buffer, 0, len);
+							received += len;
+						}
+					} finally {
+						os.close();
+					}
+				} finally {
+					is.close();
+				}
+				if (expected >= 0 && received < expected) {
+					throw new IOException("Incomplete download of " + url + ". Received " + received + " of " + expected + " bytes");
+				}
+				return lastModified;
+			} catch (IOException io) {
+				if (conn instanceof HttpURLConnection && responseCode((HttpURLConnection) conn) == 416) {
+					validator = null;
+				}
+				if (attempt++ >= retry) {
+					throw io;
+				}
+				if (context != null) {
+					context.warning("Retrying download... from " + url);
+				}
+			}
 		}
 	}
 
@@ -165,6 +387,21 @@ public abstract class Utils {
 		}
 	}
 
+	/**
+	 * Folder for caches shared between runs.
+	 * Defaults to .dsl-platform in user home and can be changed via dsl-platform.cache system property.
+	 */
+	public static File getUserCachePath() {
+		final String custom = System.getProperty("dsl-platform.cache");
+		final File path = custom != null
+				? new File(custom)
+				: new File(System.getProperty("user.home"), ".dsl-platform");
+		if (!path.exists()) {
+			path.mkdirs();
+		}
+		return path;
+	}
+
 	public static boolean isWindows() {
 		return System.getProperty("os.name").toLowerCase().contains("windows");
 	}
@@ -173,69 +410,30 @@ public abstract class Utils {
 		public final String output;
 		public final String error;
 		public final int exitCode;
+		public final long wallTime;
+		public final long cpuTime;
+		public final boolean truncated;
 
 		public CommandResult(final String output, final String error, final int exitCode) {
+			this(output, error, exitCode, 0, -1, false);
+		}
+
+		public CommandResult(
+				final String output,
+				final String error,
+				final int exitCode,
+				final long wallTime,
+				final long cpuTime,
+				final boolean truncated) {
 			this.output = output;
 			this.error = error;
 			this.exitCode = exitCode;
+			this.wallTime = wallTime;
+			this.cpuTime = cpuTime;
+			this.truncated = truncated;
 		}
 	}
 
-	private static class ConsumeStream extends Thread {
-		private final BufferedReader reader;
-		private final Context context;
-		private final StringBuilder output = new StringBuilder();
-		private IOException exception;
-
-		private ConsumeStream(final InputStream stream, final Context context) {
-			this.reader = new BufferedReader(new InputStreamReader(stream));
-			this.context = context;
-		}
-
-		private ConsumeStream() {
-			this.reader = null;
-			this.context = null;
-		}
-
-		static ConsumeStream start(final InputStream stream, final Context context) {
-			if (stream == null) {
-				return new ConsumeStream();
-			}
-			final ConsumeStream cs = new ConsumeStream(stream, context);
-			cs.start();
-			return cs;
-		}
-
-		@Override
-		public void run() {
-			if (reader == null) {
-				return;
-			}
-			final char[] buffer = new char[8192];
-			int len;
-			try {
-				while ((len = reader.read(buffer)) != -1) {
-					output.append(buffer, 0, len);
-					if (context != null) {
-						context.log(buffer, len);
-					}
-				}
-				reader.close();
-			} catch (IOException ex) {
-				exception = ex;
-			}
-		}
-	}
-
-	private static void logCommand(final Context context, final ProcessBuilder builder) {
-		final StringBuilder description = new StringBuilder("Running: ");
-		for (final String arg : builder.command()) {
-			description.append(arg).append(" ");
-		}
-		context.log(description.toString());
-		context.notify("EXEC", builder);
-	}
-
 	public static Either<String> findCommand(final Context context, final String path, final String name, final String contains) {
 		final String simple = path != null ? new File(path, name).getAbsolutePath() : name;
 		if (testCommand(context, simple, contains, new ArrayList<String>())) {
@@ -262,56 +460,52 @@ public abstract class Utils {
 	}
 
 	public static boolean testCommand(final Context context, final String command, final String contains, final List<String> arguments) {
-		try {
-			final List<String> commandAndArgs = new ArrayList<String>();
-			commandAndArgs.add(command);
-			commandAndArgs.addAll(arguments);
-			final ProcessBuilder pb = new ProcessBuilder(commandAndArgs);
-			logCommand(context, pb);
-			final Process compilation = pb.start();
-			final ConsumeStream result = ConsumeStream.start(compilation.getInputStream(), null);
-			final ConsumeStream error = ConsumeStream.start(compilation.getErrorStream(), null);
-			compilation.waitFor();
-			result.join();
-			error.join();
-			return error.output.toString().contains(contains) || result.output.toString().contains(contains);
-		} catch (IOException ex) {
-			context.log(ex.getMessage());
-			return false;
-		} catch (InterruptedException ex) {
-			context.log(ex.getMessage());
+		final String key = ToolchainCache.key(command, contains, arguments);
+		final String fingerprint = ToolchainCache.fingerprint(command, arguments);
+		final Boolean cached = ToolchainCache.lookup(key, fingerprint);
+		if (cached != null) {
+			context.log("Using cached validation of " + command + ": " + cached);
+			return cached;
+		}
+		final List<String> commandAndArgs = new ArrayList<String>();
+		commandAndArgs.add(command);
+		commandAndArgs.addAll(arguments);
+		final AtomicBoolean found = new AtomicBoolean();
+		final ProcessExecutor.LineListener matcher = new ProcessExecutor.LineListener() {
+			@Override
+			public void onLine(final String line, final boolean isError) {
+				if (!found.get() && line.contains(contains)) {
+					found.set(true);
+				}
+			}
+		};
+		final Either<CommandResult> result = ProcessExecutor.run(context, commandAndArgs, null, matcher, 0, 0);
+		if (!result.isSuccess()) {
+			context.log(result.explainError());
+			if (result.whyNot() instanceof IOException) {
+				ToolchainCache.store(key, fingerprint, false);
+			}
 			return false;
 		}
+		ToolchainCache.store(key, fingerprint, found.get());
+		return found.get();
 	}
 
 	public static Either<CommandResult> runCommand(final Context context, final String command, final File path, final List<String> arguments) {
-		try {
-			final List<String> commandAndArgs = new ArrayList<String>();
-			commandAndArgs.add(command);
-			commandAndArgs.addAll(arguments);
-			final ProcessBuilder pb = new ProcessBuilder(commandAndArgs);
-			if (path != null) {
-				pb.directory(path);
-			}
-			logCommand(context, pb);
-			final Process compilation = pb.start();
-			final ConsumeStream result = ConsumeStream.start(compilation.getInputStream(), context);
-			final ConsumeStream error = ConsumeStream.start(compilation.getErrorStream(), context);
-			final int exitCode = compilation.waitFor();
-			result.join();
-			error.join();
-			if (result.exception != null) {
-				return Either.fail(result.exception);
-			}
-			if (error.exception != null) {
-				return Either.fail(error.exception);
-			}
-			return Either.success(new CommandResult(result.output.toString(), error.output.toString(), exitCode));
-		} catch (IOException ex) {
-			return Either.fail(ex);
-		} catch (InterruptedException ex) {
-			return Either.fail(ex);
-		}
+		return runCommand(context, command, path, arguments, null, ProcessExecutor.UNLIMITED);
+	}
+
+	public static Either<CommandResult> runCommand(
+			final Context context,
+			final String command,
+			final File path,
+			final List<String> arguments,
+			final ProcessExecutor.LineListener listener,
+			final int captureLimit) {
+		final List<String> commandAndArgs = new ArrayList<String>();
+		commandAndArgs.add(command);
+		commandAndArgs.addAll(arguments);
+		return ProcessExecutor.run(context, commandAndArgs, path, listener, captureLimit, 0);
 	}
 
 	public static void deletePath(final File path) throws IOException {
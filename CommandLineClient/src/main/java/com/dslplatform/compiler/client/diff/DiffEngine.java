@@ -0,0 +1,21 @@
+package com.dslplatform.compiler.client.diff;
+
+import java.util.List;
+
+/**
+ * Algorithm for comparing two versions of a DSL file.
+ * Result is a list of equal, deleted and inserted segments which
+ * reproduce the previous text (equal and deleted) and the current text (equal and inserted).
+ */
+public interface DiffEngine {
+	/**
+	 * Differences between previous and current text.
+	 * When the deadline is reached, engine should return a coarser, but still valid diff.
+	 *
+	 * @param previous old version
+	 * @param current  new version
+	 * @param deadline time (in ms) when the diff should be complete by
+	 * @return list of segments
+	 */
+	List<diff_match_patch.Diff> diff(String previous, String current, long deadline);
+}
@@ -0,0 +1,426 @@
+package com.dslplatform.compiler.client.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Diff working on int arrays.
+ * Lines are converted to ids first and compared with histogram diff:
+ * the region is split around the rarest common line and the halves are compared recursively.
+ * When only frequent lines are common, Myers diff in linear space is used.
+ * Common lines at the start and the end are skipped before lines are indexed.
+ * Changed hunks are refined with diff_match_patch, bounded in size and time as in {@link LineDiff}.
+ * Edit script is kept as changed flags for each line,
+ * while segments are substrings of the original texts.
+ * Output has the same shape as the diff_match_patch based engine:
+ * delete comes before insert and segments of the same kind are merged.
+ */
+public final class HistogramDiff implements DiffEngine {
+
+	private static final int CLOCK_CHECK = 256;
+	//lines which occur more often are not used as split points
+	private static final int MAX_CHAIN = 64;
+
+	//Bisect working state. Allocated once per compared pair and reused by recursion
+	private static final class Script {
+		final int[] a;
+		final int[] b;
+		final boolean[] deleted;
+		final boolean[] inserted;
+		final long deadline;
+		int[] forward;
+		int[] backward;
+		int clock;
+
+		Script(final int[] a, final int[] b, final long deadline) {
+			this.a = a;
+			this.b = b;
+			this.deleted = new boolean[a.length];
+			this.inserted = new boolean[b.length];
+			this.deadline = deadline;
+		}
+
+		boolean expired() {
+			if (++clock < CLOCK_CHECK) return false;
+			clock = 0;
+			return System.currentTimeMillis() > deadline;
+		}
+
+		void changed(final int aLo, final int aHi, final int bLo, final int bHi) {
+			for (int i = aLo; i < aHi; i++) deleted[i] = true;
+			for (int j = bLo; j < bHi; j++) inserted[j] = true;
+		}
+
+		//Histogram diff with explicit stack, since splits can be unbalanced
+		void histogram(final int[] counts) {
+			int[] stack = new int[64];
+			int top = 0;
+			stack[top++] = 0;
+			stack[top++] = a.length;
+			stack[top++] = 0;
+			stack[top++] = b.length;
+			while (top > 0) {
+				int bHi = stack[--top];
+				int bLo = stack[--top];
+				int aHi = stack[--top];
+				int aLo = stack[--top];
+				while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+					aLo++;
+					bLo++;
+				}
+				while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+					aHi--;
+					bHi--;
+				}
+				if (aLo == aHi || bLo == bHi || System.currentTimeMillis() > deadline) {
+					changed(aLo, aHi, bLo, bHi);
+					continue;
+				}
+				for (int i = aLo; i < aHi; i++) {
+					counts[a[i]]++;
+				}
+				//rarest common line, closest to the middle for balanced splits
+				final int middle = (bLo + bHi) >>> 1;
+				int best = -1;
+				int bestCount = MAX_CHAIN + 1;
+				boolean common = false;
+				for (int j = bLo; j < bHi; j++) {
+					final int count = counts[b[j]];
+					if (count == 0) continue;
+					common = true;
+					if (count < bestCount || count == bestCount && Math.abs(j - middle) < Math.abs(best - middle)) {
+						best = j;
+						bestCount = count;
+					}
+				}
+				for (int i = aLo; i < aHi; i++) {
+					counts[a[i]] = 0;
+				}
+				if (best == -1) {
+					if (common) {
+						compare(aLo, aHi, bLo, bHi);
+					} else {
+						changed(aLo, aHi, bLo, bHi);
+					}
+					continue;
+				}
+				//matching line at the most similar relative position
+				final int target = aLo + (int) ((long) (best - bLo) * (aHi - aLo) / (bHi - bLo));
+				int match = -1;
+				for (int i = aLo; i < aHi; i++) {
+					if (a[i] == b[best] && (match == -1 || Math.abs(i - target) < Math.abs(match - target))) {
+						match = i;
+					}
+				}
+				int aStart = match;
+				int bStart = best;
+				while (aStart > aLo && bStart > bLo && a[aStart - 1] == b[bStart - 1]) {
+					aStart--;
+					bStart--;
+				}
+				int aEnd = match + 1;
+				int bEnd = best + 1;
+				while (aEnd < aHi && bEnd < bHi && a[aEnd] == b[bEnd]) {
+					aEnd++;
+					bEnd++;
+				}
+				if (top + 8 > stack.length) {
+					final int[] copy = new int[stack.length * 2];
+					System.arraycopy(stack, 0, copy, 0, top);
+					stack = copy;
+				}
+				stack[top++] = aEnd;
+				stack[top++] = aHi;
+				stack[top++] = bEnd;
+				stack[top++] = bHi;
+				stack[top++] = aLo;
+				stack[top++] = aStart;
+				stack[top++] = bLo;
+				stack[top++] = bStart;
+			}
+		}
+
+		void compare(int aLo, int aHi, int bLo, int bHi) {
+			while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+				aLo++;
+				bLo++;
+			}
+			while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+				aHi--;
+				bHi--;
+			}
+			if (aLo == aHi || bLo == bHi || System.currentTimeMillis() > deadline) {
+				changed(aLo, aHi, bLo, bHi);
+				return;
+			}
+			bisect(aLo, aHi, bLo, bHi);
+		}
+
+		//Find the middle snake and split the problem in two
+		private void bisect(final int aLo, final int aHi, final int bLo, final int bHi) {
+			final int n = aHi - aLo;
+			final int m = bHi - bLo;
+			final int maxD = (n + m + 1) / 2;
+			final int offset = maxD;
+			final int length = 2 * maxD;
+			if (forward == null || forward.length < length + 2) {
+				forward = new int[length + 2];
+				backward = new int[length + 2];
+			}
+			final int[] v1 = forward;
+			final int[] v2 = backward;
+			//diagonals are initialized as the search widens, instead of clearing the whole buffer
+			v1[offset - 1] = -1;
+			v1[offset] = -1;
+			v1[offset + 1] = 0;
+			v2[offset - 1] = -1;
+			v2[offset] = -1;
+			v2[offset + 1] = 0;
+			final int delta = n - m;
+			final boolean front = (delta & 1) != 0;
+			int k1start = 0;
+			int k1end = 0;
+			int k2start = 0;
+			int k2end = 0;
+			for (int d = 0; d < maxD; d++) {
+				if (expired()) break;
+				if (d > 0) {
+					v1[offset - d - 1] = -1;
+					v1[offset + d + 1] = -1;
+					v2[offset - d - 1] = -1;
+					v2[offset + d + 1] = -1;
+				}
+				for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+					final int k1Offset = offset + k1;
+					int x1 = k1 == -d || k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1]
+							? v1[k1Offset + 1]
+							: v1[k1Offset - 1] + 1;
+					int y1 = x1 - k1;
+					while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+						x1++;
+						y1++;
+					}
+					v1[k1Offset] = x1;
+					if (x1 > n) {
+						k1end += 2;
+					} else if (y1 > m) {
+						k1start += 2;
+					} else if (front) {
+						final int k2Offset = offset + delta - k1;
+						if (Math.abs(delta - k1) <= d + 1 && v2[k2Offset] != -1 && x1 >= n - v2[k2Offset]) {
+							split(aLo, aHi, bLo, bHi, x1, y1);
+							return;
+						}
+					}
+				}
+				for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+					final int k2Offset = offset + k2;
+					int x2 = k2 == -d || k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1]
+							? v2[k2Offset + 1]
+							: v2[k2Offset - 1] + 1;
+					int y2 = x2 - k2;
+					while (x2 < n && y2 < m && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+						x2++;
+						y2++;
+					}
+					v2[k2Offset] = x2;
+					if (x2 > n) {
+						k2end += 2;
+					} else if (y2 > m) {
+						k2start += 2;
+					} else if (!front) {
+						final int k1Offset = offset + delta - k2;
+						if (Math.abs(delta - k2) <= d + 1 && v1[k1Offset] != -1) {
+							final int x1 = v1[k1Offset];
+							final int y1 = offset + x1 - k1Offset;
+							if (x1 >= n - x2) {
+								split(aLo, aHi, bLo, bHi, x1, y1);
+								return;
+							}
+						}
+					}
+				}
+			}
+			//out of time or no common subsequence
+			changed(aLo, aHi, bLo, bHi);
+		}
+
+		private void split(final int aLo, final int aHi, final int bLo, final int bHi, final int x, final int y) {
+			compare(aLo, aLo + x, bLo, bLo + y);
+			compare(aLo + x, aHi, bLo + y, bHi);
+		}
+	}
+
+	//Line start offsets. Last element is the text length
+	static int[] lineStarts(final String text) {
+		int count = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') count++;
+		}
+		final boolean trailing = text.length() > 0 && text.charAt(text.length() - 1) != '\n';
+		final int[] starts = new int[count + (trailing ? 2 : 1)];
+		int line = 1;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') starts[line++] = i + 1;
+		}
+		starts[starts.length - 1] = text.length();
+		return starts;
+	}
+
+	//Assign the same id to equal lines in both texts using open addressing on text regions
+	private static final class LineIds {
+		private final int[] slots;
+		private final int mask;
+		private final List<String> texts = new ArrayList<String>(2);
+		private int[] owner = new int[64];
+		private int[] start = new int[64];
+		private int[] end = new int[64];
+		private int size;
+
+		LineIds(final int lines) {
+			int capacity = 16;
+			while (capacity < lines * 2) capacity <<= 1;
+			slots = new int[capacity];
+			mask = capacity - 1;
+		}
+
+		int[] ids(final String text, final int[] starts) {
+			final int index = texts.size();
+			texts.add(text);
+			final int[] result = new int[starts.length - 1];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = id(index, text, starts[i], starts[i + 1]);
+			}
+			return result;
+		}
+
+		private int id(final int index, final String text, final int from, final int to) {
+			int hash = 0;
+			for (int i = from; i < to; i++) {
+				hash = 31 * hash + text.charAt(i);
+			}
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (true) {
+				final int existing = slots[slot] - 1;
+				if (existing == -1) break;
+				final int len = end[existing] - start[existing];
+				if (len == to - from && texts.get(owner[existing]).regionMatches(start[existing], text, from, len)) {
+					return existing;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (size == owner.length) {
+				owner = grow(owner);
+				start = grow(start);
+				end = grow(end);
+			}
+			owner[size] = index;
+			start[size] = from;
+			end[size] = to;
+			slots[slot] = ++size;
+			return size - 1;
+		}
+
+		private static int[] grow(final int[] array) {
+			final int[] copy = new int[array.length * 2];
+			System.arraycopy(array, 0, copy, 0, array.length);
+			return copy;
+		}
+	}
+
+	private static void add(
+			final List<diff_match_patch.Diff> diffs,
+			final diff_match_patch.Operation operation,
+			final String text) {
+		if (text.length() == 0) return;
+		final int last = diffs.size() - 1;
+		if (last >= 0 && diffs.get(last).operation == operation) {
+			final diff_match_patch.Diff previous = diffs.get(last);
+			previous.text = previous.text.concat(text);
+		} else {
+			diffs.add(new diff_match_patch.Diff(operation, text));
+		}
+	}
+
+	//Convert changed lines to segments. Offsets map line index to text position
+	private static void segments(
+			final Script script,
+			final String previous,
+			final int[] previousOffsets,
+			final String current,
+			final int[] currentOffsets,
+			final List<diff_match_patch.Diff> diffs,
+			final diff_match_patch refiner) {
+		final int n = script.deleted.length;
+		final int m = script.inserted.length;
+		int i = 0;
+		int j = 0;
+		while (i < n || j < m) {
+			final int deleteStart = i;
+			while (i < n && script.deleted[i]) i++;
+			final int insertStart = j;
+			while (j < m && script.inserted[j]) j++;
+			final String deleted = previous.substring(previousOffsets[deleteStart], previousOffsets[i]);
+			final String inserted = current.substring(currentOffsets[insertStart], currentOffsets[j]);
+			final long remaining = script.deadline - System.currentTimeMillis();
+			if (deleted.length() > 0 && inserted.length() > 0
+					&& deleted.length() + inserted.length() <= LineDiff.MAX_REFINE_LENGTH
+					&& remaining > 0) {
+				//zero timeout is treated as unlimited
+				refiner.Diff_Timeout = Math.max(remaining, 1) / 1000f;
+				for (final diff_match_patch.Diff d : refiner.diff_main(deleted, inserted, false)) {
+					add(diffs, d.operation, d.text);
+				}
+			} else {
+				add(diffs, diff_match_patch.Operation.DELETE, deleted);
+				add(diffs, diff_match_patch.Operation.INSERT, inserted);
+			}
+			final int equalStart = i;
+			while (i < n && j < m && !script.deleted[i] && !script.inserted[j]) {
+				i++;
+				j++;
+			}
+			add(diffs, diff_match_patch.Operation.EQUAL,
+					previous.substring(previousOffsets[equalStart], previousOffsets[i]));
+		}
+	}
+
+
+	private static boolean isLineStart(final String text, final int index) {
+		return index == 0 || text.charAt(index - 1) == '\n';
+	}
+
+	@Override
+	public List<diff_match_patch.Diff> diff(final String previous, final String current, final long deadline) {
+		final List<diff_match_patch.Diff> diffs = new ArrayList<diff_match_patch.Diff>();
+		if (previous.equals(current)) {
+			add(diffs, diff_match_patch.Operation.EQUAL, previous);
+			return diffs;
+		}
+		//common lines at the start and the end are skipped before lines are indexed, since usually only a few lines change
+		final int min = Math.min(previous.length(), current.length());
+		int prefix = 0;
+		while (prefix < min && previous.charAt(prefix) == current.charAt(prefix)) prefix++;
+		while (prefix > 0 && previous.charAt(prefix - 1) != '\n') prefix--;
+		int suffix = 0;
+		while (suffix < min - prefix
+				&& previous.charAt(previous.length() - suffix - 1) == current.charAt(current.length() - suffix - 1)) {
+			suffix++;
+		}
+		while (suffix > 0
+				&& !(isLineStart(previous, previous.length() - suffix) && isLineStart(current, current.length() - suffix))) {
+			suffix--;
+		}
+		final String before = previous.substring(prefix, previous.length() - suffix);
+		final String after = current.substring(prefix, current.length() - suffix);
+		add(diffs, diff_match_patch.Operation.EQUAL, previous.substring(0, prefix));
+		final int[] previousStarts = lineStarts(before);
+		final int[] currentStarts = lineStarts(after);
+		final LineIds ids = new LineIds(previousStarts.length + currentStarts.length);
+		final Script lines = new Script(ids.ids(before, previousStarts), ids.ids(after, currentStarts), deadline);
+		lines.histogram(new int[ids.size]);
+		segments(lines, before, previousStarts, after, currentStarts, diffs, new diff_match_patch());
+		add(diffs, diff_match_patch.Operation.EQUAL, previous.substring(previous.length() - suffix));
+		return diffs;
+	}
+}
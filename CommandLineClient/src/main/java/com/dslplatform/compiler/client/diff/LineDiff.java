@@ -0,0 +1,99 @@
+package com.dslplatform.compiler.client.diff;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Line oriented diff based on diff_match_patch.
+ * Texts are compared line by line first and only changed hunks are refined character by character.
+ * Refinement is skipped for large hunks or when the deadline has passed,
+ * so the result is always a valid (but possibly coarser) diff.
+ */
+public final class LineDiff implements DiffEngine {
+
+	static final int MAX_REFINE_LENGTH = 10000;
+
+	@Override
+	public List<diff_match_patch.Diff> diff(final String previous, final String current, final long deadline) {
+		return new Worker(deadline).diff(previous, current);
+	}
+
+	//diff_match_patch keeps timeout in a mutable field, so a new instance is used for each diff
+	private static class Worker extends diff_match_patch {
+		private final long deadline;
+
+		Worker(final long deadline) {
+			this.deadline = deadline;
+		}
+
+		private boolean updateTimeout() {
+			final long remaining = deadline - System.currentTimeMillis();
+			//zero timeout is treated as unlimited
+			Diff_Timeout = Math.max(remaining, 1) / 1000f;
+			return remaining > 0;
+		}
+
+		LinkedList<Diff> diff(final String previous, final String current) {
+			final LinesToCharsResult lines = diff_linesToChars(previous, current);
+			if (lines.lineArray.size() > Character.MAX_VALUE) {
+				updateTimeout();
+				return diff_main(previous, current, false);
+			}
+			updateTimeout();
+			final LinkedList<Diff> diffs = diff_main(lines.chars1, lines.chars2, false);
+			diff_charsToLines(diffs, lines.lineArray);
+			diff_cleanupSemantic(diffs);
+			refine(diffs);
+			diff_cleanupMerge(diffs);
+			removeEmpty(diffs);
+			return diffs;
+		}
+
+		//merge can leave empty segments behind, which would be shown as empty changes
+		private static void removeEmpty(final LinkedList<Diff> diffs) {
+			final ListIterator<Diff> pointer = diffs.listIterator();
+			while (pointer.hasNext()) {
+				if (pointer.next().text.length() == 0) {
+					pointer.remove();
+				}
+			}
+		}
+
+		private void refine(final LinkedList<Diff> diffs) {
+			diffs.add(new Diff(Operation.EQUAL, ""));
+			final StringBuilder deleted = new StringBuilder();
+			final StringBuilder inserted = new StringBuilder();
+			int count = 0;
+			final ListIterator<Diff> pointer = diffs.listIterator();
+			while (pointer.hasNext()) {
+				final Diff d = pointer.next();
+				if (d.operation == Operation.DELETE) {
+					deleted.append(d.text);
+					count++;
+				} else if (d.operation == Operation.INSERT) {
+					inserted.append(d.text);
+					count++;
+				} else {
+					if (deleted.length() > 0 && inserted.length() > 0
+							&& deleted.length() + inserted.length() <= MAX_REFINE_LENGTH
+							&& updateTimeout()) {
+						pointer.previous();
+						for (int i = 0; i < count; i++) {
+							pointer.previous();
+							pointer.remove();
+						}
+						for (final Diff r : diff_main(deleted.toString(), inserted.toString(), false)) {
+							pointer.add(r);
+						}
+						pointer.next();
+					}
+					deleted.setLength(0);
+					inserted.setLength(0);
+					count = 0;
+				}
+			}
+			diffs.removeLast();
+		}
+	}
+}
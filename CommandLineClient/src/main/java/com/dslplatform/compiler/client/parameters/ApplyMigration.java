@@ -1,10 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.io.File;
+import java.util.EnumSet;
+import java.util.Set;
 
-public enum ApplyMigration implements CompileParameter {
+public enum ApplyMigration implements CompileParameter, ActionResources {
 	INSTANCE;
 
 	@Override
@@ -17,7 +20,7 @@ public enum ApplyMigration implements CompileParameter {
 		return null;
 	}
 
-	private static boolean hasDestructive(final String[] descriptions) {
+	static boolean hasDestructive(final String[] descriptions) {
 		for (int i = 1; i < descriptions.length; i += 2) {
 			final String desc = descriptions[i];
 			if (desc.startsWith("--REMOVE:") || desc.startsWith("--UNKNOWN:")) {
@@ -27,11 +30,26 @@ public enum ApplyMigration implements CompileParameter {
 		return false;
 	}
 
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.MIGRATION)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.PREVIOUS_DSL)
+				: EnumSet.noneOf(Resource.class);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
 			if (!context.contains(PostgresConnection.INSTANCE)
-					&& !context.contains(OracleConnection.INSTANCE)) {
+					&& !context.contains(OracleConnection.INSTANCE)
+					&& !context.contains(Tenants.INSTANCE)) {
 				context.error("Connection string is required to apply migration script.\n" +
 						"Neither Oracle od Postgres connection string was defined.");
 				throw new ExitException();
@@ -46,6 +64,12 @@ public enum ApplyMigration implements CompileParameter {
 	@Override
 	public void run(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
+			//migrations for tenant databases are applied by the tenants option
+			if (context.contains(Tenants.INSTANCE)
+					&& !context.contains(PostgresConnection.INSTANCE)
+					&& !context.contains(OracleConnection.INSTANCE)) {
+				return;
+			}
 			final File postgres = Migration.getPostgresMigrationFile(context);
 			final File oracle = Migration.getOracleMigrationFile(context);
 			if (postgres == null && oracle == null) {
@@ -68,8 +92,8 @@ public enum ApplyMigration implements CompileParameter {
 		}
 
 		@Override
-		public void execute(Context context, String sql) throws ExitException {
-			PostgresConnection.execute(context, sql);
+		public void execute(Context context, String sql, File report) throws ExitException {
+			PostgresConnection.execute(context, sql, report);
 		}
 	};
 
@@ -80,7 +104,7 @@ public enum ApplyMigration implements CompileParameter {
 		}
 
 		@Override
-		public void execute(Context context, String sql) throws ExitException {
+		public void execute(Context context, String sql, File report) throws ExitException {
 			OracleConnection.execute(context, sql);
 		}
 	};
@@ -89,7 +113,7 @@ public enum ApplyMigration implements CompileParameter {
 	private interface DB {
 		String getDName();
 
-		void execute(final Context context, final String sql) throws ExitException;
+		void execute(final Context context, final String sql, final File report) throws ExitException;
 	}
 
 	private static void applyMigrationScript(final Context context, final File file, final DB db) throws ExitException {
@@ -132,7 +156,9 @@ public enum ApplyMigration implements CompileParameter {
 			}
 		}
 		context.show("Applying migration...");
-		db.execute(context, sql);
+		final String name = file.getName();
+		final String reportName = (name.endsWith(".sql") ? name.substring(0, name.length() - 4) : name) + "-report.json";
+		db.execute(context, sql, new File(file.getParentFile(), reportName));
 		if (file.renameTo(new File(file.getParentFile(), "applied-" + file.getName()))) {
 			context.show("Database migrated and script renamed to: applied-" + file.getName());
 		} else {
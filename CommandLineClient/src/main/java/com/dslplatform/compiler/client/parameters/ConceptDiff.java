@@ -0,0 +1,220 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.diff.DiffEngine;
+
+import java.util.*;
+
+/**
+ * Structural diff of DSL.
+ * Files are tokenized by the compiler and concepts are indexed by their fully qualified name.
+ * Concept is identified by the tokens (type and value) between rule start and rule end,
+ * so formatting, comments, moving concepts between files or reordering them is not reported as a change.
+ * Only concepts with changed tokens are compared as text.
+ */
+final class ConceptDiff {
+
+	//module and concepts inside a module are indexed. Deeper rules are part of their concept
+	private static final int MAX_DEPTH = 2;
+
+	interface Tokenizer {
+		Either<DslCompiler.ParseResult> parse(String dsl);
+	}
+
+	static final class Concept {
+		final String name;
+		final String file;
+		//normalized tokens of all parts
+		final String identity;
+		final String text;
+		//tokens of distinct parts when concept is defined in several places
+		private final SortedSet<String> parts;
+
+		Concept(final String name, final String file, final SortedSet<String> parts, final String text) {
+			this.name = name;
+			this.file = file;
+			this.parts = parts;
+			this.text = text;
+			final StringBuilder sb = new StringBuilder();
+			for (final String p : parts) {
+				sb.append(p.length()).append(':').append(p);
+			}
+			this.identity = sb.toString();
+		}
+	}
+
+	private static final class Frame {
+		final Frame parent;
+		final int depth;
+		String name;
+		//type and length prefixed values, so different tokens can't produce the same identity
+		final StringBuilder identity = new StringBuilder();
+		int firstLine = Integer.MAX_VALUE;
+		int lastLine;
+		final StringBuilder tokens = new StringBuilder();
+
+		Frame(final Frame parent) {
+			this.parent = parent;
+			this.depth = parent == null ? 0 : parent.name != null ? parent.depth + 1 : parent.depth;
+		}
+
+		boolean isIndexed() {
+			return name != null && depth < MAX_DEPTH;
+		}
+
+		String fullName() {
+			Frame p = parent;
+			while (p != null && !p.isIndexed()) p = p.parent;
+			return p == null ? name : p.fullName() + "." + name;
+		}
+
+		void mark(final int line) {
+			if (line > 0) {
+				firstLine = Math.min(firstLine, line);
+				lastLine = Math.max(lastLine, line);
+			}
+		}
+
+		void add(final DslCompiler.SyntaxConcept token) {
+			identity.append(token.type.ordinal()).append(':').append(token.value.length()).append(':').append(token.value);
+			mark(token.line);
+			if (tokens.length() > 0) tokens.append(' ');
+			tokens.append(token.value);
+		}
+
+		void merge(final Frame child) {
+			identity.append('(').append(child.identity).append(')');
+			firstLine = Math.min(firstLine, child.firstLine);
+			lastLine = Math.max(lastLine, child.lastLine);
+			if (child.tokens.length() > 0) {
+				if (tokens.length() > 0) tokens.append(' ');
+				tokens.append(child.tokens);
+			}
+		}
+	}
+
+	/**
+	 * Index concepts from a single file.
+	 * When the same concept is found in several files (eg. module split across files)
+	 * its distinct parts are combined independently of their order.
+	 */
+	static void index(
+			final String file,
+			final String source,
+			final List<DslCompiler.SyntaxConcept> tokens,
+			final Map<String, Concept> concepts) {
+		String[] lines = null;
+		Frame top = null;
+		for (final DslCompiler.SyntaxConcept t : tokens) {
+			if (t.type == DslCompiler.SyntaxType.RuleStart) {
+				top = new Frame(top);
+				top.mark(t.line);
+			} else if (t.type == DslCompiler.SyntaxType.RuleEnd) {
+				if (top == null) continue;
+				final Frame frame = top;
+				frame.mark(t.line);
+				top = frame.parent;
+				if (frame.isIndexed()) {
+					if (lines == null) lines = source.split("\n", -1);
+					final SortedSet<String> parts = new TreeSet<String>();
+					parts.add(frame.identity.toString());
+					add(concepts, new Concept(frame.fullName(), file, parts, text(frame, lines)));
+				} else if (top != null) {
+					top.merge(frame);
+				}
+			} else if (top != null) {
+				if (top.name == null && t.type == DslCompiler.SyntaxType.Identifier) {
+					top.name = t.value;
+				}
+				top.add(t);
+			}
+		}
+	}
+
+	private static String text(final Frame frame, final String[] lines) {
+		if (frame.lastLine == 0 || frame.lastLine > lines.length) {
+			return frame.tokens.toString();
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = frame.firstLine; i <= frame.lastLine; i++) {
+			sb.append(lines[i - 1]).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void add(final Map<String, Concept> concepts, final Concept concept) {
+		final Concept existing = concepts.get(concept.name);
+		if (existing == null) {
+			concepts.put(concept.name, concept);
+		} else if (!existing.parts.containsAll(concept.parts)) {
+			final SortedSet<String> parts = new TreeSet<String>(existing.parts);
+			parts.addAll(concept.parts);
+			concepts.put(concept.name, new Concept(concept.name, existing.file, parts, existing.text + concept.text));
+		}
+	}
+
+	/**
+	 * Tokenize and index all files.
+	 *
+	 * @return failure when some file could not be tokenized
+	 */
+	static Either<Map<String, Concept>> index(final Tokenizer tokenizer, final Map<String, String> dsls) {
+		final Map<String, Concept> concepts = new HashMap<String, Concept>();
+		for (final String file : new TreeSet<String>(dsls.keySet())) {
+			final String source = dsls.get(file);
+			final Either<DslCompiler.ParseResult> result = tokenizer.parse(source);
+			if (!result.isSuccess()) {
+				return Either.fail("Unable to tokenize " + file + ": " + result.explainError());
+			}
+			final DslCompiler.ParseError error = result.get().error;
+			if (error != null) {
+				return Either.fail("Unable to tokenize " + file + " at line " + error.line + ": " + error.error);
+			}
+			index(file, source, result.get().tokens, concepts);
+		}
+		return Either.success(concepts);
+	}
+
+	/**
+	 * Show new, removed and changed concepts.
+	 *
+	 * @return true when some change was found
+	 */
+	static boolean compare(
+			final Context context,
+			final Map<String, Concept> previous,
+			final Map<String, Concept> current,
+			final DiffEngine engine,
+			final long deadline,
+			final boolean inColor) {
+		final Set<String> names = new TreeSet<String>(previous.keySet());
+		names.addAll(current.keySet());
+		boolean changed = false;
+		for (final String name : names) {
+			final Concept p = previous.get(name);
+			final Concept c = current.get(name);
+			if (p == null) {
+				changed = true;
+				context.show("New concept: " + name + " in " + c.file);
+				context.log("----------------------------------------------");
+				context.log(c.text);
+			} else if (c == null) {
+				changed = true;
+				context.show("Removed concept: " + name + " from " + p.file);
+				context.log("----------------------------------------------");
+				context.log(p.text);
+			} else if (!p.identity.equals(c.identity)) {
+				changed = true;
+				context.show("Changed concept: " + name
+						+ (p.file.equals(c.file) ? " in " + c.file : " moved from " + p.file + " to " + c.file));
+				context.show("----------------------------------------------");
+				context.show(Diff.render(engine.diff(p.text, c.text, deadline), inColor));
+				context.show();
+			} else if (!p.file.equals(c.file)) {
+				context.log("Moved concept: " + name + " from " + p.file + " to " + c.file);
+			}
+		}
+		return changed;
+	}
+}
@@ -0,0 +1,46 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+
+public enum Daemon implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() { return "daemon"; }
+	@Override
+	public String getUsage() { return null; }
+
+	@Override
+	public boolean check(final Context context) {
+		//daemon is started and stopped by Main when it's the only argument
+		if (context.contains(INSTANCE)) {
+			context.error("Daemon option can't be combined with other options.");
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Keep running in the background to speed up following runs";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Start the client as a resident process for the current folder.\n" +
+				"Following runs from the same folder are forwarded to it, so they don't pay for JVM startup,\n" +
+				"plugin discovery and cold caches. DSL compiler used by a run is kept running for the next ones.\n" +
+				"Daemon stops after 3 hours without runs (-Ddsl-platform.daemon-idle=minutes),\n" +
+				"when the client is updated, or with daemon=stop.\n" +
+				"Runs are processed locally when -Ddsl-platform.daemon=false is specified,\n" +
+				"or when environment variables or dsl-platform properties differ from the daemon ones.\n" +
+				"Daemon processes one run at a time. Run started while daemon is busy is processed locally.\n" +
+				"Example:\n" +
+				"\tdaemon\n" +
+				"\tdaemon=stop";
+	}
+}
@@ -3,6 +3,9 @@ package com.dslplatform.compiler.client.parameters;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.ExitException;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -19,28 +22,118 @@ class DatabaseInfo {
 		this.dsl = dsl;
 	}
 
-	private static String unescape(final String element) {
-		return element.replace("\\\"", "\"").replace("\\\\", "\\");
+	//Minimal buffered reader without synchronization, tracking the position for error reporting
+	private static final class HstoreReader {
+		private final Reader reader;
+		private final char[] buffer = new char[8192];
+		private int length;
+		private int index;
+		private long position;
+
+		HstoreReader(final Reader reader) {
+			this.reader = reader;
+		}
+
+		int read() throws IOException {
+			if (index == length) {
+				length = reader.read(buffer, 0, buffer.length);
+				index = 0;
+				if (length <= 0) {
+					length = 0;
+					return -1;
+				}
+			}
+			position++;
+			return buffer[index++];
+		}
+
+		int readSignificant() throws IOException {
+			int c;
+			do {
+				c = read();
+			} while (c != -1 && Character.isWhitespace(c));
+			return c;
+		}
 	}
 
-	static Map<String, String> convertToMap(final String dsls, final Context context) throws ExitException {
-		final Map<String, String> tuples = new LinkedHashMap<String, String>();
-		if (dsls == null || dsls.length() == 0) {
-			return tuples;
+	private static ExitException invalid(final Context context, final HstoreReader reader, final String expected, final int found) {
+		context.error("Invalid DSL found in database. Unable to parse it as map. Expecting " + expected
+				+ " at position " + reader.position + ", but found "
+				+ (found == -1 ? "end of input" : "'" + (char) found + "'"));
+		return new ExitException();
+	}
+
+	private static String readQuoted(
+			final Context context,
+			final HstoreReader reader,
+			final StringBuilder sb) throws IOException, ExitException {
+		sb.setLength(0);
+		int c;
+		while ((c = reader.read()) != '"') {
+			if (c == -1) {
+				throw invalid(context, reader, "'\"'", c);
+			}
+			if (c == '\\') {
+				c = reader.read();
+				if (c == -1) {
+					throw invalid(context, reader, "escaped character", c);
+				}
+			}
+			sb.append((char) c);
 		}
-		final int endLength = dsls.length() - 1;
-		if (dsls.charAt(0) != '"' || dsls.charAt(endLength) != '"') {
-			context.error("Invalid DSL found in database. Unable to parse it as map: " + dsls);
-			throw new ExitException();
+		return sb.toString();
+	}
+
+	static Map<String, String> convertToMap(final String dsls, final Context context) throws ExitException {
+		if (dsls == null) {
+			return new LinkedHashMap<String, String>();
 		}
-		final String[] pairs = dsls.substring(1, endLength).split("\", ?\"", -1);
-		for (final String pair : pairs) {
-			final String[] kv = pair.split("\"=>\"", -1);
-			if (kv.length != 2) {
-				context.error("Invalid DSL found in database. Unable to parse it as map: " + dsls);
-				throw new ExitException();
+		return convertToMap(new StringReader(dsls), context);
+	}
+
+	/**
+	 * Parse hstore text representation ("key"=>"value", ...) in a single pass.
+	 * Escaped characters are unescaped while reading.
+	 *
+	 * @param dsls    hstore content. Can be a database character stream
+	 * @param context context for error reporting
+	 * @return DSL files in the order found in the input
+	 * @throws ExitException when input is not a valid hstore
+	 */
+	static Map<String, String> convertToMap(final Reader dsls, final Context context) throws ExitException {
+		final Map<String, String> tuples = new LinkedHashMap<String, String>();
+		final HstoreReader reader = new HstoreReader(dsls);
+		final StringBuilder sb = new StringBuilder();
+		try {
+			int c = reader.readSignificant();
+			while (c != -1) {
+				if (c != '"') {
+					throw invalid(context, reader, "'\"'", c);
+				}
+				final String key = readQuoted(context, reader, sb);
+				c = reader.readSignificant();
+				if (c != '=' || (c = reader.read()) != '>') {
+					throw invalid(context, reader, "'=>'", c);
+				}
+				c = reader.readSignificant();
+				if (c != '"') {
+					throw invalid(context, reader, "'\"'", c);
+				}
+				tuples.put(key, readQuoted(context, reader, sb));
+				c = reader.readSignificant();
+				if (c == ',') {
+					c = reader.readSignificant();
+					if (c == -1) {
+						throw invalid(context, reader, "'\"'", c);
+					}
+				} else if (c != -1) {
+					throw invalid(context, reader, "','", c);
+				}
 			}
-			tuples.put(unescape(kv[0]), unescape(kv[1]));
+		} catch (IOException ex) {
+			context.error("Error reading DSL from database.");
+			context.error(ex);
+			throw new ExitException();
 		}
 		return tuples;
 	}
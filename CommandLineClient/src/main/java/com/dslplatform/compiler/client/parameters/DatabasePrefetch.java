@@ -0,0 +1,113 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.DeferredContext;
+import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.ProcessExecutor;
+
+import java.io.Closeable;
+import java.util.concurrent.*;
+
+/**
+ * Loads previous DSL and database version in the background,
+ * while DSL files are processed and targets are compiled.
+ * Output from the background load is deferred and replayed when the result is requested,
+ * so messages are shown in the same place as with the synchronous load.
+ * Concurrent requests for the same database share a single load.
+ */
+final class DatabasePrefetch implements Closeable {
+
+	interface Loader {
+		DatabaseInfo load(Context context) throws ExitException;
+	}
+
+	private final DeferredContext context;
+	private final Future<DatabaseInfo> result;
+
+	private DatabasePrefetch(final DeferredContext context, final Future<DatabaseInfo> result) {
+		this.context = context;
+		this.result = result;
+	}
+
+	static boolean isEnabled() {
+		return !"false".equals(System.getProperty("dsl-platform.db-prefetch"));
+	}
+
+	/**
+	 * Start loading database info in the background.
+	 * Only when some later action will use it (migration or diff).
+	 */
+	static void start(final Context context, final Context.Key<DatabasePrefetch> key, final Loader loader) {
+		if (!isEnabled()
+				|| context.contains(Tenants.INSTANCE)
+				|| !context.contains(Migration.INSTANCE) && !context.contains(Diff.INSTANCE)) {
+			return;
+		}
+		submit(context, key, loader);
+	}
+
+	private static DatabasePrefetch submit(final Context context, final Context.Key<DatabasePrefetch> key, final Loader loader) {
+		final DatabasePrefetch existing = context.load(key);
+		if (existing != null) {
+			return existing;
+		}
+		final DeferredContext deferred = new DeferredContext(context);
+		final FutureTask<DatabaseInfo> task = new FutureTask<DatabaseInfo>(new Callable<DatabaseInfo>() {
+			@Override
+			public DatabaseInfo call() throws ExitException {
+				final long start = System.currentTimeMillis();
+				final DatabaseInfo info = loader.load(deferred);
+				deferred.log("Database info loaded in " + (System.currentTimeMillis() - start) + "ms");
+				return info;
+			}
+		});
+		final DatabasePrefetch prefetch = context.cacheIfAbsent(key, new DatabasePrefetch(deferred, task));
+		//only the caller which registered the prefetch starts the load
+		if (prefetch.result == task) {
+			ProcessExecutor.executor().execute(task);
+		}
+		return prefetch;
+	}
+
+	/**
+	 * Wait for the background load if it was started.
+	 *
+	 * @return null when database info was not prefetched
+	 */
+	static DatabaseInfo await(final Context context, final Context.Key<DatabasePrefetch> key) throws ExitException {
+		final DatabasePrefetch prefetch = context.load(key);
+		return prefetch != null ? prefetch.get(context) : null;
+	}
+
+	/**
+	 * Load database info, or join the load already in progress.
+	 */
+	static DatabaseInfo load(final Context context, final Context.Key<DatabasePrefetch> key, final Loader loader) throws ExitException {
+		return submit(context, key, loader).get(context);
+	}
+
+	private DatabaseInfo get(final Context caller) throws ExitException {
+		try {
+			final long start = System.currentTimeMillis();
+			final DatabaseInfo info = result.get();
+			context.replay(caller);
+			caller.log("Waited " + (System.currentTimeMillis() - start) + "ms for database info");
+			return info;
+		} catch (InterruptedException ex) {
+			throw new ExitException();
+		} catch (ExecutionException ex) {
+			context.replay(caller);
+			if (ex.getCause() instanceof ExitException) {
+				throw (ExitException) ex.getCause();
+			}
+			caller.error("Error loading database info");
+			caller.error(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+			throw new ExitException();
+		}
+	}
+
+	@Override
+	public void close() {
+		result.cancel(true);
+	}
+}
@@ -22,20 +22,22 @@ public enum Dependencies implements CompileParameter {
 		return getDependencies(context, name, library, null, false);
 	}
 
+	public static File getDependenciesPath(final Context context, final String library) {
+		if (context.contains("dependency:" + library)) {
+			return new File(context.get("dependency:" + library));
+		}
+		final String depsParam = context.get(INSTANCE);
+		return new File(depsParam != null ? depsParam : "./", library.replace('.', '_'));
+	}
+
 	public static File getDependencies(
 			final Context context,
 			final String name,
 			final String library,
 			final String zip,
 			final boolean check) throws ExitException {
-		final File dependencies;
+		final File dependencies = getDependenciesPath(context, library);
 		final boolean hasFolderSpecified = context.contains("dependency:" + library);
-		if (hasFolderSpecified) {
-			dependencies = new File(context.get("dependency:" + library));
-		} else {
-			final String depsParam = context.get(INSTANCE);
-			dependencies = new File(depsParam != null ? depsParam : "./", library.replace('.', '_'));
-		}
 		if (!dependencies.exists()) {
 			if (!dependencies.mkdirs()) {
 				context.error("Failed to create " + name + " dependency folder: " + dependencies.getAbsolutePath());
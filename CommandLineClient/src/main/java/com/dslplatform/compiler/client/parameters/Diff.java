@@ -1,14 +1,27 @@
 package com.dslplatform.compiler.client.parameters;
 
+import com.dslplatform.compiler.client.ActionResources;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 import com.dslplatform.compiler.client.CompileParameter;
 import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Either;
 import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.ParameterParser;
+import com.dslplatform.compiler.client.diff.DiffEngine;
+import com.dslplatform.compiler.client.diff.LineDiff;
+import com.dslplatform.compiler.client.diff.HistogramDiff;
 import com.dslplatform.compiler.client.diff.diff_match_patch;
 import org.fusesource.jansi.Ansi;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public enum Diff implements CompileParameter {
+public enum Diff implements CompileParameter, ParameterParser, ActionResources {
 	INSTANCE;
 
 	@Override
@@ -18,106 +31,254 @@ public enum Diff implements CompileParameter {
 
 	@Override
 	public String getUsage() {
-		return null;
+		return "mode";
+	}
+
+	private static final String TEXT = "text";
+	private static final String STRUCTURE = "structure";
+
+	//compiler started in server mode needs some time before it accepts connections
+	private static final int SERVER_STARTUP_ATTEMPTS = 100;
+
+	//overall time for diffing all files. When exhausted, coarser diffs are shown
+	private static final long DIFF_BUDGET = 1000;
+
+	//line engine is kept as a fallback in case of unexpected histogram output
+	static DiffEngine engine() {
+		return "line".equals(System.getProperty("dsl-platform.diff-engine"))
+				? new LineDiff()
+				: new HistogramDiff();
+	}
+
+	static String render(final List<diff_match_patch.Diff> changes, final boolean inColor) {
+		final int totalDiffs = changes.size();
+		int cur = 0;
+		final StringBuilder sb = new StringBuilder();
+		for (final diff_match_patch.Diff aDiff : changes) {
+			cur++;
+			final String text = aDiff.text;
+			switch (aDiff.operation) {
+				case INSERT:
+					if (inColor) {
+						sb.append(Context.inColor(Ansi.Color.GREEN, text));
+					} else {
+						sb.append("[+ ").append(text).append(']');
+					}
+					break;
+				case DELETE:
+					if (inColor) {
+						sb.append(Context.inColor(Ansi.Color.RED, text));
+					} else {
+						sb.append("[- ").append(text).append(']');
+					}
+					break;
+				case EQUAL:
+					final String[] lines = text.split("\n");
+					if (cur < totalDiffs) {
+						if (lines.length <= 10) {
+							sb.append(text);
+						} else {
+							int width = 0;
+							if (cur > 1) {
+								for (int i = 0; i < 5; i++) {
+									width += lines[i].length() + 1;
+								}
+								sb.append(text.substring(0, width));
+								width = 0;
+							}
+							for (int i = Math.max(5, lines.length - 5); i < lines.length; i++) {
+								width += lines[i].length() + 1;
+							}
+							sb.append("\n").append("...").append("\n");
+							sb.append(text.substring(Math.max(0, text.length() - width)));
+						}
+					} else if (lines.length <= 5) {
+						sb.append(text);
+					} else {
+						int width = 0;
+						for (int i = 0; i < 5; i++) {
+							width += lines[i].length() + 1;
+						}
+						sb.append(text.substring(0, width));
+					}
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isStructural(final Context context) {
+		return STRUCTURE.equals(context.get(INSTANCE));
+	}
+
+	private static ConceptDiff.Tokenizer serverTokenizer(final DslCompiler.TokenParser parser) {
+		return new ConceptDiff.Tokenizer() {
+			@Override
+			public Either<DslCompiler.ParseResult> parse(final String dsl) {
+				Either<DslCompiler.ParseResult> result = parser.parse(dsl);
+				for (int i = 0; i < SERVER_STARTUP_ATTEMPTS && !result.isSuccess(); i++) {
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException ex) {
+						return result;
+					}
+					result = parser.parse(dsl);
+				}
+				return result;
+			}
+		};
+	}
+
+	private static ConceptDiff.Tokenizer socketTokenizer(final Context context) {
+		return new ConceptDiff.Tokenizer() {
+			@Override
+			public Either<DslCompiler.ParseResult> parse(final String dsl) {
+				return DslCompiler.parseTokens(context, dsl);
+			}
+		};
+	}
+
+	//when DSL can't be tokenized false is returned and text diff should be used instead
+	private static boolean compareConcepts(
+			final Context context,
+			final Map<String, String> previousDsl,
+			final Map<String, String> currentDsl) {
+		final String compiler = context.get(DslCompiler.INSTANCE);
+		DslCompiler.TokenParser parser = null;
+		final ConceptDiff.Tokenizer tokenizer;
+		if (DslCompiler.isServerMode(context)) {
+			tokenizer = socketTokenizer(context);
+		} else if (compiler != null) {
+			final Either<DslCompiler.TokenParser> server = DslCompiler.setupServer(context, new File(compiler));
+			if (!server.isSuccess()) {
+				context.warning("Unable to start compiler in server mode. Falling back to text diff");
+				context.log(server.explainError());
+				return false;
+			}
+			parser = server.get();
+			tokenizer = serverTokenizer(parser);
+		} else {
+			context.warning("Compiler not available for structural diff. Falling back to text diff");
+			return false;
+		}
+		try {
+			final Either<Map<String, ConceptDiff.Concept>> previous = ConceptDiff.index(tokenizer, previousDsl);
+			final Either<Map<String, ConceptDiff.Concept>> current =
+					previous.isSuccess() ? ConceptDiff.index(tokenizer, currentDsl) : previous;
+			if (!current.isSuccess()) {
+				context.warning(current.explainError());
+				context.warning("Falling back to text diff");
+				return false;
+			}
+			final boolean inColor = !context.contains(DisableColors.INSTANCE);
+			final long deadline = System.currentTimeMillis() + DIFF_BUDGET;
+			if (!ConceptDiff.compare(context, previous.get(), current.get(), engine(), deadline, inColor)) {
+				context.show("No changes found in DSL");
+			}
+			return true;
+		} finally {
+			if (parser != null) {
+				parser.close();
+			}
+		}
 	}
 
 	private static void compareDsls(final Context context, final Map<String, String> previousDsl) throws ExitException {
 		final Map<String, String> currentDsl = DslPath.getCurrentDsl(context);
+		if (isStructural(context) && compareConcepts(context, previousDsl, currentDsl)) {
+			return;
+		}
 
-		final Set<String> currentFiles = new HashSet<String>(currentDsl.keySet());
+		final Set<String> currentFiles = new TreeSet<String>(currentDsl.keySet());
 		currentFiles.removeAll(previousDsl.keySet());
 		for (final String name : currentFiles) {
 			context.show("New DSL file: " + name + ". Total lines: " + currentDsl.get(name).split("\n").length);
 			context.log("----------------------------------------------");
 			context.log(currentDsl.get(name));
 		}
-		final Set<String> previousFiles = new HashSet<String>(previousDsl.keySet());
+		final Set<String> previousFiles = new TreeSet<String>(previousDsl.keySet());
 		previousFiles.removeAll(currentDsl.keySet());
 		for (final String name : previousFiles) {
 			context.show("Removed DSL file: " + name + ". Total lines: " + previousDsl.get(name).split("\n").length);
 			context.log("----------------------------------------------");
 			context.log(previousDsl.get(name));
 		}
-		final Set<String> sharedFiles = new HashSet<String>(currentDsl.keySet());
+		final Set<String> sharedFiles = new TreeSet<String>(currentDsl.keySet());
 		sharedFiles.retainAll(previousDsl.keySet());
-		diff_match_patch diff = new diff_match_patch();
-		boolean hasChanges = false;
+		final boolean inColor = !context.contains(DisableColors.INSTANCE);
+		final DiffEngine engine = engine();
+		final long deadline = System.currentTimeMillis() + DIFF_BUDGET;
+		final List<String> changedFiles = new ArrayList<String>();
 		for (final String name : sharedFiles) {
-			String current = currentDsl.get(name);
-			String previous = previousDsl.get(name);
-			if (current.equals(previous)) {
-				continue;
+			if (!currentDsl.get(name).equals(previousDsl.get(name))) {
+				changedFiles.add(name);
 			}
-			LinkedList<diff_match_patch.Diff> changes = diff.diff_main(previous, current);
-			context.show("Changed DSL file: " + name);
-			context.show("----------------------------------------------");
-			final int totalDiffs = changes.size();
-			int cur = 0;
-			hasChanges = hasChanges || totalDiffs > 0;
-			final StringBuilder sb = new StringBuilder();
-			final boolean inColor = !context.contains(DisableColors.INSTANCE);
-			for (final diff_match_patch.Diff aDiff : changes) {
-				cur++;
-				final String text = aDiff.text;
-				switch (aDiff.operation) {
-					case INSERT:
-						if (inColor) {
-							sb.append(Context.inColor(Ansi.Color.GREEN, text));
-						} else {
-							sb.append("[+ ").append(text).append(']');
-						}
-						break;
-					case DELETE:
-						if (inColor) {
-							sb.append(Context.inColor(Ansi.Color.RED, text));
-						} else {
-							sb.append("[- ").append(text).append(']');
-						}
-						break;
-					case EQUAL:
-						String[] lines = text.split("\n");
-						if (cur < totalDiffs) {
-							if (lines.length <= 10) {
-								sb.append(text);
-							} else {
-								int width = 0;
-								if (cur > 1) {
-									for (int i = 0; i < 5; i++) {
-										width += lines[i].length() + 1;
-									}
-									sb.append(text.substring(0, width));
-									width = 0;
-								}
-								for (int i = Math.max(5, lines.length - 5); i < lines.length; i++) {
-									width += lines[i].length() + 1;
-								}
-								sb.append("\n").append("...").append("\n");
-								sb.append(text.substring(text.length() - width));
-							}
-						} else {
-							if (lines.length <= 5) {
-								sb.append(text);
-							}
-							int width = 0;
-							for (int i = 0; i < 5; i++) {
-								width += lines[i].length() + 1;
-							}
-							sb.append(text.substring(0, width));
-						}
-						break;
-				}
+		}
+		//one diff per processor, since each one is CPU bound
+		final int threads = Math.max(1, Math.min(changedFiles.size(), Runtime.getRuntime().availableProcessors()));
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final Map<String, Future<String>> diffs = new LinkedHashMap<String, Future<String>>();
+		try {
+			for (final String name : changedFiles) {
+				final String current = currentDsl.get(name);
+				final String previous = previousDsl.get(name);
+				diffs.put(name, pool.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return render(engine.diff(previous, current, deadline), inColor);
+					}
+				}));
+			}
+			for (final Map.Entry<String, Future<String>> kv : diffs.entrySet()) {
+				final String rendered = kv.getValue().get();
+				context.show("Changed DSL file: " + kv.getKey());
+				context.show("----------------------------------------------");
+				context.show(rendered);
+				context.show();
 			}
-			context.show(sb.toString());
-			context.show();
+		} catch (InterruptedException ex) {
+			throw new ExitException();
+		} catch (ExecutionException ex) {
+			context.error("Error comparing DSL files");
+			context.error(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+			throw new ExitException();
+		} finally {
+			pool.shutdownNow();
 		}
-		if (currentFiles.size() == 0 && previousFiles.size() == 0 && !hasChanges) {
+		if (currentFiles.size() == 0 && previousFiles.size() == 0 && diffs.isEmpty()) {
 			context.show("No changes found in DSL");
 		}
 	}
 
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		if (!context.contains(INSTANCE)) {
+			return EnumSet.noneOf(Resource.class);
+		}
+		return isStructural(context)
+				? EnumSet.of(Resource.DSL, Resource.PREVIOUS_DSL, Resource.COMPILER)
+				: EnumSet.of(Resource.DSL, Resource.PREVIOUS_DSL);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Either<Boolean> tryParse(final String name, final String value, final Context context) {
+		//diff can be used without a mode
+		return Either.success("diff".equals(name) && value == null);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
+			final String mode = context.get(INSTANCE);
+			if (mode != null && !TEXT.equals(mode) && !STRUCTURE.equals(mode)) {
+				context.error("Unknown diff mode: " + mode + ". Supported modes are: " + TEXT + " and " + STRUCTURE);
+				throw new ExitException();
+			}
 			if (!context.contains(PostgresConnection.INSTANCE)
 					&& !context.contains(OracleConnection.INSTANCE)) {
 				context.error("Connection string is required to perform a diff operation.\n" +
@@ -155,6 +316,10 @@ public enum Diff implements CompileParameter {
 	public String getDetailedDescription() {
 		return "Provide diff on changed DSL files. For fast confirmation of changes done before creating new library models or SQL migrations.\n" +
 				"Diff requires read-only access to -DSL- schema in Postgres/Oracle database where previously applied DSL is stored.\n" +
-				"To disable diff confirmation, use no prompt parameter.";
+				"To disable diff confirmation, use no prompt parameter.\n" +
+				"Default mode is text, which compares DSL files line by line.\n" +
+				"Previous line engine can be selected with -Ddsl-platform.diff-engine=line.\n" +
+				"Structure mode (diff=structure) tokenizes DSL with the compiler and compares concepts by their full name,\n" +
+				"so moving concepts between files or reformatting them is not shown as a change.";
 	}
 }
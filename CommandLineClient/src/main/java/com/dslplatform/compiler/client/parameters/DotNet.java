@@ -1,10 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
-public enum DotNet implements CompileParameter {
+public enum DotNet implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -12,6 +15,11 @@ public enum DotNet implements CompileParameter {
 	@Override
 	public String getUsage() { return "path"; }
 
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.LIBRARIES);
+	}
+
 	public static Either<String> findCompiler(final Context context) {
 		final boolean is32Bit = System.getProperty("os.arch").equals("x86");
 		return findCompiler(context, is32Bit);
@@ -1,17 +1,21 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.net.*;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
 
-public enum Download implements CompileParameter {
+public enum Download implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -24,6 +28,11 @@ public enum Download implements CompileParameter {
 		return null;
 	}
 
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.COMPILER, Resource.LIBRARIES);
+	}
+
 	private static final String DEFAULT_REMOTE_URL = "https://tools.dsl-platform.com/";
 
 	public static String remoteUrl(final Context context) {
@@ -54,33 +63,40 @@ public enum Download implements CompileParameter {
 		return Utils.unpackZip(context, path, server);
 	}
 
-	public static Either<Long> lastModified(final Context context, final String file, final String name, final long current) {
+	private static final ConcurrentMap<String, Future<Either<Long>>> PENDING_CHECKS =
+			new ConcurrentHashMap<String, Future<Either<Long>>>();
+
+	private static Either<Long> checkLastModified(final Context context, final String file, final String url) {
 		final String websiteName = websiteName(context);
+		final VersionCache.Entry cached = VersionCache.get(url);
 		try {
-			final URL server = new URL(Download.remoteUrl(context) + file + ".zip");
+			final URL server = new URL(url);
 			context.log("Checking last modified info for " + file + ".zip from " + websiteName + "...");
 			final HttpURLConnection connection = (HttpURLConnection) server.openConnection();
 			connection.setRequestMethod("HEAD");
 			//60 seconds timeout to prevent handing if case of site issues
 			connection.setConnectTimeout(30 * 1000);
 			connection.setReadTimeout(30 * 1000);
-			final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+			if (cached != null) {
+				if (cached.etag != null) {
+					connection.setRequestProperty("If-None-Match", cached.etag);
+				}
+				if (cached.lastModified > 0) {
+					connection.setIfModifiedSince(cached.lastModified);
+				}
+			}
 			final long latest = connection.getLastModified();
-			if (latest == 0 && connection.getResponseCode() == -1) {
+			final int code = connection.getResponseCode();
+			if (cached != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				context.log(file + ".zip not modified since last check");
+				VersionCache.put(url, new VersionCache.Entry(System.currentTimeMillis(), cached.lastModified, cached.etag));
+				return Either.success(cached.lastModified);
+			}
+			if (latest == 0 && code == -1) {
 				return Either.fail("Unable to check " + file + " version on " + websiteName + ". Internet connection not available?");
 			}
-			if (current == latest && current != 0) {
-				context.show(name + " at latest version (" + sdf.format(latest) + ")");
-			} else if (current > 0 && latest > 0) {
-				context.show("Different version of " + name + " found at " + websiteName + ".");
-				context.show("Local version: " + sdf.format(current));
-				context.show("Upstream version: " + sdf.format(latest));
-			} else {
-				if (latest == 0) {
-					context.warning(name + " not found at " + websiteName + " website.");
-				} else {
-					context.show("Upstream version: " + sdf.format(latest));
-				}
+			if (code == HttpURLConnection.HTTP_OK) {
+				VersionCache.put(url, new VersionCache.Entry(System.currentTimeMillis(), latest, connection.getHeaderField("ETag")));
 			}
 			return Either.success(latest);
 		} catch (UnknownHostException ex) {
@@ -90,15 +106,161 @@ public enum Download implements CompileParameter {
 		}
 	}
 
+	private static Future<Either<Long>> revalidate(final Context context, final String file, final String url) {
+		final Future<Either<Long>> pending = PENDING_CHECKS.get(url);
+		if (pending != null) {
+			return pending;
+		}
+		final FutureTask<Either<Long>> task = new FutureTask<Either<Long>>(new Callable<Either<Long>>() {
+			@Override
+			public Either<Long> call() {
+				try {
+					return checkLastModified(context, file, url);
+				} finally {
+					PENDING_CHECKS.remove(url);
+				}
+			}
+		});
+		final Future<Either<Long>> existing = PENDING_CHECKS.putIfAbsent(url, task);
+		if (existing != null) {
+			return existing;
+		}
+		ProcessExecutor.executor().submit(task);
+		return task;
+	}
+
+	/**
+	 * Start checking upstream version in the background, unless fresh result is already cached.
+	 * Only used when download option is enabled.
+	 *
+	 * @param context context
+	 * @param file    zip name without extension
+	 */
+	public static void prefetchVersion(final Context context, final String file) {
+		if (file == null || !context.contains(INSTANCE)) {
+			return;
+		}
+		final String url = remoteUrl(context) + file + ".zip";
+		final VersionCache.Entry cached = VersionCache.get(url);
+		if (cached == null || !cached.isFresh(DownloadTtl.getTtlMillis(context))) {
+			revalidate(context, file, url);
+		}
+	}
+
+	private static Either<Long> upstreamLastModified(final Context context, final String file) {
+		final String url = remoteUrl(context) + file + ".zip";
+		final VersionCache.Entry cached = VersionCache.get(url);
+		if (cached != null && cached.isFresh(DownloadTtl.getTtlMillis(context))) {
+			context.log("Using cached version info for " + file + ".zip");
+			return Either.success(cached.lastModified);
+		}
+		final Either<Long> result;
+		try {
+			result = revalidate(context, file, url).get();
+		} catch (InterruptedException ex) {
+			return Either.fail(ex);
+		} catch (ExecutionException ex) {
+			return Either.fail(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+		}
+		if (!result.isSuccess() && cached != null) {
+			context.log("Unable to revalidate version info for " + file + ".zip. Using previous result");
+			return Either.success(cached.lastModified);
+		}
+		return result;
+	}
+
+	public static Either<Long> lastModified(final Context context, final String file, final String name, final long current) {
+		final Either<Long> upstream = upstreamLastModified(context, file);
+		if (!upstream.isSuccess()) {
+			return upstream;
+		}
+		final String websiteName = websiteName(context);
+		final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+		final long latest = upstream.get();
+		if (current == latest && current != 0) {
+			context.show(name + " at latest version (" + sdf.format(latest) + ")");
+		} else if (current > 0 && latest > 0) {
+			context.show("Different version of " + name + " found at " + websiteName + ".");
+			context.show("Local version: " + sdf.format(current));
+			context.show("Upstream version: " + sdf.format(latest));
+		} else {
+			if (latest == 0) {
+				context.warning(name + " not found at " + websiteName + " website.");
+			} else {
+				context.show("Upstream version: " + sdf.format(latest));
+			}
+		}
+		return Either.success(latest);
+	}
+
+	/**
+	 * Identity of downloaded dependencies used for the shared dependency store.
+	 * Based on the download location and upstream version of the zip.
+	 *
+	 * @return null when upstream version is not known
+	 */
+	private static String storeKey(final Context context, final String zip, final Either<Long> upstream) {
+		if (zip == null || !upstream.isSuccess() || upstream.get() == 0) {
+			return null;
+		}
+		return remoteUrl(context) + zip + ".zip@" + upstream.get();
+	}
+
+	/**
+	 * Identity of libraries downloaded from Maven repositories.
+	 * Latest versions are resolved first, so stored files are not used after a new release.
+	 *
+	 * @return null when some version can't be resolved
+	 */
+	private static String libraryKey(
+			final Context context,
+			final String zip,
+			final Either<Long> upstream,
+			final String path,
+			final String... libraries) {
+		final String zipKey = storeKey(context, zip, upstream);
+		if (zipKey == null) {
+			return null;
+		}
+		final StringBuilder sb = new StringBuilder(zipKey).append(' ').append(Repository.getRepositories(context));
+		final MavenResolver resolver = MavenResolver.get(context);
+		for (final String library : libraries) {
+			try {
+				sb.append(' ').append(path).append('/').append(library).append(':').append(resolver.latestVersion(path, library));
+			} catch (IOException ex) {
+				context.log("Dependency store not used for " + library + ": " + ex.getMessage());
+				return null;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static Either<Long> storeVersion(final Context context, final String zip) {
+		return zip != null && ArtifactStore.isEnabled()
+				? upstreamLastModified(context, zip)
+				: Either.<Long>fail("Dependency store not used");
+	}
+
 	public static boolean downloadZip(
 			final File dependencies,
 			final Context context,
 			final String name,
 			final String zip) {
 		final String websiteName = websiteName(context);
+		final Either<Long> upstream = storeVersion(context, zip);
+		final String key = storeKey(context, zip, upstream);
+		if (key != null && ArtifactStore.restore(context, key, dependencies)) {
+			if (!dependencies.setLastModified(upstream.get())) {
+				context.warning("Unable to set last modified info on: " + dependencies.getAbsolutePath());
+			}
+			return true;
+		}
 		try {
 			context.show("Downloading " + name + " from " + websiteName + "...");
 			final long lastModified = downloadAndUnpack(context, zip, dependencies);
+			if (key != null) {
+				ArtifactStore.record(context, key, dependencies);
+			}
 			if (!dependencies.setLastModified(lastModified)) {
 				context.warning("Unable to set last modified info on: " + dependencies.getAbsolutePath());
 			}
@@ -161,19 +323,34 @@ public enum Download implements CompileParameter {
 					throw new ExitException();
 				}
 			}
-			final Either<String> tryMaven = libraries.length > 0 && path != null ? Maven.findMaven(context) : Either.<String>fail("Library not defined");
-			if (!tryMaven.isSuccess()) {
+			final Either<Long> upstream = libraries.length > 0 && path != null ? storeVersion(context, zip) : Either.<Long>fail("Library not defined");
+			final String key = upstream.isSuccess() ? libraryKey(context, zip, upstream, path, libraries) : null;
+			if (key != null && ArtifactStore.restore(context, key, dependencies)) {
+				if (!dependencies.setLastModified(upstream.get())) {
+					context.warning("Unable to set last modified info on: " + dependencies.getAbsolutePath());
+				}
+				return true;
+			}
+			if (libraries.length == 0 || path == null) {
 				if (zip == null) {
-					context.error("Unable to find Maven. Dependency can't be downloaded.");
+					context.error("Library not defined. Dependency can't be downloaded.");
 					throw new ExitException();
 				}
 				return downloadZip(dependencies, context, name, zip);
 			}
+			final MavenResolver resolver = MavenResolver.get(context);
+			final List<Future<MavenResolver.Artifact>> artifacts = new ArrayList<Future<MavenResolver.Artifact>>(libraries.length);
 			for (final String library : libraries) {
-				if (!downloadLibrary(context, name, path, dependencies, tryMaven, library, zip)) {
+				artifacts.add(resolver.resolveLatest(path, library));
+			}
+			for (int i = 0; i < libraries.length; i++) {
+				if (!downloadLibrary(context, name, dependencies, libraries[i], artifacts.get(i), zip)) {
 					return false;
 				}
 			}
+			if (key != null) {
+				ArtifactStore.record(context, key, dependencies);
+			}
 			final Either<Long> lastModified = lastModified(context, zip, name, 0);
 			if (lastModified.isSuccess()) {
 				if (!dependencies.setLastModified(lastModified.get())) {
@@ -186,62 +363,121 @@ public enum Download implements CompileParameter {
 		return true;
 	}
 
+	/**
+	 * Start downloading libraries in the background, so they are ready when checkJars needs them.
+	 * Download is started only if download option is enabled and dependency folder doesn't contain jars.
+	 */
+	public static void prefetchJars(
+			final Context context,
+			final String id,
+			final String zip,
+			final String path,
+			final String... libraries) {
+		if (!context.contains(INSTANCE)) {
+			return;
+		}
+		prefetchVersion(context, zip);
+		if (path == null) {
+			return;
+		}
+		final File dependencies = Dependencies.getDependenciesPath(context, id);
+		final File[] found = dependencies.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(".jar");
+			}
+		});
+		if (found != null && found.length > 0) {
+			return;
+		}
+		final MavenResolver resolver = MavenResolver.get(context);
+		for (final String library : libraries) {
+			if (library != null) {
+				resolver.resolveLatest(path, library);
+			}
+		}
+	}
+
 	private static boolean downloadLibrary(
 			final Context context,
 			final String name,
-			final String path,
 			final File dependencies,
-			final Either<String> tryMaven,
 			final String library,
+			final Future<MavenResolver.Artifact> download,
 			final String zip) throws ExitException {
-		context.show("Downloading " + name + " (" + library + ") from Sonatype...");
+		context.show("Downloading " + name + " (" + library + ") from Maven repository...");
 		try {
-			final URL maven = new URL("https://oss.sonatype.org/content/repositories/releases/" + path + "/" + library + "/maven-metadata.xml");
-			final Either<Document> doc = Utils.readXml(maven.openConnection().getInputStream());
-			if (!doc.isSuccess()) {
-				context.error("Error downloading library info from Sonatype.");
-				context.error(doc.whyNot());
-				return false;
-			}
-			final Element root = doc.get().getDocumentElement();
-			final Element versioning = (Element) root.getElementsByTagName("versioning").item(0);
-			final String version = versioning.getElementsByTagName("release").item(0).getTextContent();
-			final String sharedUrl = "https://oss.sonatype.org/content/repositories/releases/" +
-					path + "/" + library + "/" + version + "/" + library + "-" + version;
-			final URL pomUrl = new URL(sharedUrl + ".pom");
-			final File pomFile = new File(dependencies, library + "-" + version + ".pom");
-			Utils.downloadFile(pomFile, pomUrl);
-			final URL jarUrl = new URL(sharedUrl + ".jar");
-			Utils.downloadFile(new File(dependencies, library + "-" + version + ".jar"), jarUrl);
-			context.show("Downloading " + name + " library dependencies with Maven...");
-			final Either<Utils.CommandResult> gatherDeps =
-					Utils.runCommand(
-							context,
-							tryMaven.get(),
-							pomFile.getParentFile(),
-							Arrays.asList(
-									"dependency:copy-dependencies",
-									"\"-DoutputDirectory=" + dependencies.getAbsolutePath() + "\"",
-									"\"-f=" + pomFile.getAbsolutePath() + "\""));
-			if (!gatherDeps.isSuccess()) {
-				context.error("Error gathering dependencies with Maven.");
-				context.error(gatherDeps.whyNot());
+			final MavenResolver.Artifact artifact;
+			try {
+				artifact = download.get();
+			} catch (ExecutionException ex) {
+				context.error("Error downloading library from Maven repository.");
+				context.error(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
 				return promptForAlternative(dependencies, context, name, zip);
+			} catch (InterruptedException ex) {
+				context.error(ex);
+				throw new ExitException();
 			}
-			final String result = gatherDeps.get().output + gatherDeps.get().error;
-			if (!result.contains("BUILD SUCCESS")) {
-				context.error("Maven error during dependency download.");
-				context.show(result);
-				return promptForAlternative(dependencies, context, name, zip);
+			final File pomFile = new File(dependencies, artifact.pom.getName());
+			FileSync.copyFile(artifact.pom, pomFile);
+			FileSync.copyFile(artifact.jar, new File(dependencies, artifact.jar.getName()));
+			context.show("Downloading " + name + " library dependencies...");
+			final List<File> jars;
+			try {
+				jars = MavenResolver.get(context).resolveDependencies(
+						artifact.groupPath.replace('/', '.'),
+						artifact.artifactId,
+						artifact.version);
+			} catch (Exception ex) {
+				context.warning("Unable to resolve " + name + " dependencies: " + ex.getMessage());
+				return copyDependenciesWithMaven(context, name, dependencies, pomFile, zip);
+			}
+			for (final File jar : jars) {
+				FileSync.copyFile(jar, new File(dependencies, jar.getName()));
 			}
 		} catch (IOException ex) {
-			context.error("Unable to download " + name + " from Sonatype.");
+			context.error("Unable to download " + name + " from Maven repository.");
 			context.error(ex);
 			return promptForAlternative(dependencies, context, name, zip);
 		}
 		return true;
 	}
 
+	private static boolean copyDependenciesWithMaven(
+			final Context context,
+			final String name,
+			final File dependencies,
+			final File pomFile,
+			final String zip) throws ExitException {
+		final Either<String> tryMaven = Maven.findMaven(context);
+		if (!tryMaven.isSuccess()) {
+			context.error("Unable to find Maven. Dependency can't be downloaded.");
+			return promptForAlternative(dependencies, context, name, zip);
+		}
+		context.show("Downloading " + name + " library dependencies with Maven...");
+		final Either<Utils.CommandResult> gatherDeps =
+				Utils.runCommand(
+						context,
+						tryMaven.get(),
+						pomFile.getParentFile(),
+						Arrays.asList(
+								"dependency:copy-dependencies",
+								"\"-DoutputDirectory=" + dependencies.getAbsolutePath() + "\"",
+								"\"-f=" + pomFile.getAbsolutePath() + "\""));
+		if (!gatherDeps.isSuccess()) {
+			context.error("Error gathering dependencies with Maven.");
+			context.error(gatherDeps.whyNot());
+			return promptForAlternative(dependencies, context, name, zip);
+		}
+		final String result = gatherDeps.get().output + gatherDeps.get().error;
+		if (!result.contains("BUILD SUCCESS")) {
+			context.error("Maven error during dependency download.");
+			context.show(result);
+			return promptForAlternative(dependencies, context, name, zip);
+		}
+		return true;
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		final String value = context.get(Download.INSTANCE);
@@ -265,6 +501,7 @@ public enum Download implements CompileParameter {
 				return false;
 			}
 		}
+		prefetchVersion(context, "dsl-compiler");
 		return true;
 	}
 
@@ -0,0 +1,65 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+
+public enum DownloadTtl implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "download-ttl";
+	}
+
+	@Override
+	public String getUsage() {
+		return "minutes";
+	}
+
+	private static final int DEFAULT_TTL = 15;
+
+	public static long getTtlMillis(final Context context) {
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			return DEFAULT_TTL * 60 * 1000L;
+		}
+		return Integer.parseInt(value) * 60 * 1000L;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		final String value = context.get(INSTANCE);
+		if (value != null && value.length() > 0) {
+			try {
+				if (Integer.parseInt(value) < 0) {
+					context.error("Download TTL must be a positive number. Provided: " + value);
+					return false;
+				}
+			} catch (NumberFormatException ex) {
+				context.error("Unable to parse download TTL: " + value + ". Expecting number of minutes");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "How long should version checks for compiler and dependencies be cached. Default is 15 minutes";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "When download option is enabled, compiler and dependencies are checked for newer versions.\n" +
+				"Results of these checks are cached in the user cache folder and reused for the specified number of minutes.\n" +
+				"Stale results are revalidated with conditional requests.\n" +
+				"Use 0 to always check for latest version.\n\n" +
+				"Example:\n" +
+				"\tdownload-ttl=60\n" +
+				"\tdownload-ttl=0";
+	}
+}
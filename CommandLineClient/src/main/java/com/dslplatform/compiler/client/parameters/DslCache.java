@@ -0,0 +1,142 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Utils;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Local copy of the last applied DSL for each database.
+ * Database identity is based on the connection string without the password.
+ * Copy is valid only while the fingerprint of the latest migration
+ * (ordinal with hash or length of the DSL) matches the one in the database.
+ */
+final class DslCache {
+
+	private static final String FINGERPRINT = "-fingerprint-";
+	private static final String COMPILER = "-compiler-";
+	private static final String FILES = "-files-";
+
+	static class Entry {
+		final String compiler;
+		final Map<String, String> dsl;
+
+		Entry(final String compiler, final Map<String, String> dsl) {
+			this.compiler = compiler;
+			this.dsl = dsl;
+		}
+	}
+
+	static boolean isEnabled() {
+		return !"false".equals(System.getProperty("dsl-platform.dsl-cache"));
+	}
+
+	static String identity(final String database, final String connectionString) {
+		return database + ":" + connectionString.replaceAll("(?i)([?&;]password=)[^&;]*", "$1");
+	}
+
+	private static File file(final String identity) {
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-256").digest(identity.getBytes("UTF-8"));
+			final StringBuilder sb = new StringBuilder(hash.length * 2);
+			for (final byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return new File(new File(Utils.getUserCachePath(), "database-dsl"), sb.toString() + ".properties");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Load cached DSL if the fingerprint matches.
+	 *
+	 * @return null when not found or when database has a different DSL
+	 */
+	static Entry load(final Context context, final String identity, final String fingerprint) {
+		if (!isEnabled() || fingerprint == null) return null;
+		final File file = file(identity);
+		if (!file.isFile()) return null;
+		final Properties properties = new Properties();
+		try {
+			final InputStream is = new BufferedInputStream(new FileInputStream(file));
+			try {
+				properties.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException ex) {
+			context.log("Unable to read cached DSL: " + ex.getMessage());
+			return null;
+		}
+		if (!fingerprint.equals(properties.getProperty(FINGERPRINT))) {
+			context.log("Database DSL changed since last check");
+			return null;
+		}
+		final Map<String, String> dsl = new LinkedHashMap<String, String>();
+		final int files;
+		try {
+			files = Integer.parseInt(properties.getProperty(FILES, "0"));
+		} catch (NumberFormatException ignore) {
+			return null;
+		}
+		//keep the order of files from the database
+		for (int i = 0; i < files; i++) {
+			final String name = properties.getProperty("name." + i);
+			final String content = properties.getProperty("content." + i);
+			if (name == null || content == null) return null;
+			dsl.put(name, content);
+		}
+		context.log("Using cached DSL from " + file.getAbsolutePath());
+		return new Entry(properties.getProperty(COMPILER, ""), dsl);
+	}
+
+	static void store(
+			final Context context,
+			final String identity,
+			final String fingerprint,
+			final String compiler,
+			final Map<String, String> dsl) {
+		if (!isEnabled() || fingerprint == null) return;
+		final File file = file(identity);
+		final File folder = file.getParentFile();
+		final File tmp = new File(folder, file.getName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+				throw new IOException("Unable to create folder: " + folder.getAbsolutePath());
+			}
+			final Properties properties = new Properties();
+			properties.setProperty(FINGERPRINT, fingerprint);
+			properties.setProperty(COMPILER, compiler != null ? compiler : "");
+			properties.setProperty(FILES, Integer.toString(dsl.size()));
+			int i = 0;
+			for (final Map.Entry<String, String> kv : dsl.entrySet()) {
+				properties.setProperty("name." + i, kv.getKey());
+				properties.setProperty("content." + i, kv.getValue());
+				i++;
+			}
+			final OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+			try {
+				properties.store(os, identity.substring(0, identity.indexOf(':')) + " DSL cache");
+			} finally {
+				os.close();
+			}
+			if (!tmp.renameTo(file)) {
+				if (!file.delete() || !tmp.renameTo(file)) {
+					throw new IOException("Unable to save " + file.getAbsolutePath());
+				}
+			}
+		} catch (IOException ex) {
+			tmp.delete();
+			context.log("Unable to cache database DSL: " + ex.getMessage());
+		}
+	}
+}
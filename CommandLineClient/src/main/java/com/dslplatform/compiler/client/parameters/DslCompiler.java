@@ -2,6 +2,7 @@ package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
 import com.dslplatform.compiler.client.json.JSON;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 import org.w3c.dom.*;
 
 import java.io.*;
@@ -10,7 +11,7 @@ import java.net.*;
 import java.nio.charset.Charset;
 import java.util.*;
 
-public enum DslCompiler implements CompileParameter, ParameterParser {
+public enum DslCompiler implements CompileParameter, LazyCheck, ParameterParser {
 	INSTANCE;
 
 	@Override
@@ -23,9 +24,16 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		return "path or IP port";
 	}
 
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.COMPILER);
+	}
+
 	private final static Charset UTF_8 = Charset.forName("UTF-8");
 
-	private static final String DSL_COMPILER_SOCKET = "dsl-compiler-socket";
+	private static final Context.Key<Socket> DSL_COMPILER_SOCKET = new Context.Key<Socket>("dsl-compiler-socket");
+	//binary of the compiler behind the port, when known (eg. compiler kept warm by the daemon)
+	public static final Context.Key<File> SOCKET_COMPILER = new Context.Key<File>("dsl-compiler-socket-binary");
 
 	public static Map<String, String> compile(
 			final Context context,
@@ -61,6 +69,7 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			context.error(response.whyNot());
 			throw new ExitException();
 		}
+		final Profiler.Span span = Profiler.start(context, "compiler", "xml decode").bytes(response.get().length);
 		final Either<Document> xml = Utils.readXml(new ByteArrayInputStream(response.get()));
 		if (!xml.isSuccess()) {
 			context.error(new String(response.get(), UTF_8));
@@ -78,6 +87,8 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			context.error("Invalid xml found");
 			context.error(new String(response.get(), UTF_8));
 			throw new ExitException();
+		} finally {
+			span.files(files.size()).end();
 		}
 		context.notify("SOURCES", files);
 		return files;
@@ -88,9 +99,18 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		final File compiler = new File(context.get(INSTANCE));
 		arguments.add("path=" + System.getProperty("user.dir"));
 		context.notify("DSL", arguments);
-		return socket != null
-				? runCompilerSocket(context, socket, arguments)
-				: runCompilerFile(context, compiler, arguments);
+		final Profiler.Span span = Profiler.start(context, "compiler", "compiler round trip");
+		final Either<byte[]> result;
+		if (socket == null) {
+			result = runCompilerFile(context, compiler, arguments);
+		} else {
+			//actions can run in parallel, but compiler server processes one request at a time per connection
+			synchronized (socket) {
+				result = runCompilerSocket(context, socket, arguments);
+			}
+		}
+		span.bytes(result.isSuccess() ? result.get().length : 0).end();
+		return result;
 	}
 
 	public static class ParseError {
@@ -266,7 +286,7 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 					int len;
 					try {
 						while ((len = reader.read(buffer)) != -1) {
-							context.log(new String(buffer, 0, len));
+							context.log(buffer, len);
 						}
 						reader.close();
 					} catch (IOException ignore) {
@@ -290,10 +310,10 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 					setupMonitor(port, tryProcess.get(), this);
 					return Either.fail("Server restarting...");
 				}
-				Either<ParseResult> result = parseTokens(setupSocket(), dsl);
+				Either<ParseResult> result = parseTokens(context, setupSocket(), dsl);
 				if (!result.isSuccess()) {
 					socketCleanup(false);
-					result = parseTokens(setupSocket(), dsl);
+					result = parseTokens(context, setupSocket(), dsl);
 				}
 				if (!result.isSuccess()) {
 					socketCleanup(true);
@@ -312,7 +332,7 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 				final OutputStream sos = socket.getOutputStream();
 				sos.write(command.getBytes(UTF_8));
 				sos.flush();
-				final ByteStream os = getByteStream(context);
+				final ByteStream os = getByteStream();
 				final byte[] buf = os.temp;
 				final InputStream is = socket.getInputStream();
 				int read = is.read(buf, 0, 4);
@@ -341,52 +361,23 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			}
 		}
 
-		private Either<ParseResult> parseTokens(final Socket socket, final String dsl) throws IOException {
-			final byte[] dslUtf8 = dsl.getBytes(UTF_8);
-			final String command = "tokens=" + dslUtf8.length + " format=json include-length keep-alive\n";
+		//socket is owned by the parser, so compiler parameter and its socket are left as configured
+		private Socket setupSocket() throws IOException {
+			if (socket != null) return socket;
+			Socket sck;
 			try {
-				final OutputStream sos = socket.getOutputStream();
-				sos.write(command.getBytes(UTF_8));
-				sos.write(dslUtf8);
-				sos.flush();
-				final ByteStream os = getByteStream(context);
-				final byte[] buf = os.temp;
-				final InputStream is = socket.getInputStream();
-				int read = is.read(buf, 0, 4);
-				if (read != 4 || buf[0] != 'O') {
-					return Either.fail("Invalid response from server.");
-				}
-				read = is.read(buf, 0, 4);
-				if (read != 4) {
-					return Either.fail("Invalid response from server. Expecting length.");
-				}
-				int length = readInt(buf);
-				os.reset();
-				while (length > 0 && (read = is.read(buf)) > 0) {
-					length -= read;
-					os.write(buf, 0, read);
-				}
-				os.flush();
-				return Either.success(new ParseResult(JSON.readMap(os.getBuffer(), os.size())));
-			} catch (IOException e) {
-				return Either.fail(e.getMessage());
+				sck = new Socket("::1", port);
+			} catch (IOException ex6) {
+				context.log("Unable to open socket to port on IPv6 localhost: " + port);
+				sck = new Socket("127.0.0.1", port);
 			}
-		}
-
-		private Socket setupSocket() throws ExitException, IOException {
-			if (socket != null) return socket;
-			context.put(INSTANCE, Integer.toString(port));
-			if (!INSTANCE.check(context)) {
-				context.error("Unable to setup socket to DSL Platform");
+			try {
+				sck.setKeepAlive(true);
+				sck.setSoTimeout(10000);
+			} catch (SocketException ignore) {
 			}
 			context.show("Socket connected");
-			socket = context.load(DSL_COMPILER_SOCKET);
-			if (socket != null) {
-				try {
-					socket.setSoTimeout(10000);
-				} catch (Exception ignore) {
-				}
-			}
+			socket = sck;
 			return socket;
 		}
 
@@ -402,7 +393,6 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 				} catch (Exception ignore) {
 				}
 				this.socket = null;
-				context.cache(DSL_COMPILER_SOCKET, null);
 			}
 		}
 
@@ -423,6 +413,60 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		}
 	}
 
+	/**
+	 * Compiler was specified as a port and connected through a socket.
+	 */
+	public static boolean isServerMode(final Context context) {
+		return context.load(DSL_COMPILER_SOCKET) != null;
+	}
+
+	/**
+	 * Parse DSL into tokens with the compiler connected through a socket (compiler=port).
+	 *
+	 * @return failure when compiler is not running in server mode
+	 */
+	public static Either<ParseResult> parseTokens(final Context context, final String dsl) {
+		final Socket socket = context.load(DSL_COMPILER_SOCKET);
+		if (socket == null) {
+			return Either.fail("Compiler is not running in server mode");
+		}
+		synchronized (socket) {
+			return parseTokens(context, socket, dsl);
+		}
+	}
+
+	private static Either<ParseResult> parseTokens(final Context context, final Socket socket, final String dsl) {
+		final byte[] dslUtf8 = dsl.getBytes(UTF_8);
+		final String command = "tokens=" + dslUtf8.length + " format=json include-length keep-alive\n";
+		try {
+			final OutputStream sos = socket.getOutputStream();
+			sos.write(command.getBytes(UTF_8));
+			sos.write(dslUtf8);
+			sos.flush();
+			final ByteStream os = getByteStream();
+			final byte[] buf = os.temp;
+			final InputStream is = socket.getInputStream();
+			int read = is.read(buf, 0, 4);
+			if (read != 4 || buf[0] != 'O') {
+				return Either.fail("Invalid response from server.");
+			}
+			read = is.read(buf, 0, 4);
+			if (read != 4) {
+				return Either.fail("Invalid response from server. Expecting length.");
+			}
+			int length = readInt(buf);
+			os.reset();
+			while (length > 0 && (read = is.read(buf)) > 0) {
+				length -= read;
+				os.write(buf, 0, read);
+			}
+			os.flush();
+			return Either.success(new ParseResult(JSON.readMap(os.getBuffer(), os.size())));
+		} catch (IOException e) {
+			return Either.fail(e.getMessage());
+		}
+	}
+
 	public static Either<TokenParser> setupServer(final Context context, final File compiler) {
 		context.show("Starting DSL Platform compiler...");
 		final Random rnd = new Random();
@@ -495,7 +539,7 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			final OutputStream sos = socket.getOutputStream();
 			sos.write(sb.toString().getBytes(UTF_8));
 			sos.flush();
-			final ByteStream os = getByteStream(context);
+			final ByteStream os = getByteStream();
 			final byte[] buf = os.temp;
 			final InputStream is = socket.getInputStream();
 			int read = is.read(buf, 0, 4);
@@ -522,11 +566,16 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		}
 	}
 
-	private static ByteStream getByteStream(Context context) {
-		ByteStream os = context.load("dsl-stream");
-		if (os == null) {
+	//scratch buffers are per thread, so concurrent compiler calls don't share them
+	private static final ThreadLocal<ByteStream> BYTE_STREAM = new ThreadLocal<ByteStream>();
+	//don't keep around buffers grown by an exceptionally large response
+	private static final int MAX_RETAINED_BUFFER = 16 * 1024 * 1024;
+
+	private static ByteStream getByteStream() {
+		ByteStream os = BYTE_STREAM.get();
+		if (os == null || os.getBuffer().length > MAX_RETAINED_BUFFER) {
 			os = new ByteStream();
-			context.cache("dsl-stream", os);
+			BYTE_STREAM.set(os);
 		}
 		return os;
 	}
@@ -579,6 +628,19 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 		if (context.contains(GrantRole.INSTANCE)) {
 			arguments.add("role=" + context.get(GrantRole.INSTANCE));
 		}
+		String cacheKey = null;
+		try {
+			final File compiler = context.load(DSL_COMPILER_SOCKET) == null
+					? new File(context.get(INSTANCE))
+					: context.load(SOCKET_COMPILER);
+			cacheKey = MigrationCache.key(compiler, arguments, dbInfo, currentDsls);
+		} catch (IOException ex) {
+			context.log("Unable to check for cached migration: " + ex.getMessage());
+		}
+		final String cached = MigrationCache.load(context, cacheKey);
+		if (cached != null) {
+			return Either.success(context.notify("MIGRATION", cached));
+		}
 		if (dbInfo.dsl != null && !dbInfo.dsl.isEmpty()) {
 			final StringBuilder oldDsl = new StringBuilder();
 			for (final String v : dbInfo.dsl.values()) {
@@ -605,6 +667,7 @@ public enum DslCompiler implements CompileParameter, ParameterParser {
 			return Either.fail(result.whyNot());
 		}
 		final String sql = new String(result.get(), UTF_8);
+		MigrationCache.store(context, cacheKey, sql);
 		return Either.success(context.notify("MIGRATION", sql));
 	}
 
@@ -1,11 +1,12 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.io.File;
 import java.util.*;
 
-public enum DslPath implements CompileParameter {
+public enum DslPath implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -18,25 +19,30 @@ public enum DslPath implements CompileParameter {
 		return "path";
 	}
 
-	private static final String CACHE_MAP_NAME = "current_dsl_map_cache";
-	private static final String CACHE_FILE_NAME = "current_dsl_file_cache";
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.DSL);
+	}
+
+	private static final Context.Key<Map<String, String>> CACHE_MAP = new Context.Key<Map<String, String>>("current_dsl_map_cache");
+	private static final Context.Key<List<File>> CACHE_FILES = new Context.Key<List<File>>("current_dsl_file_cache");
 
 	public static Map<String, String> getCurrentDsl(final Context context) throws ExitException {
-		final Map<String, String> cache = context.load(CACHE_MAP_NAME);
+		final Map<String, String> cache = context.load(CACHE_MAP);
 		if (cache != null) {
 			return cache;
 		}
 		findDsls(context);
-		return context.load(CACHE_MAP_NAME);
+		return context.load(CACHE_MAP);
 	}
 
 	public static List<File> getDslPaths(final Context context) throws ExitException {
-		final List<File> cache = context.load(CACHE_FILE_NAME);
+		final List<File> cache = context.load(CACHE_FILES);
 		if (cache != null) {
 			return cache;
 		}
 		findDsls(context);
-		return context.load(CACHE_FILE_NAME);
+		return context.load(CACHE_FILES);
 	}
 
 	private static void findDsls(final Context context) throws ExitException {
@@ -78,8 +84,8 @@ public enum DslPath implements CompileParameter {
 				}
 			}
 		}
-		context.cache(CACHE_MAP_NAME, dslMap);
-		context.cache(CACHE_FILE_NAME, allDslFiles);
+		context.cache(CACHE_MAP, dslMap);
+		context.cache(CACHE_FILES, allDslFiles);
 	}
 
 	@Override
@@ -1,9 +1,14 @@
 package com.dslplatform.compiler.client.parameters;
 
+import com.dslplatform.compiler.client.ActionResources;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 import com.dslplatform.compiler.client.CompileParameter;
 import com.dslplatform.compiler.client.Context;
 
-public enum Force implements CompileParameter {
+import java.util.EnumSet;
+import java.util.Set;
+
+public enum Force implements CompileParameter, ActionResources {
 	INSTANCE;
 
 	@Override
@@ -16,6 +21,16 @@ public enum Force implements CompileParameter {
 		return null;
 	}
 
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		return EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return EnumSet.noneOf(Resource.class);
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		return true;
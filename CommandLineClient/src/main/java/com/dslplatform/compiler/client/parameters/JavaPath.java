@@ -1,13 +1,14 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
-public enum JavaPath implements CompileParameter {
+public enum JavaPath implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -20,8 +21,17 @@ public enum JavaPath implements CompileParameter {
 		return "path";
 	}
 
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.LIBRARIES);
+	}
+
 	private static final String CACHE_FILE_PREFIX = "java_path_cache_";
 
+	private static Context.Key<String> cacheKey(final String name) {
+		return new Context.Key<String>(CACHE_FILE_PREFIX + name);
+	}
+
 	public static Either<String> findCompiler(final Context context) {
 		return getCommand(context, "javac", "Java compiler");
 	}
@@ -32,20 +42,20 @@ public enum JavaPath implements CompileParameter {
 
 	private static Either<String> getCommand(final Context context, final String name, final String description) {
 		if (context.contains(INSTANCE)) {
-			final String file = context.load(CACHE_FILE_PREFIX + name);
+			final String file = context.load(cacheKey(name));
 			return Either.success(file);
 		}
 		final String envJH = System.getenv("JAVA_HOME");
 		final String envJDK = System.getenv("JDK_HOME");
 		final Either<String> path = Utils.findCommand(context, null, name, "Usage: " + name);
 		if (path.isSuccess()) {
-			context.cache(CACHE_FILE_PREFIX + name, path.get());
+			context.cache(cacheKey(name), path.get());
 			return Either.success(path.get());
 		}
 		if (envJH != null) {
 			final Either<String> homePath = Utils.findCommand(context, new File(envJH, "bin").getPath(), name, "Usage: " + name);
 			if (homePath.isSuccess()) {
-				context.cache(CACHE_FILE_PREFIX + name, homePath.get());
+				context.cache(cacheKey(name), homePath.get());
 				return Either.success(homePath.get());
 			} else {
 				context.warning("Invalid JAVA_HOME environment variable specified: " + envJH);
@@ -56,7 +66,7 @@ public enum JavaPath implements CompileParameter {
 		if (envJDK != null) {
 			final Either<String> homePath = Utils.findCommand(context, new File(envJDK, "bin").getPath(), name, "Usage: " + name);
 			if (homePath.isSuccess()) {
-				context.cache(CACHE_FILE_PREFIX + name, homePath.get());
+				context.cache(cacheKey(name), homePath.get());
 				return Either.success(homePath.get());
 			} else {
 				context.warning("Invalid JDK_HOME environment variable specified: " + envJDK);
@@ -121,7 +131,9 @@ public enum JavaPath implements CompileParameter {
 			}
 		}
 		context.show("Running jar for " + output.getName() + "...");
+		final Profiler.Span span = Profiler.start(context, "build", "jar");
 		final Either<Utils.CommandResult> execArchive = Utils.runCommand(context, jar, classOut, jarArguments);
+		span.bytes(output.length()).end();
 		if (!execArchive.isSuccess()) {
 			return Either.fail(execArchive.whyNot());
 		}
@@ -188,8 +200,8 @@ public enum JavaPath implements CompileParameter {
 				context.error("Trying to find jar in " + path);
 				return false;
 			}
-			context.cache(CACHE_FILE_PREFIX + "javac", javac.get());
-			context.cache(CACHE_FILE_PREFIX + "jar", jar.get());
+			context.cache(cacheKey("javac"), javac.get());
+			context.cache(cacheKey("jar"), jar.get());
 		}
 		return true;
 	}
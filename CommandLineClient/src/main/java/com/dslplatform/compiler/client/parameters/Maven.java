@@ -1,10 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
-public enum Maven implements CompileParameter {
+public enum Maven implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -12,6 +15,11 @@ public enum Maven implements CompileParameter {
 	@Override
 	public String getUsage() { return "path"; }
 
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.LIBRARIES);
+	}
+
 	public static Either<String> findMaven(final Context context) {
 		if (context.contains(INSTANCE)) {
 			return Either.success(context.get(INSTANCE));
@@ -56,7 +64,8 @@ public enum Maven implements CompileParameter {
 
 	@Override
 	public String getDetailedDescription() {
-		return "Apache Maven can be used to download dependencies for Java libraries.\n" +
+		return "Dependencies for Java libraries are resolved without Maven.\n" +
+				"Apache Maven is used as a fallback when dependencies can't be resolved (eg. version ranges).\n" +
 				"If mvn is not in path, this option can be used to specify Maven directory.\n" +
 				"\n" +
 				"If Maven is not used, dependencies can be downloaded from DSL Platform.\n" +
@@ -0,0 +1,283 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Subset of Maven project model required for dependency resolution.
+ * Raw model is parsed from the POM file. Effective model is created by the resolver
+ * after parent inheritance, property interpolation and dependency management are applied.
+ */
+final class MavenPom {
+
+	static class Dependency {
+		final String groupId;
+		final String artifactId;
+		final String version;
+		final String type;
+		final String classifier;
+		final String scope;
+		final boolean optional;
+		final Set<String> exclusions;
+
+		Dependency(
+				final String groupId,
+				final String artifactId,
+				final String version,
+				final String type,
+				final String classifier,
+				final String scope,
+				final boolean optional,
+				final Set<String> exclusions) {
+			this.groupId = groupId;
+			this.artifactId = artifactId;
+			this.version = version;
+			this.type = type != null && type.length() > 0 ? type : "jar";
+			this.classifier = classifier != null && classifier.length() > 0 ? classifier : null;
+			this.scope = scope != null && scope.length() > 0 ? scope : null;
+			this.optional = optional;
+			this.exclusions = exclusions;
+		}
+
+		String managementKey() {
+			return groupId + ":" + artifactId + ":" + type + (classifier != null ? ":" + classifier : "");
+		}
+
+		String effectiveScope() {
+			return scope != null ? scope : "compile";
+		}
+
+		boolean isExcludedBy(final Set<String> excluded) {
+			return excluded.contains(groupId + ":" + artifactId)
+					|| excluded.contains(groupId + ":*")
+					|| excluded.contains("*:" + artifactId)
+					|| excluded.contains("*:*");
+		}
+
+		String fileName() {
+			return artifactId + "-" + version + (classifier != null ? "-" + classifier : "") + "." + ("bundle".equals(type) ? "jar" : type);
+		}
+
+		Dependency interpolate(final Map<String, String> properties) {
+			return new Dependency(
+					MavenPom.interpolate(groupId, properties),
+					MavenPom.interpolate(artifactId, properties),
+					MavenPom.interpolate(version, properties),
+					MavenPom.interpolate(type, properties),
+					MavenPom.interpolate(classifier, properties),
+					MavenPom.interpolate(scope, properties),
+					optional,
+					exclusions);
+		}
+
+		Dependency manage(final Dependency managed) {
+			if (managed == null) return this;
+			final Set<String> allExclusions = new HashSet<String>(exclusions);
+			allExclusions.addAll(managed.exclusions);
+			return new Dependency(
+					groupId,
+					artifactId,
+					version != null ? version : managed.version,
+					type,
+					classifier,
+					scope != null ? scope : managed.scope,
+					optional,
+					allExclusions);
+		}
+
+		Dependency override(final Dependency managed) {
+			if (managed == null) return this;
+			return new Dependency(
+					groupId,
+					artifactId,
+					managed.version != null ? managed.version : version,
+					type,
+					classifier,
+					managed.scope != null ? managed.scope : scope,
+					optional,
+					exclusions);
+		}
+
+		@Override
+		public String toString() {
+			return groupId + ":" + artifactId + ":" + version;
+		}
+	}
+
+	final String parentGroupId;
+	final String parentArtifactId;
+	final String parentVersion;
+	final String groupId;
+	final String artifactId;
+	final String version;
+	final Map<String, String> properties;
+	final List<Dependency> management;
+	final List<Dependency> dependencies;
+
+	MavenPom(
+			final String parentGroupId,
+			final String parentArtifactId,
+			final String parentVersion,
+			final String groupId,
+			final String artifactId,
+			final String version,
+			final Map<String, String> properties,
+			final List<Dependency> management,
+			final List<Dependency> dependencies) {
+		this.parentGroupId = parentGroupId;
+		this.parentArtifactId = parentArtifactId;
+		this.parentVersion = parentVersion;
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		this.properties = properties;
+		this.management = management;
+		this.dependencies = dependencies;
+	}
+
+	boolean hasParent() {
+		return parentArtifactId != null;
+	}
+
+	private static Element child(final Element element, final String name) {
+		if (element == null) return null;
+		final NodeList nodes = element.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			final Node node = nodes.item(i);
+			if (node instanceof Element && name.equals(((Element) node).getTagName())) {
+				return (Element) node;
+			}
+		}
+		return null;
+	}
+
+	private static List<Element> children(final Element element, final String name) {
+		final List<Element> result = new ArrayList<Element>();
+		if (element == null) return result;
+		final NodeList nodes = element.getChildNodes();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			final Node node = nodes.item(i);
+			if (node instanceof Element && name.equals(((Element) node).getTagName())) {
+				result.add((Element) node);
+			}
+		}
+		return result;
+	}
+
+	private static String text(final Element element, final String name) {
+		final Element found = child(element, name);
+		if (found == null) return null;
+		final String value = found.getTextContent().trim();
+		return value.length() > 0 ? value : null;
+	}
+
+	private static List<Dependency> parseDependencies(final Element container) {
+		final List<Dependency> result = new ArrayList<Dependency>();
+		for (final Element dep : children(child(container, "dependencies"), "dependency")) {
+			final Set<String> exclusions = new HashSet<String>();
+			for (final Element exclusion : children(child(dep, "exclusions"), "exclusion")) {
+				exclusions.add(text(exclusion, "groupId") + ":" + text(exclusion, "artifactId"));
+			}
+			result.add(new Dependency(
+					text(dep, "groupId"),
+					text(dep, "artifactId"),
+					text(dep, "version"),
+					text(dep, "type"),
+					text(dep, "classifier"),
+					text(dep, "scope"),
+					"true".equals(text(dep, "optional")),
+					exclusions));
+		}
+		return result;
+	}
+
+	/**
+	 * Parse raw project model. Nothing is inherited or interpolated.
+	 *
+	 * @param file POM file
+	 * @return raw model
+	 * @throws IOException when file is not a valid POM
+	 */
+	static MavenPom parse(final File file) throws IOException {
+		final InputStream is = new FileInputStream(file);
+		final Either<Document> doc;
+		try {
+			doc = Utils.readXml(is);
+		} finally {
+			is.close();
+		}
+		if (!doc.isSuccess()) {
+			throw new IOException("Unable to parse " + file.getAbsolutePath() + ": " + doc.explainError());
+		}
+		final Element project = doc.get().getDocumentElement();
+		final Element parent = child(project, "parent");
+		final Map<String, String> properties = new LinkedHashMap<String, String>();
+		final Element props = child(project, "properties");
+		if (props != null) {
+			final NodeList nodes = props.getChildNodes();
+			for (int i = 0; i < nodes.getLength(); i++) {
+				final Node node = nodes.item(i);
+				if (node instanceof Element) {
+					properties.put(((Element) node).getTagName(), node.getTextContent().trim());
+				}
+			}
+		}
+		final String parentGroupId = text(parent, "groupId");
+		final String parentVersion = text(parent, "version");
+		final String groupId = text(project, "groupId");
+		final String version = text(project, "version");
+		return new MavenPom(
+				parentGroupId,
+				text(parent, "artifactId"),
+				parentVersion,
+				groupId != null ? groupId : parentGroupId,
+				text(project, "artifactId"),
+				version != null ? version : parentVersion,
+				properties,
+				parseDependencies(child(project, "dependencyManagement")),
+				parseDependencies(project));
+	}
+
+	/**
+	 * Replace ${name} placeholders with property values.
+	 * Unknown properties are left as is.
+	 */
+	static String interpolate(final String value, final Map<String, String> properties) {
+		if (value == null || !value.contains("${")) return value;
+		String current = value;
+		//protect against cyclic definitions
+		for (int depth = 0; depth < 10 && current.contains("${"); depth++) {
+			final StringBuilder sb = new StringBuilder();
+			int pos = 0;
+			boolean changed = false;
+			while (pos < current.length()) {
+				final int start = current.indexOf("${", pos);
+				final int end = start == -1 ? -1 : current.indexOf('}', start);
+				if (start == -1 || end == -1) {
+					sb.append(current, pos, current.length());
+					break;
+				}
+				final String name = current.substring(start + 2, end);
+				final String replacement = properties.get(name);
+				sb.append(current, pos, start);
+				if (replacement != null) {
+					sb.append(replacement);
+					changed = true;
+				} else {
+					sb.append(current, start, end + 1);
+				}
+				pos = end + 1;
+			}
+			current = sb.toString();
+			if (!changed) break;
+		}
+		return current;
+	}
+}
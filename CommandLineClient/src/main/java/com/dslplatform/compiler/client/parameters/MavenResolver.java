@@ -0,0 +1,510 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Downloads Maven artifacts concurrently from configured repositories.
+ * Number of simultaneous connections is limited.
+ * Artifacts are stored in a local repository inside the user cache folder
+ * and released versions are reused across runs.
+ * Transitive runtime dependencies are resolved in process, without starting Maven.
+ */
+class MavenResolver {
+
+	static final int MAX_CONNECTIONS = 4;
+
+	private static final Context.Key<MavenResolver> CACHE = new Context.Key<MavenResolver>("maven_resolver");
+	private static final Semaphore CONNECTIONS = new Semaphore(MAX_CONNECTIONS);
+
+	static class Artifact {
+		final String groupPath;
+		final String artifactId;
+		final String version;
+		final File pom;
+		final File jar;
+
+		Artifact(final String groupPath, final String artifactId, final String version, final File pom, final File jar) {
+			this.groupPath = groupPath;
+			this.artifactId = artifactId;
+			this.version = version;
+			this.pom = pom;
+			this.jar = jar;
+		}
+	}
+
+	private final Context context;
+	private final List<String> repositories;
+	private final File localRepository;
+	private final ConcurrentMap<String, Future<Artifact>> latest = new ConcurrentHashMap<String, Future<Artifact>>();
+	private final ConcurrentMap<String, FutureTask<File>> files = new ConcurrentHashMap<String, FutureTask<File>>();
+	private final ConcurrentMap<String, Model> models = new ConcurrentHashMap<String, Model>();
+	private final ConcurrentMap<String, Release> releases = new ConcurrentHashMap<String, Release>();
+
+	//latest released version and the repository where it was found
+	private static class Release {
+		final String repository;
+		final String version;
+
+		Release(final String repository, final String version) {
+			this.repository = repository;
+			this.version = version;
+		}
+	}
+
+	//effective model with inherited (not yet interpolated) parts of the raw model
+	private static class Model {
+		final MavenPom pom;
+		final Map<String, String> properties;
+		final Map<String, MavenPom.Dependency> management;
+		final Map<String, MavenPom.Dependency> dependencies;
+
+		Model(
+				final MavenPom pom,
+				final Map<String, String> properties,
+				final Map<String, MavenPom.Dependency> management,
+				final Map<String, MavenPom.Dependency> dependencies) {
+			this.pom = pom;
+			this.properties = properties;
+			this.management = management;
+			this.dependencies = dependencies;
+		}
+	}
+
+	private static class Node {
+		final MavenPom.Dependency dependency;
+		final Set<String> exclusions;
+
+		Node(final MavenPom.Dependency dependency, final Set<String> exclusions) {
+			this.dependency = dependency;
+			this.exclusions = exclusions;
+		}
+	}
+
+	MavenResolver(final Context context, final List<String> repositories, final File localRepository) {
+		this.context = context;
+		this.repositories = repositories;
+		this.localRepository = localRepository;
+	}
+
+	static MavenResolver get(final Context context) {
+		final MavenResolver resolver = context.load(CACHE);
+		if (resolver != null) {
+			return resolver;
+		}
+		//concurrent actions must share a single resolver
+		return context.cacheIfAbsent(CACHE, new MavenResolver(
+				context,
+				Repository.getRepositories(context),
+				new File(Utils.getUserCachePath(), "repository")));
+	}
+
+	private static InputStream open(final URL url) throws IOException {
+		final java.net.URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(30 * 1000);
+		conn.setReadTimeout(60 * 1000);
+		return conn.getInputStream();
+	}
+
+	private static String readText(final URL url) throws IOException {
+		CONNECTIONS.acquireUninterruptibly();
+		try {
+			final InputStream is = open(url);
+			try {
+				final ByteArrayOutputStream os = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[8192];
+				int len;
+				while ((len = is.read(buffer)) != -1) {
+					os.write(buffer, 0, len);
+				}
+				return os.toString("UTF-8");
+			} finally {
+				is.close();
+			}
+		} finally {
+			CONNECTIONS.release();
+		}
+	}
+
+	/**
+	 * Download file into local repository unless it's already there.
+	 */
+	File fetch(final String repository, final String relativePath) throws IOException {
+		final File target = new File(localRepository, relativePath);
+		if (target.isFile()) {
+			context.log("Using cached " + target.getAbsolutePath());
+			return target;
+		}
+		final File folder = target.getParentFile();
+		if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+			throw new IOException("Unable to create folder: " + folder.getAbsolutePath());
+		}
+		final URL url = new URL(repository + relativePath);
+		String sha1 = null;
+		try {
+			final String checksum = readText(new URL(repository + relativePath + ".sha1")).trim();
+			if (checksum.length() >= 40) {
+				sha1 = checksum.substring(0, 40);
+			}
+		} catch (IOException ex) {
+			context.log("Checksum not available for " + url);
+		}
+		context.log("Downloading " + url);
+		CONNECTIONS.acquireUninterruptibly();
+		try {
+			Utils.downloadFile(context, target, url, sha1);
+		} finally {
+			CONNECTIONS.release();
+		}
+		return target;
+	}
+
+	/**
+	 * Download file from the first repository which contains it.
+	 * Concurrent requests for the same file share the same download.
+	 */
+	File fetchAny(final String relativePath) throws IOException {
+		FutureTask<File> task = files.get(relativePath);
+		if (task == null) {
+			final FutureTask<File> created = new FutureTask<File>(new Callable<File>() {
+				@Override
+				public File call() throws IOException {
+					IOException lastError = null;
+					for (final String repository : repositories) {
+						try {
+							return fetch(repository, relativePath);
+						} catch (IOException ex) {
+							lastError = ex;
+						}
+					}
+					throw lastError != null ? lastError : new IOException("No repository defined");
+				}
+			});
+			task = files.putIfAbsent(relativePath, created);
+			if (task == null) {
+				task = created;
+				task.run();
+			}
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException ex) {
+			throw new IOException(ex);
+		} catch (ExecutionException ex) {
+			files.remove(relativePath, task);
+			throw ex.getCause() instanceof IOException
+					? (IOException) ex.getCause()
+					: new IOException(ex.getCause());
+		}
+	}
+
+	private static String artifactPath(final String groupId, final String artifactId, final String version) {
+		return groupId.replace('.', '/') + "/" + artifactId + "/" + version + "/";
+	}
+
+	private static Map<String, MavenPom.Dependency> merge(
+			final Map<String, MavenPom.Dependency> inherited,
+			final List<MavenPom.Dependency> declared) {
+		final Map<String, MavenPom.Dependency> result = new LinkedHashMap<String, MavenPom.Dependency>(inherited);
+		for (final MavenPom.Dependency d : declared) {
+			result.put(d.managementKey(), d);
+		}
+		return result;
+	}
+
+	private Model model(
+			final String groupId,
+			final String artifactId,
+			final String version,
+			final Set<String> visiting) throws IOException {
+		if (groupId == null || artifactId == null || version == null || version.contains("${")) {
+			throw new IOException("Unable to resolve Maven artifact: " + groupId + ":" + artifactId + ":" + version);
+		}
+		if (version.startsWith("[") || version.startsWith("(")) {
+			throw new IOException("Version ranges are not supported: " + groupId + ":" + artifactId + ":" + version);
+		}
+		final String key = groupId + ":" + artifactId + ":" + version;
+		final Model cached = models.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		if (!visiting.add(key)) {
+			throw new IOException("Cyclic reference in Maven project: " + key);
+		}
+		final MavenPom raw = MavenPom.parse(fetchAny(artifactPath(groupId, artifactId, version) + artifactId + "-" + version + ".pom"));
+		final Model parent = raw.hasParent()
+				? model(raw.parentGroupId, raw.parentArtifactId, raw.parentVersion, visiting)
+				: null;
+		final Map<String, String> inheritedProperties = new HashMap<String, String>();
+		if (parent != null) {
+			inheritedProperties.putAll(parent.properties);
+		}
+		inheritedProperties.putAll(raw.properties);
+		final Map<String, String> properties = new HashMap<String, String>(System.getenv().size() + inheritedProperties.size());
+		for (final Map.Entry<String, String> kv : System.getenv().entrySet()) {
+			properties.put("env." + kv.getKey(), kv.getValue());
+		}
+		properties.putAll(inheritedProperties);
+		properties.put("project.groupId", groupId);
+		properties.put("project.artifactId", artifactId);
+		properties.put("project.version", version);
+		properties.put("pom.groupId", groupId);
+		properties.put("pom.artifactId", artifactId);
+		properties.put("pom.version", version);
+		if (parent != null) {
+			properties.put("project.parent.groupId", parent.pom.groupId);
+			properties.put("project.parent.artifactId", parent.pom.artifactId);
+			properties.put("project.parent.version", parent.pom.version);
+		}
+		final Map<String, MavenPom.Dependency> rawManagement = merge(
+				parent != null ? parent.management : Collections.<String, MavenPom.Dependency>emptyMap(),
+				raw.management);
+		final Map<String, MavenPom.Dependency> rawDependencies = merge(
+				parent != null ? parent.dependencies : Collections.<String, MavenPom.Dependency>emptyMap(),
+				raw.dependencies);
+		final Map<String, MavenPom.Dependency> management = new LinkedHashMap<String, MavenPom.Dependency>();
+		final List<MavenPom.Dependency> imports = new ArrayList<MavenPom.Dependency>();
+		for (final MavenPom.Dependency d : rawManagement.values()) {
+			final MavenPom.Dependency managed = d.interpolate(properties);
+			if ("import".equals(managed.scope) && "pom".equals(managed.type)) {
+				imports.add(managed);
+			} else {
+				management.put(managed.managementKey(), managed);
+			}
+		}
+		//imported BOMs don't override explicitly managed dependencies
+		for (final MavenPom.Dependency bom : imports) {
+			final Model imported = model(bom.groupId, bom.artifactId, bom.version, visiting);
+			for (final MavenPom.Dependency d : imported.pom.management) {
+				if (!management.containsKey(d.managementKey())) {
+					management.put(d.managementKey(), d);
+				}
+			}
+		}
+		final List<MavenPom.Dependency> dependencies = new ArrayList<MavenPom.Dependency>(rawDependencies.size());
+		for (final MavenPom.Dependency d : rawDependencies.values()) {
+			final MavenPom.Dependency interpolated = d.interpolate(properties);
+			dependencies.add(interpolated.manage(management.get(interpolated.managementKey())));
+		}
+		final MavenPom pom = new MavenPom(
+				raw.parentGroupId,
+				raw.parentArtifactId,
+				raw.parentVersion,
+				groupId,
+				artifactId,
+				version,
+				properties,
+				new ArrayList<MavenPom.Dependency>(management.values()),
+				dependencies);
+		visiting.remove(key);
+		final Model result = new Model(pom, inheritedProperties, rawManagement, rawDependencies);
+		final Model existing = models.putIfAbsent(key, result);
+		return existing != null ? existing : result;
+	}
+
+	/**
+	 * Effective project model (after inheritance, interpolation and dependency management).
+	 */
+	MavenPom effectivePom(final String groupId, final String artifactId, final String version) throws IOException {
+		return model(groupId, artifactId, version, new HashSet<String>()).pom;
+	}
+
+	private static boolean isRuntime(final MavenPom.Dependency dependency) {
+		final String scope = dependency.effectiveScope();
+		return "compile".equals(scope) || "runtime".equals(scope);
+	}
+
+	private static <T> T await(final Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException ex) {
+			throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+		}
+	}
+
+	/**
+	 * Resolve transitive compile and runtime dependencies of an artifact.
+	 * Same rules as Maven are used: nearest definition wins, optional dependencies
+	 * are not transitive, exclusions are applied to the whole subtree and
+	 * dependency management of the artifact overrides transitive versions.
+	 * Project models of a single level and the jars are downloaded in parallel.
+	 *
+	 * @param groupId    artifact group
+	 * @param artifactId artifact name
+	 * @param version    artifact version
+	 * @return downloaded dependencies in resolution order
+	 * @throws Exception when some dependency could not be resolved
+	 */
+	List<File> resolveDependencies(final String groupId, final String artifactId, final String version) throws Exception {
+		final MavenPom root = effectivePom(groupId, artifactId, version);
+		final Map<String, MavenPom.Dependency> rootManagement = new HashMap<String, MavenPom.Dependency>();
+		for (final MavenPom.Dependency d : root.management) {
+			rootManagement.put(d.managementKey(), d);
+		}
+		final List<MavenPom.Dependency> selected = new ArrayList<MavenPom.Dependency>();
+		final Set<String> seen = new HashSet<String>();
+		seen.add(groupId + ":" + artifactId);
+		List<Node> level = new ArrayList<Node>();
+		for (final MavenPom.Dependency d : root.dependencies) {
+			if (isRuntime(d)) {
+				level.add(new Node(d, d.exclusions));
+			}
+		}
+		while (!level.isEmpty()) {
+			final List<Node> chosen = new ArrayList<Node>();
+			for (final Node node : level) {
+				final MavenPom.Dependency d = node.dependency;
+				//nearest (and then first declared) version wins
+				if (seen.add(d.groupId + ":" + d.artifactId + (d.classifier != null ? ":" + d.classifier : ""))) {
+					selected.add(d);
+					chosen.add(node);
+				}
+			}
+			final List<Future<MavenPom>> poms = new ArrayList<Future<MavenPom>>(chosen.size());
+			for (final Node node : chosen) {
+				final MavenPom.Dependency d = node.dependency;
+				poms.add(ProcessExecutor.executor().submit(new Callable<MavenPom>() {
+					@Override
+					public MavenPom call() throws IOException {
+						return effectivePom(d.groupId, d.artifactId, d.version);
+					}
+				}));
+			}
+			final List<Node> next = new ArrayList<Node>();
+			for (int i = 0; i < chosen.size(); i++) {
+				final Node node = chosen.get(i);
+				final MavenPom pom = await(poms.get(i));
+				for (final MavenPom.Dependency d : pom.dependencies) {
+					if (d.optional || d.isExcludedBy(node.exclusions)) continue;
+					final MavenPom.Dependency managed = d.override(rootManagement.get(d.managementKey()));
+					if (!isRuntime(managed)) continue;
+					final Set<String> exclusions = new HashSet<String>(node.exclusions);
+					exclusions.addAll(managed.exclusions);
+					next.add(new Node(managed, exclusions));
+				}
+			}
+			level = next;
+		}
+		final List<Future<File>> downloads = new ArrayList<Future<File>>(selected.size());
+		for (final MavenPom.Dependency d : selected) {
+			if ("pom".equals(d.type)) continue;
+			downloads.add(ProcessExecutor.executor().submit(new Callable<File>() {
+				@Override
+				public File call() throws IOException {
+					return fetchAny(artifactPath(d.groupId, d.artifactId, d.version) + d.fileName());
+				}
+			}));
+		}
+		final List<File> result = new ArrayList<File>(downloads.size());
+		for (final Future<File> download : downloads) {
+			result.add(await(download));
+		}
+		context.log("Resolved " + result.size() + " dependencies for " + groupId + ":" + artifactId + ":" + version);
+		return result;
+	}
+
+	static String latestRelease(final String metadata) throws IOException {
+		final Either<Document> doc = Utils.readXml(new ByteArrayInputStream(metadata.getBytes("UTF-8")));
+		if (!doc.isSuccess()) {
+			throw new IOException("Unable to parse Maven metadata: " + doc.explainError());
+		}
+		final Element root = doc.get().getDocumentElement();
+		final NodeList versioning = root.getElementsByTagName("versioning");
+		if (versioning.getLength() == 0) {
+			throw new IOException("Versioning info missing in Maven metadata");
+		}
+		final NodeList release = ((Element) versioning.item(0)).getElementsByTagName("release");
+		if (release.getLength() == 0) {
+			throw new IOException("Release info missing in Maven metadata");
+		}
+		return release.item(0).getTextContent().trim();
+	}
+
+	private Release findRelease(final String groupPath, final String artifactId) throws IOException {
+		final String key = groupPath + "/" + artifactId;
+		final Release found = releases.get(key);
+		if (found != null) {
+			return found;
+		}
+		IOException lastError = null;
+		for (final String repository : repositories) {
+			final String metadata;
+			try {
+				metadata = readText(new URL(repository + groupPath + "/" + artifactId + "/maven-metadata.xml"));
+			} catch (IOException ex) {
+				context.log("Unable to find " + artifactId + " in " + repository + ": " + ex.getMessage());
+				lastError = ex;
+				continue;
+			}
+			final Release release = new Release(repository, latestRelease(metadata));
+			releases.putIfAbsent(key, release);
+			return release;
+		}
+		throw lastError != null ? lastError : new IOException("No repository defined");
+	}
+
+	/**
+	 * Latest released version of an artifact, without downloading it.
+	 *
+	 * @param groupPath  group id in path format, eg. org/revenj
+	 * @param artifactId artifact name
+	 * @return version from Maven metadata
+	 * @throws IOException when metadata is not found in any repository
+	 */
+	String latestVersion(final String groupPath, final String artifactId) throws IOException {
+		return findRelease(groupPath, artifactId).version;
+	}
+
+	private Artifact downloadLatest(final String groupPath, final String artifactId) throws Exception {
+		final Release release = findRelease(groupPath, artifactId);
+		final String version = release.version;
+		final String prefix = groupPath + "/" + artifactId + "/" + version + "/" + artifactId + "-" + version;
+		final Future<File> jar = ProcessExecutor.executor().submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				return fetch(release.repository, prefix + ".jar");
+			}
+		});
+		final File pom = fetch(release.repository, prefix + ".pom");
+		try {
+			return new Artifact(groupPath, artifactId, version, pom, jar.get());
+		} catch (ExecutionException ex) {
+			throw (Exception) ex.getCause();
+		}
+	}
+
+	/**
+	 * Start download of the latest released version of an artifact.
+	 * Multiple requests for the same artifact share the same download.
+	 *
+	 * @param groupPath  group id in path format, eg. org/revenj
+	 * @param artifactId artifact name
+	 * @return future with downloaded artifact
+	 */
+	Future<Artifact> resolveLatest(final String groupPath, final String artifactId) {
+		final String key = groupPath + "/" + artifactId;
+		Future<Artifact> result = latest.get(key);
+		if (result != null) {
+			return result;
+		}
+		final FutureTask<Artifact> task = new FutureTask<Artifact>(new Callable<Artifact>() {
+			@Override
+			public Artifact call() throws Exception {
+				return downloadLatest(groupPath, artifactId);
+			}
+		});
+		result = latest.putIfAbsent(key, task);
+		if (result != null) {
+			return result;
+		}
+		ProcessExecutor.executor().submit(task);
+		return task;
+	}
+}
@@ -1,12 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
-public enum Migration implements CompileParameter {
+public enum Migration implements CompileParameter, ActionResources {
 	INSTANCE;
 
 	@Override
@@ -22,15 +23,15 @@ public enum Migration implements CompileParameter {
 	private final static String DESCRIPTION_START = "/*MIGRATION_DESCRIPTION";
 	private final static String DESCRIPTION_END = "MIGRATION_DESCRIPTION*/";
 
-	private static final String POSTGRES_MIGRATION_FILE_NAME = "postgres_migration_file";
-	private static final String ORACLE_MIGRATION_FILE_NAME = "oracle_migration_file";
+	public static final Context.Key<File> POSTGRES_MIGRATION_FILE = new Context.Key<File>("postgres_migration_file");
+	public static final Context.Key<File> ORACLE_MIGRATION_FILE = new Context.Key<File>("oracle_migration_file");
 
 	public static File getPostgresMigrationFile(final Context context) {
-		return context.load(POSTGRES_MIGRATION_FILE_NAME);
+		return context.load(POSTGRES_MIGRATION_FILE);
 	}
 
 	public static File getOracleMigrationFile(final Context context) {
-		return context.load(ORACLE_MIGRATION_FILE_NAME);
+		return context.load(ORACLE_MIGRATION_FILE);
 	}
 
 	public static String[] extractDescriptions(final String sql) throws ExitException {
@@ -42,11 +43,26 @@ public enum Migration implements CompileParameter {
 		return new String[0];
 	}
 
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.DSL, Resource.COMPILER, Resource.PREVIOUS_DSL)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.MIGRATION)
+				: EnumSet.noneOf(Resource.class);
+	}
+
 	@Override
 	public boolean check(final Context context) {
 		if (context.contains(INSTANCE)) {
 			if (!context.contains(PostgresConnection.INSTANCE)
-					&& !context.contains(OracleConnection.INSTANCE)) {
+					&& !context.contains(OracleConnection.INSTANCE)
+					&& !context.contains(Tenants.INSTANCE)) {
 				context.error("Connection string is required to create a migration script.\n"
 						+ "Neither Oracle or Postgres connection string found");
 				return false;
@@ -71,27 +87,32 @@ public enum Migration implements CompileParameter {
 		return true;
 	}
 
+	static File getMigrationPath(final Context context) throws ExitException {
+		final String value = context.get(SqlPath.INSTANCE);
+		final File path;
+		if (!context.contains(SqlPath.INSTANCE) || value == null || value.length() == 0) {
+			path = TempPath.getTempProjectPath(context);
+		} else {
+			path = new File(value);
+		}
+		if (!path.exists()) {
+			context.error("Error accessing SQL path (" + path.getAbsolutePath() + ").");
+			throw new ExitException();
+		}
+		return path;
+	}
+
 	@Override
 	public void run(final Context context) throws ExitException {
 		if (context.contains(Migration.INSTANCE)) {
-			final String value = context.get(SqlPath.INSTANCE);
-			final File path;
-			if (!context.contains(SqlPath.INSTANCE) || value == null || value.length() == 0) {
-				path = TempPath.getTempProjectPath(context);
-			} else {
-				path = new File(value);
-			}
-			if (!path.exists()) {
-				context.error("Error accessing SQL path (" + path.getAbsolutePath() + ").");
-				throw new ExitException();
-			}
+			final File path = getMigrationPath(context);
 			if (context.contains(PostgresConnection.INSTANCE)) {
 				final DatabaseInfo dbInfo = PostgresConnection.getDatabaseDslAndVersion(context);
-				createMigration(context, path, dbInfo, POSTGRES_MIGRATION_FILE_NAME);
+				createMigration(context, path, dbInfo, POSTGRES_MIGRATION_FILE);
 			}
 			if (context.contains(OracleConnection.INSTANCE)) {
 				final DatabaseInfo dbInfo = OracleConnection.getDatabaseDslAndVersion(context);
-				createMigration(context, path, dbInfo, ORACLE_MIGRATION_FILE_NAME);
+				createMigration(context, path, dbInfo, ORACLE_MIGRATION_FILE);
 			}
 		}
 	}
@@ -100,7 +121,7 @@ public enum Migration implements CompileParameter {
 			final Context context,
 			final File path,
 			final DatabaseInfo dbInfo,
-			final String file) throws ExitException {
+			final Context.Key<File> file) throws ExitException {
 		final List<File> currentDsl = DslPath.getDslPaths(context);
 		context.show("Creating SQL migration for " + dbInfo.database + " ...");
 		final Either<String> migration = DslCompiler.migration(context, dbInfo, currentDsl);
@@ -0,0 +1,138 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.Utils;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Generated migration scripts stored in the user cache folder, so they survive temp folder cleanup.
+ * Key covers everything which affects the migration: previous and current DSL,
+ * compiler, database type and version and migration options.
+ * Empty migration is cached too, as a fast "no changes" answer.
+ */
+final class MigrationCache {
+
+	private static final String FOLDER_NAME = "migration-cache";
+	private static final long MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+	static boolean isEnabled() {
+		return !"false".equals(System.getProperty("dsl-platform.migration-cache"));
+	}
+
+	private static void update(final MessageDigest md, final String value) throws UnsupportedEncodingException {
+		md.update((value != null ? value : "").getBytes("UTF-8"));
+		md.update((byte) 0);
+	}
+
+	/**
+	 * Cache key for migration.
+	 *
+	 * @return null when migration should not be cached (eg. compiler on a port with unknown binary)
+	 */
+	static String key(
+			final File compiler,
+			final List<String> arguments,
+			final DatabaseInfo dbInfo,
+			final List<File> currentDsls) throws IOException {
+		if (!isEnabled() || compiler == null || !compiler.isFile()) {
+			return null;
+		}
+		final MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IOException(ex);
+		}
+		update(md, compiler.getAbsolutePath());
+		update(md, compiler.length() + ":" + compiler.lastModified());
+		for (final String arg : arguments) {
+			if (!arg.startsWith("dsl=") && !arg.startsWith("previous-dsl=")) {
+				update(md, arg);
+			}
+		}
+		update(md, dbInfo.database + dbInfo.dbVersion);
+		update(md, dbInfo.compilerVersion);
+		if (dbInfo.dsl != null) {
+			for (final Map.Entry<String, String> kv : dbInfo.dsl.entrySet()) {
+				update(md, kv.getKey());
+				update(md, kv.getValue());
+			}
+		}
+		update(md, "current");
+		final byte[] buffer = new byte[8192];
+		for (final File f : currentDsls) {
+			update(md, f.getName());
+			final InputStream is = new FileInputStream(f);
+			try {
+				int len;
+				while ((len = is.read(buffer)) != -1) {
+					md.update(buffer, 0, len);
+				}
+			} finally {
+				is.close();
+			}
+			md.update((byte) 0);
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : md.digest()) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	private static File folder() {
+		return new File(Utils.getUserCachePath(), FOLDER_NAME);
+	}
+
+	static String load(final Context context, final String key) {
+		if (key == null) return null;
+		final File file = new File(folder(), key + ".sql");
+		if (!file.isFile()) return null;
+		final Either<String> sql = Utils.readFile(file);
+		if (!sql.isSuccess()) {
+			context.log("Unable to read cached migration: " + file.getAbsolutePath());
+			return null;
+		}
+		context.log("Using cached migration from " + file.getAbsolutePath());
+		if (!file.setLastModified(System.currentTimeMillis())) {
+			context.log("Unable to update last modified info on: " + file.getAbsolutePath());
+		}
+		return sql.get();
+	}
+
+	static void store(final Context context, final String key, final String sql) {
+		if (key == null) return;
+		final File folder = folder();
+		if (!folder.exists() && !folder.mkdirs() && !folder.exists()) {
+			context.log("Unable to create migration cache folder: " + folder.getAbsolutePath());
+			return;
+		}
+		final File file = new File(folder, key + ".sql");
+		final File tmp = new File(folder, key + "." + UUID.randomUUID() + ".tmp");
+		try {
+			Utils.saveFile(context, tmp, sql);
+			if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file))) {
+				throw new IOException("Unable to rename " + tmp.getAbsolutePath());
+			}
+		} catch (IOException ex) {
+			tmp.delete();
+			context.log("Unable to cache migration: " + ex.getMessage());
+		}
+		final File[] old = folder.listFiles();
+		if (old != null) {
+			final long now = System.currentTimeMillis();
+			for (final File f : old) {
+				if (now - f.lastModified() > MAX_AGE) {
+					f.delete();
+				}
+			}
+		}
+	}
+}
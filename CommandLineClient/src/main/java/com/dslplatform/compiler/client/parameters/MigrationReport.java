@@ -0,0 +1,157 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timing breakdown of an applied migration script.
+ * Saved as JSON next to the migration script.
+ */
+final class MigrationReport {
+
+	static class Entry {
+		final int index;
+		final int line;
+		final String sql;
+		final long duration;
+		final int rows;
+		final long lockWait;
+		final String blockedBy;
+		final String error;
+
+		Entry(
+				final int index,
+				final int line,
+				final String sql,
+				final long duration,
+				final int rows,
+				final long lockWait,
+				final String blockedBy,
+				final String error) {
+			this.index = index;
+			this.line = line;
+			this.sql = sql;
+			this.duration = duration;
+			this.rows = rows;
+			this.lockWait = lockWait;
+			this.blockedBy = blockedBy;
+			this.error = error;
+		}
+	}
+
+	private final String database;
+	private final int total;
+	private final long startedAt = System.currentTimeMillis();
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private String status = "running";
+
+	MigrationReport(final String database, final int total) {
+		this.database = database;
+		this.total = total;
+	}
+
+	void add(final Entry entry) {
+		entries.add(entry);
+	}
+
+	void finish(final String status) {
+		this.status = status;
+	}
+
+	Entry slowest() {
+		Entry slowest = null;
+		for (final Entry e : entries) {
+			if (slowest == null || e.duration > slowest.duration) {
+				slowest = e;
+			}
+		}
+		return slowest;
+	}
+
+	static void appendString(final StringBuilder sb, final String value) {
+		if (value == null) {
+			sb.append("null");
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}
+		sb.append('"');
+	}
+
+	String toJson() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"database\": ");
+		appendString(sb, database);
+		sb.append(",\n  \"status\": ");
+		appendString(sb, status);
+		sb.append(",\n  \"startedAt\": ").append(startedAt);
+		long duration = 0;
+		for (final Entry e : entries) {
+			duration += e.duration;
+		}
+		sb.append(",\n  \"duration\": ").append(duration);
+		sb.append(",\n  \"total\": ").append(total);
+		sb.append(",\n  \"executed\": ").append(entries.size());
+		sb.append(",\n  \"statements\": [");
+		for (int i = 0; i < entries.size(); i++) {
+			final Entry e = entries.get(i);
+			sb.append(i == 0 ? "\n    {" : ",\n    {");
+			sb.append("\"index\": ").append(e.index);
+			sb.append(", \"line\": ").append(e.line);
+			sb.append(", \"duration\": ").append(e.duration);
+			sb.append(", \"rows\": ");
+			if (e.rows >= 0) sb.append(e.rows);
+			else sb.append("null");
+			sb.append(", \"lockWait\": ").append(e.lockWait);
+			sb.append(", \"blockedBy\": ");
+			appendString(sb, e.blockedBy);
+			sb.append(", \"error\": ");
+			appendString(sb, e.error);
+			sb.append(", \"sql\": ");
+			appendString(sb, e.sql);
+			sb.append('}');
+		}
+		sb.append(entries.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	void save(final Context context, final File file) {
+		if (file == null) return;
+		try {
+			Utils.saveFile(context, file, toJson());
+			context.show("Migration report saved to: " + file.getAbsolutePath());
+		} catch (IOException ex) {
+			context.warning("Unable to save migration report: " + ex.getMessage());
+		}
+	}
+}
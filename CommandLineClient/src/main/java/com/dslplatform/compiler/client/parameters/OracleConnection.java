@@ -1,11 +1,15 @@
 package com.dslplatform.compiler.client.parameters;
 
+import com.dslplatform.compiler.client.ActionResources.Resource;
 import com.dslplatform.compiler.client.CompileParameter;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.LazyCheck;
+import com.dslplatform.compiler.client.Profiler;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -14,7 +18,7 @@ import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public enum OracleConnection implements CompileParameter {
+public enum OracleConnection implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -27,8 +31,14 @@ public enum OracleConnection implements CompileParameter {
 		return "connection_string";
 	}
 
-	private static final String CACHE_NAME = "oracle_dsl_cache";
-	private static final String ORACLE_CUSTOM_DRIVER = "oracle_jdbc_driver";
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.PREVIOUS_DSL, Resource.MIGRATION);
+	}
+
+	private static final Context.Key<DatabaseInfo> CACHE = new Context.Key<DatabaseInfo>("oracle_dsl_cache");
+	private static final Context.Key<DatabasePrefetch> PREFETCH = new Context.Key<DatabasePrefetch>("oracle_dsl_prefetch");
+	private static final Context.Key<Driver> ORACLE_CUSTOM_DRIVER = new Context.Key<Driver>("oracle_jdbc_driver");
 
 	public static Map<String, String> getDatabaseDsl(final Context context) throws ExitException {
 		return getDatabaseDslAndVersion(context).dsl;
@@ -50,11 +60,32 @@ public enum OracleConnection implements CompileParameter {
 				: driver.connect(url, null);
 	}
 
+	private static final String[] SCHEMAS = {"\"-DSL-\"", "\"-NGS-\""};
+	//content hash (MD5) of previous DSL. Requires execute privilege on DBMS_CRYPTO
+	private static final String DSL_HASH = "RAWTOHEX(DBMS_CRYPTO.HASH(m.Dsls, 2)) AS DslHash";
+
+	private static String latestMigrationQuery(final String schema, final String outer, final String inner) {
+		return "SELECT " + outer + "\n" +
+				"FROM (SELECT " + inner + " FROM " + schema + ".Database_Migration m ORDER BY m.Ordinal DESC) sq\n" +
+				"WHERE RowNum = 1";
+	}
+
 	public static DatabaseInfo getDatabaseDslAndVersion(final Context context) throws ExitException {
-		final DatabaseInfo cache = context.load(CACHE_NAME);
+		final DatabaseInfo cache = context.load(CACHE);
 		if (cache != null) {
 			return cache;
 		}
+		return DatabasePrefetch.load(context, PREFETCH, LOADER);
+	}
+
+	private static final DatabasePrefetch.Loader LOADER = new DatabasePrefetch.Loader() {
+		@Override
+		public DatabaseInfo load(final Context context) throws ExitException {
+			return loadDatabaseDslAndVersion(context);
+		}
+	};
+
+	private static DatabaseInfo loadDatabaseDslAndVersion(final Context context) throws ExitException {
 		final String value = context.get(INSTANCE);
 		final String connectionString = "jdbc:oracle:thin:" + value;
 		Connection conn;
@@ -86,7 +117,7 @@ public enum OracleConnection implements CompileParameter {
 			if (!hasTable) {
 				stmt.close();
 				conn.close();
-				context.cache(CACHE_NAME, emptyResult);
+				context.cache(CACHE, emptyResult);
 				return emptyResult;
 			}
 		} catch (SQLException ex) {
@@ -95,32 +126,68 @@ public enum OracleConnection implements CompileParameter {
 			cleanup(conn, context);
 			throw new ExitException();
 		}
+		final String identity = DslCache.identity("Oracle", connectionString);
 		try {
-			ResultSet lastMigration;
-			try {
-				lastMigration = stmt.executeQuery("SELECT sq.Dsls, sq.Version\n" +
-						"FROM (SELECT m.Dsls, m.Version FROM \"-DSL-\".Database_Migration m ORDER BY m.Ordinal DESC) sq\n" +
-						"WHERE RowNum = 1");
-			}catch (Throwable ignore) {
-				lastMigration = stmt.executeQuery("SELECT sq.Dsls, sq.Version\n" +
-						"FROM (SELECT m.Dsls, m.Version FROM \"-NGS-\".Database_Migration m ORDER BY m.Ordinal DESC) sq\n" +
-						"WHERE RowNum = 1");
+			String schema = null;
+			boolean hashed = false;
+			ResultSet latest = null;
+			//cheap check first, so previous DSL is transferred only when it changed
+			for (final String candidate : SCHEMAS) {
+				try {
+					latest = stmt.executeQuery(latestMigrationQuery(candidate, "sq.Ordinal, sq.DslHash", "m.Ordinal, " + DSL_HASH));
+					schema = candidate;
+					hashed = true;
+					break;
+				} catch (SQLException ignore) {
+				}
+			}
+			if (schema == null) {
+				context.log("Unable to hash previous DSL with DBMS_CRYPTO. DSL cache will not be used");
+				schema = SCHEMAS[0];
+				try {
+					stmt.executeQuery(latestMigrationQuery(schema, "sq.Ordinal", "m.Ordinal")).close();
+				} catch (Throwable ignore) {
+					schema = SCHEMAS[1];
+				}
+			}
+			final DslCache.Entry cached = latest != null && latest.next()
+					? DslCache.load(context, identity, latest.getLong(1) + ":" + latest.getString(2))
+					: null;
+			if (latest != null) {
+				latest.close();
 			}
-			final String lastDsl;
+			if (cached != null) {
+				stmt.close();
+				conn.close();
+				final DatabaseInfo result = new DatabaseInfo("Oracle", cached.compiler, oracle, cached.dsl);
+				context.cache(CACHE, result);
+				return result;
+			}
+			final ResultSet lastMigration = stmt.executeQuery(hashed
+					? latestMigrationQuery(schema, "sq.Dsls, sq.Version, sq.Ordinal, sq.DslHash", "m.Dsls, m.Version, m.Ordinal, " + DSL_HASH)
+					: latestMigrationQuery(schema, "sq.Dsls, sq.Version", "m.Dsls, m.Version"));
+			final Map<String, String> dslMap;
 			final String compiler;
+			final String fingerprint;
 			if (lastMigration.next()) {
-				lastDsl = lastMigration.getString(1);
+				final Reader dsls = lastMigration.getCharacterStream(1);
+				dslMap = dsls != null
+						? DatabaseInfo.convertToMap(dsls, context)
+						: new HashMap<String, String>();
 				compiler = lastMigration.getString(2);
+				fingerprint = hashed ? lastMigration.getLong(3) + ":" + lastMigration.getString(4) : null;
 			} else {
-				lastDsl = compiler = "";
+				dslMap = new HashMap<String, String>();
+				compiler = "";
+				fingerprint = null;
 			}
 			lastMigration.close();
 			stmt.close();
 			conn.close();
-			if (lastDsl != null && lastDsl.length() > 0) {
-				final Map<String, String> dslMap = DatabaseInfo.convertToMap(lastDsl, context);
+			if (!dslMap.isEmpty()) {
+				DslCache.store(context, identity, fingerprint, compiler, dslMap);
 				final DatabaseInfo result = new DatabaseInfo("Oracle", compiler, oracle, dslMap);
-				context.cache(CACHE_NAME, result);
+				context.cache(CACHE, result);
 				return result;
 			}
 		} catch (SQLException ex) {
@@ -129,7 +196,7 @@ public enum OracleConnection implements CompileParameter {
 			cleanup(conn, context);
 			throw new ExitException();
 		}
-		context.cache(CACHE_NAME, emptyResult);
+		context.cache(CACHE, emptyResult);
 		return emptyResult;
 	}
 
@@ -149,6 +216,7 @@ public enum OracleConnection implements CompileParameter {
 		final int migrationEnds = sql.indexOf("MIGRATION_DESCRIPTION*/");
 		final String rawSql = migrationEnds == -1 ? sql : sql.substring(migrationEnds + "MIGRATION_DESCRIPTION*/".length());
 		final String[] parts = rawSql.contains("\r\n") ? rawSql.split("\r\n/\r\n") : rawSql.split("\n/\n");
+		final Profiler.Span span = Profiler.start(context, "database", "sql apply").bytes(sql.length());
 		try {
 			for (final String part : parts) {
 				final String trimmed = part.trim();
@@ -164,6 +232,8 @@ public enum OracleConnection implements CompileParameter {
 			context.error(ex);
 			cleanup(conn, context);
 			throw new ExitException();
+		} finally {
+			span.end();
 		}
 	}
 
@@ -336,7 +406,11 @@ public enum OracleConnection implements CompileParameter {
 				}
 			}
 		}
-		return testConnection(context);
+		if (!testConnection(context)) {
+			return false;
+		}
+		DatabasePrefetch.start(context, PREFETCH, LOADER);
+		return true;
 	}
 
 	@Override
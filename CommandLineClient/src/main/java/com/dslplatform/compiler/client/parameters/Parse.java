@@ -1,10 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
-public enum Parse implements CompileParameter {
+public enum Parse implements CompileParameter, ActionResources {
 	INSTANCE;
 
 	@Override
@@ -17,6 +20,18 @@ public enum Parse implements CompileParameter {
 		return null;
 	}
 
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.DSL, Resource.COMPILER)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return EnumSet.noneOf(Resource.class);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		if (context.contains(INSTANCE)) {
@@ -1,14 +1,22 @@
 package com.dslplatform.compiler.client.parameters;
 
+import com.dslplatform.compiler.client.ActionResources.Resource;
 import com.dslplatform.compiler.client.CompileParameter;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.LazyCheck;
+import com.dslplatform.compiler.client.ProcessExecutor;
+import com.dslplatform.compiler.client.Profiler;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.Reader;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
-public enum PostgresConnection implements CompileParameter {
+public enum PostgresConnection implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -21,7 +29,66 @@ public enum PostgresConnection implements CompileParameter {
 		return "connection_string";
 	}
 
-	private static final String CACHE_NAME = "postgres_dsl_cache";
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.PREVIOUS_DSL, Resource.MIGRATION);
+	}
+
+	private static final Context.Key<DatabaseInfo> CACHE = new Context.Key<DatabaseInfo>("postgres_dsl_cache");
+	private static final Context.Key<DatabasePrefetch> PREFETCH = new Context.Key<DatabasePrefetch>("postgres_dsl_prefetch");
+	private static final Context.Key<SharedConnection> CONNECTION = new Context.Key<SharedConnection>("postgres_connection");
+	//lock is kept in the cache, so wrappers of the same context (eg. deferred contexts) share it
+	private static final Context.Key<Object> CONNECTION_LOCK = new Context.Key<Object>("postgres_connection_lock");
+
+	//Connection shared by all Postgres operations during a single run. Closed with the context
+	private static class SharedConnection implements Closeable {
+		private final String url;
+		private final Connection connection;
+
+		SharedConnection(final String url, final Connection connection) {
+			this.url = url;
+			this.connection = connection;
+		}
+
+		@Override
+		public void close() {
+			try {
+				connection.close();
+			} catch (SQLException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Connection to the database specified in the connection string.
+	 * Connection is opened on first use and reused until the context is closed,
+	 * or the connection string changes.
+	 * Simple query mode is used so migration scripts can be executed on the same connection.
+	 *
+	 * @param context context with connection string
+	 * @return open connection
+	 * @throws SQLException when connection could not be established
+	 */
+	static Connection getConnection(final Context context) throws SQLException {
+		synchronized (context.cacheIfAbsent(CONNECTION_LOCK, new Object())) {
+			final String url = "jdbc:postgresql://" + context.get(INSTANCE);
+			final SharedConnection shared = context.load(CONNECTION);
+			if (shared != null) {
+				if (shared.url.equals(url) && !shared.connection.isClosed()) {
+					return shared.connection;
+				}
+				shared.close();
+				context.cache(CONNECTION, null);
+			}
+			final long startAt = System.currentTimeMillis();
+			final Properties props = new Properties();
+			props.setProperty("preferQueryMode", "simple");
+			final Connection connection = DriverManager.getConnection(url, props);
+			context.log("Connected to Postgres in " + (System.currentTimeMillis() - startAt) + "ms");
+			context.cache(CONNECTION, new SharedConnection(url, connection));
+			return connection;
+		}
+	}
 
 	public static Map<String, String> getDatabaseDsl(final Context context) throws ExitException {
 		return getDatabaseDslAndVersion(context).dsl;
@@ -37,18 +104,26 @@ public enum PostgresConnection implements CompileParameter {
 	}
 
 	public static DatabaseInfo getDatabaseDslAndVersion(final Context context) throws ExitException {
-		final DatabaseInfo cache = context.load(CACHE_NAME);
+		final DatabaseInfo cache = context.load(CACHE);
 		if (cache != null) {
 			return cache;
 		}
-		final String value = context.get(INSTANCE);
-		final String connectionString = "jdbc:postgresql://" + value;
-		Connection conn;
-		Statement stmt;
+		return DatabasePrefetch.load(context, PREFETCH, LOADER);
+	}
+
+	private static final DatabasePrefetch.Loader LOADER = new DatabasePrefetch.Loader() {
+		@Override
+		public DatabaseInfo load(final Context context) throws ExitException {
+			return loadDatabaseDslAndVersion(context);
+		}
+	};
+
+	private static DatabaseInfo loadDatabaseDslAndVersion(final Context context) throws ExitException {
+		final String connectionString = "jdbc:postgresql://" + context.get(INSTANCE);
+		final Statement stmt;
 		final String postgres;
 		try {
-			conn = DriverManager.getConnection(connectionString);
-			stmt = conn.createStatement();
+			stmt = getConnection(context).createStatement();
 			final ResultSet pgVersion = stmt.executeQuery("SELECT version()");
 			if (pgVersion.next()) {
 				postgres = extractPostgresVersion(pgVersion.getString(1), context);
@@ -79,135 +154,300 @@ public enum PostgresConnection implements CompileParameter {
 			migrationExist.close();
 			if (!hasNewTable && !hasOldTable) {
 				stmt.close();
-				conn.close();
-				context.cache(CACHE_NAME, emptyResult);
+				context.cache(CACHE, emptyResult);
 				return emptyResult;
 			}
 		} catch (SQLException ex) {
 			context.error("Error checking for migration table in -DSL- schema");
 			context.error(ex);
-			cleanup(conn, context);
+			cleanup(stmt, context);
 			throw new ExitException();
 		}
+		final String table = hasNewTable ? "\"-DSL-\".database_migration" : "\"-NGS-\".database_migration";
+		final String identity = DslCache.identity("Postgres", connectionString);
 		try {
-			final ResultSet lastMigration = hasNewTable
-					?  stmt.executeQuery("SELECT dsls, version FROM \"-DSL-\".database_migration ORDER BY ordinal DESC LIMIT 1")
-					: stmt.executeQuery("SELECT dsls, version FROM \"-NGS-\".database_migration ORDER BY ordinal DESC LIMIT 1");
-			final String lastDsl;
+			//cheap check first, so previous DSL is transferred only when it changed
+			final ResultSet latest = stmt.executeQuery(
+					"SELECT ordinal, md5(dsls::text) FROM " + table + " ORDER BY ordinal DESC LIMIT 1");
+			final DslCache.Entry cached = latest.next()
+					? DslCache.load(context, identity, latest.getString(1) + ":" + latest.getString(2))
+					: null;
+			latest.close();
+			if (cached != null) {
+				stmt.close();
+				final DatabaseInfo result = new DatabaseInfo("Postgres", cached.compiler, postgres, cached.dsl);
+				context.cache(CACHE, result);
+				return result;
+			}
+			final ResultSet lastMigration = stmt.executeQuery(
+					"SELECT dsls, version, ordinal, md5(dsls::text) FROM " + table + " ORDER BY ordinal DESC LIMIT 1");
+			final Map<String, String> dslMap;
 			final String compiler;
+			final String fingerprint;
 			if (lastMigration.next()) {
-				lastDsl = lastMigration.getString(1);
+				final Reader dsls = lastMigration.getCharacterStream(1);
+				dslMap = dsls != null
+						? DatabaseInfo.convertToMap(dsls, context)
+						: new HashMap<String, String>();
 				compiler = lastMigration.getString(2);
+				fingerprint = lastMigration.getString(3) + ":" + lastMigration.getString(4);
 			} else {
-				lastDsl = compiler = "";
+				dslMap = new HashMap<String, String>();
+				compiler = "";
+				fingerprint = null;
 			}
 			lastMigration.close();
 			stmt.close();
-			conn.close();
-			if (lastDsl != null && lastDsl.length() > 0) {
-				final Map<String, String> dslMap = DatabaseInfo.convertToMap(lastDsl, context);
+			if (!dslMap.isEmpty()) {
+				DslCache.store(context, identity, fingerprint, compiler, dslMap);
 				final DatabaseInfo result = new DatabaseInfo("Postgres", compiler, postgres, dslMap);
-				context.cache(CACHE_NAME, result);
+				context.cache(CACHE, result);
 				return result;
 			}
 		} catch (SQLException ex) {
 			context.error("Error loading previous DSL from migration table in -DSL- schema");
 			context.error(ex);
-			cleanup(conn, context);
+			cleanup(stmt, context);
 			throw new ExitException();
 		}
-		context.cache(CACHE_NAME, emptyResult);
+		context.cache(CACHE, emptyResult);
 		return emptyResult;
 	}
 
 	public static void execute(final Context context, final String sql) throws ExitException {
-		final String connectionString = "jdbc:postgresql://" + context.get(INSTANCE);
+		execute(context, sql, null);
+	}
+
+	//Polls pg_stat_activity from a separate connection to detect lock waits of the migration backend.
+	//Connection is opened only when some statement is running for a while
+	private static class LockMonitor {
+		private final Context context;
+		private final int pid;
+		private Connection connection;
+		private boolean disabled;
+
+		LockMonitor(final Context context, final int pid) {
+			this.context = context;
+			this.pid = pid;
+			this.disabled = pid <= 0;
+		}
+
+		String blockedBy() {
+			if (disabled) return null;
+			try {
+				if (connection == null) {
+					connection = DriverManager.getConnection("jdbc:postgresql://" + context.get(INSTANCE));
+				}
+				final PreparedStatement ps = connection.prepareStatement(
+						"SELECT wait_event_type, wait_event, pg_blocking_pids(pid)::text FROM pg_stat_activity WHERE pid = ?");
+				try {
+					ps.setInt(1, pid);
+					final ResultSet rs = ps.executeQuery();
+					try {
+						if (rs.next() && "Lock".equals(rs.getString(1))) {
+							return rs.getString(2) + " lock held by " + rs.getString(3);
+						}
+					} finally {
+						rs.close();
+					}
+				} finally {
+					ps.close();
+				}
+			} catch (SQLException ex) {
+				context.log("Unable to monitor lock waits: " + ex.getMessage());
+				disabled = true;
+			}
+			return null;
+		}
+
+		void close() {
+			if (connection != null) {
+				try {
+					connection.close();
+				} catch (SQLException ignore) {
+				}
+			}
+		}
+	}
 
-		Connection conn;
+	private static final int STATEMENT_TIMEOUT = 600;
+
+	/**
+	 * Execute migration script statement by statement in a single transaction.
+	 * Duration, affected rows and lock waits are reported for each statement.
+	 * When report file is provided, timing breakdown is saved as JSON.
+	 *
+	 * @param context context with connection string
+	 * @param sql     migration script
+	 * @param report  JSON report file. Can be null
+	 * @throws ExitException when migration failed or was canceled. Transaction is rolled back
+	 */
+	public static void execute(final Context context, final String sql, final File report) throws ExitException {
+		final String connectionString = "jdbc:postgresql://" + context.get(INSTANCE);
+		final List<PostgresScript.Statement> statements = PostgresScript.split(sql);
+		final MigrationReport migration = new MigrationReport("Postgres", statements.size());
+		final Connection conn;
 		final Statement stmt;
+		final int pid;
 		try {
-			final Properties props = new Properties();
-			props.setProperty("preferQueryMode", "simple");
-			conn = DriverManager.getConnection(connectionString, props);
+			conn = getConnection(context);
 			stmt = conn.createStatement();
+			final ResultSet rs = stmt.executeQuery("SELECT pg_backend_pid()");
+			pid = rs.next() ? rs.getInt(1) : 0;
+			rs.close();
+			conn.setAutoCommit(false);
 		} catch (SQLException e) {
 			context.error("Error opening connection to " + connectionString);
 			context.error(e);
 			throw new ExitException();
 		}
-
+		final LockMonitor monitor = new LockMonitor(context, pid);
+		final Profiler.Span span = Profiler.start(context, "database", "sql apply").bytes(sql.length());
+		boolean committed = false;
 		try {
+			final long startAt = System.currentTimeMillis();
+			for (int i = 0; i < statements.size(); i++) {
+				executeStatement(context, stmt, statements.get(i), i + 1, statements.size(), monitor, migration);
+			}
+			conn.commit();
+			committed = true;
+			migration.finish("committed");
+			final MigrationReport.Entry slowest = migration.slowest();
+			context.show("Executed " + statements.size() + " statements in " + (System.currentTimeMillis() - startAt) + "ms");
+			if (slowest != null) {
+				context.log("Slowest statement " + slowest.index + " (line " + slowest.line + "): " + slowest.duration + "ms");
+			}
+		} catch (SQLException ex) {
+			migration.finish("failed");
+			context.error("Error committing migration");
+			context.error(ex);
+			throw new ExitException();
+		} catch (ExitException ex) {
+			migration.finish("rolled back");
+			throw ex;
+		} finally {
+			if (!committed) {
+				try {
+					conn.rollback();
+					context.error("Migration rolled back");
+				} catch (SQLException ex) {
+					context.error("Error rolling back migration");
+					context.error(ex);
+				}
+			}
 			try {
-				final long startAt = System.currentTimeMillis();
-				final boolean[] isDone = new boolean[1];
-				final boolean[] hasErrors = new boolean[1];
-				final boolean[] waitingAnswer = new boolean[1];
-				final Thread waitResp = new Thread(new Runnable() {
-					@Override
-					public void run() {
-						try {
-							stmt.execute(sql);
-							hasErrors[0] = false;
-						} catch (Exception ex) {
-							context.error(ex);
-							hasErrors[0] = true;
-						}
-						isDone[0] = true;
-						if (waitingAnswer[0]) {
-							context.show("Query finished while waiting for answer");
-						}
-					}
-				});
-				waitResp.start();
-				waitResp.join(100);
-				int timeout = 0;
-				while (!isDone[0] && timeout < 600) {
-					timeout += 1;
-					waitResp.join(1000);
-					if (timeout == 10) {
-						context.warning("Query execution is taking a long time...");
-					} else  if (timeout % 10 == 0) {
-						context.warning("Still waiting...");
-					}
-					if (!isDone[0] && (timeout % 30 == 0) && context.canInteract()) {
-						waitingAnswer[0] = true;
-						final String response = context.ask("Abort executing query [y/N]?");
-						waitingAnswer[0] = false;
-						if ("y".equalsIgnoreCase(response) && !isDone[0]) {
-							stmt.cancel();
-							context.error("Canceled SQL script execution");
-							throw new ExitException();
-						}
+				conn.setAutoCommit(true);
+			} catch (SQLException ignore) {
+			}
+			cleanup(stmt, context);
+			monitor.close();
+			span.end();
+			migration.save(context, report);
+		}
+	}
+
+	private static void executeStatement(
+			final Context context,
+			final Statement stmt,
+			final PostgresScript.Statement statement,
+			final int index,
+			final int total,
+			final LockMonitor monitor,
+			final MigrationReport migration) throws ExitException {
+		final String position = "statement " + index + "/" + total + " (line " + statement.line + ")";
+		final long[] duration = new long[1];
+		final Future<Integer> running = ProcessExecutor.executor().submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws SQLException {
+				final long start = System.nanoTime();
+				try {
+					stmt.execute(statement.sql);
+					return stmt.getUpdateCount();
+				} finally {
+					duration[0] = (System.nanoTime() - start) / 1000000;
+				}
+			}
+		});
+		long lockWait = 0;
+		String blockedBy = null;
+		int seconds = 0;
+		int rows;
+		try {
+			while (true) {
+				try {
+					rows = running.get(1, TimeUnit.SECONDS);
+					break;
+				} catch (TimeoutException ignore) {
+				}
+				seconds++;
+				final String lock = monitor.blockedBy();
+				if (lock != null) {
+					if (blockedBy == null) {
+						context.warning("Waiting for " + lock + " in " + position);
 					}
+					blockedBy = lock;
+					lockWait += 1000;
 				}
-				final long endAt = System.currentTimeMillis();
-				if (hasErrors[0]) {
-					context.error("Error executing SQL script.");
-					throw new ExitException();
-				} else if (isDone[0]) {
-					context.log("Script executed in " + (endAt - startAt) + "ms");
-				} else {
-					context.error("Failed to execute script. Timeout out waiting.");
+				if (seconds == 10) {
+					context.warning("Execution of " + position + " is taking a long time: " + statement.summary());
+				} else if (seconds % 10 == 0) {
+					context.warning("Still waiting on " + position + " (" + seconds + "s)...");
+				}
+				if (seconds >= STATEMENT_TIMEOUT) {
+					stmt.cancel();
+					context.error("Failed to execute " + position + ". Timeout out waiting.");
 					throw new ExitException();
 				}
-			} catch (Exception ex) {
-				context.error("Error executing SQL script");
-				context.error(ex);
-				throw new ExitException();
+				if (seconds % 30 == 0 && context.canInteract()) {
+					final String response = context.ask("Abort executing query [y/N]?");
+					if ("y".equalsIgnoreCase(response) && !running.isDone()) {
+						stmt.cancel();
+						context.error("Canceled SQL script execution");
+						throw new ExitException();
+					}
+				}
 			}
-		} finally {
+		} catch (ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			migration.add(new MigrationReport.Entry(
+					index, statement.line, statement.sql, duration[0], -1, lockWait, blockedBy, cause.getMessage()));
+			context.error("Error executing " + position + ": " + statement.summary());
+			context.error(cause instanceof Exception ? (Exception) cause : ex);
+			throw new ExitException();
+		} catch (InterruptedException ex) {
+			context.error(ex);
+			throw new ExitException();
+		} catch (SQLException ex) {
+			context.error("Unable to cancel " + position);
+			context.error(ex);
+			throw new ExitException();
+		} catch (ExitException ex) {
 			try {
-				conn.close();
+				running.get();
 			} catch (Exception ignore) {
 			}
+			migration.add(new MigrationReport.Entry(
+					index, statement.line, statement.sql, duration[0], -1, lockWait, blockedBy, "canceled"));
+			throw ex;
+		}
+		migration.add(new MigrationReport.Entry(
+				index, statement.line, statement.sql, duration[0], rows, lockWait, blockedBy, null));
+		final String message = "Executed " + position + " in " + duration[0] + "ms"
+				+ (rows > 0 ? ", rows: " + rows : "")
+				+ (lockWait > 0 ? ", lock wait: " + lockWait + "ms" : "")
+				+ ": " + statement.summary();
+		if (duration[0] >= 1000) {
+			context.show(message);
+		} else {
+			context.log(message);
 		}
 	}
 
-	private static void cleanup(final Connection conn, final Context context) {
+	private static void cleanup(final Statement stmt, final Context context) {
 		try {
-			conn.close();
+			stmt.close();
 		} catch (SQLException ex2) {
-			context.error("Error cleaning up connection.");
+			context.error("Error cleaning up statement.");
 			context.error(ex2);
 		}
 	}
@@ -232,11 +472,9 @@ public enum PostgresConnection implements CompileParameter {
 	private static boolean testConnection(final Context context) throws ExitException {
 		final String connectionString = context.get(INSTANCE);
 		try {
-			final Connection conn = DriverManager.getConnection("jdbc:postgresql://" + connectionString);
-			final Statement stmt = conn.createStatement();
+			final Statement stmt = getConnection(context).createStatement();
 			stmt.execute(";");
 			stmt.close();
-			conn.close();
 		} catch (SQLException e) {
 			if (context.canInteract()) {
 				context.warning("Error connecting to the database.");
@@ -361,7 +599,11 @@ public enum PostgresConnection implements CompileParameter {
 			context.error("Error loading Postgres driver.");
 			throw new ExitException();
 		}
-		return testConnection(context);
+		if (!testConnection(context)) {
+			return false;
+		}
+		DatabasePrefetch.start(context, PREFETCH, LOADER);
+		return true;
 	}
 
 	@Override
@@ -0,0 +1,171 @@
+package com.dslplatform.compiler.client.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits Postgres SQL script into separate statements.
+ * Semicolons inside string literals, quoted identifiers, comments
+ * and dollar quoted bodies (functions, DO blocks) don't end the statement.
+ * Comments between statements are dropped.
+ */
+final class PostgresScript {
+
+	static class Statement {
+		final int line;
+		final String sql;
+
+		Statement(final int line, final String sql) {
+			this.line = line;
+			this.sql = sql;
+		}
+
+		String summary() {
+			final int nl = sql.indexOf('\n');
+			final String first = nl == -1 ? sql : sql.substring(0, nl);
+			return first.length() > 80 ? first.substring(0, 77) + "..." : first;
+		}
+	}
+
+	private static boolean isIdentifierPart(final char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	private static int countLines(final String sql, final int start, final int end) {
+		int lines = 0;
+		for (int i = start; i < end; i++) {
+			if (sql.charAt(i) == '\n') lines++;
+		}
+		return lines;
+	}
+
+	//returns dollar quote tag (eg. $$ or $body$) starting at position or null
+	private static String dollarTag(final String sql, final int start) {
+		if (start > 0 && isIdentifierPart(sql.charAt(start - 1))) {
+			return null;
+		}
+		int i = start + 1;
+		while (i < sql.length()) {
+			final char c = sql.charAt(i);
+			if (c == '$') {
+				return sql.substring(start, i + 1);
+			}
+			if (!(Character.isLetter(c) || c == '_' || i > start + 1 && Character.isDigit(c))) {
+				return null;
+			}
+			i++;
+		}
+		return null;
+	}
+
+	private static int skipString(final String sql, final int start, final boolean backslashEscapes) {
+		int i = start + 1;
+		while (i < sql.length()) {
+			final char c = sql.charAt(i);
+			if (backslashEscapes && c == '\\') {
+				i += 2;
+				continue;
+			}
+			if (c == '\'') {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			i++;
+		}
+		return sql.length();
+	}
+
+	private static int skipComment(final String sql, final int start) {
+		int depth = 0;
+		int i = start;
+		while (i < sql.length()) {
+			if (sql.startsWith("/*", i)) {
+				depth++;
+				i += 2;
+			} else if (sql.startsWith("*/", i)) {
+				depth--;
+				i += 2;
+				if (depth == 0) return i;
+			} else {
+				i++;
+			}
+		}
+		return sql.length();
+	}
+
+	static List<Statement> split(final String sql) {
+		final List<Statement> result = new ArrayList<Statement>();
+		final int len = sql.length();
+		int line = 1;
+		int start = -1;
+		int startLine = 1;
+		int i = 0;
+		while (i < len) {
+			final char c = sql.charAt(i);
+			final int next;
+			if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+				final int nl = sql.indexOf('\n', i);
+				i = nl == -1 ? len : nl;
+				continue;
+			} else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+				next = skipComment(sql, i);
+				line += countLines(sql, i, next);
+				i = next;
+				continue;
+			}
+			if (start == -1 && !Character.isWhitespace(c) && c != ';') {
+				start = i;
+				startLine = line;
+			}
+			if (c == '\'') {
+				final boolean escapes = i > 0 && (sql.charAt(i - 1) == 'E' || sql.charAt(i - 1) == 'e')
+						&& (i == 1 || !isIdentifierPart(sql.charAt(i - 2)));
+				next = skipString(sql, i, escapes);
+			} else if (c == '"') {
+				int end = i + 1;
+				while (end < len) {
+					if (sql.charAt(end) == '"') {
+						if (end + 1 < len && sql.charAt(end + 1) == '"') {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				next = Math.min(end + 1, len);
+			} else if (c == '$') {
+				final String tag = dollarTag(sql, i);
+				if (tag != null) {
+					final int end = sql.indexOf(tag, i + tag.length());
+					next = end == -1 ? len : end + tag.length();
+				} else {
+					next = i + 1;
+				}
+			} else if (c == ';') {
+				if (start != -1) {
+					result.add(new Statement(startLine, sql.substring(start, i).trim()));
+					start = -1;
+				}
+				next = i + 1;
+			} else {
+				if (c == '\n') line++;
+				next = i + 1;
+			}
+			if (next > i + 1) {
+				line += countLines(sql, i, next);
+			}
+			i = next;
+		}
+		if (start != -1) {
+			final String last = sql.substring(start).trim();
+			if (last.length() > 0) {
+				result.add(new Statement(startLine, last));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,178 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.Profiler;
+import com.dslplatform.compiler.client.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public enum Profile implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "profile";
+	}
+
+	@Override
+	public String getUsage() {
+		return "path";
+	}
+
+	private static class Summary {
+		final String name;
+		int count;
+		long total;
+		long max;
+		long bytes;
+		int files;
+		long heap;
+
+		Summary(final String name) {
+			this.name = name;
+		}
+	}
+
+	static String toTrace(final Profiler profiler) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [");
+		boolean first = true;
+		for (final Profiler.Span s : profiler.getSpans()) {
+			sb.append(first ? "\n" : ",\n");
+			first = false;
+			sb.append("{\"name\": ");
+			MigrationReport.appendString(sb, s.name);
+			sb.append(", \"cat\": ");
+			MigrationReport.appendString(sb, s.category);
+			sb.append(", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(s.thread);
+			sb.append(", \"ts\": ").append((s.start - profiler.origin) / 1000);
+			sb.append(", \"dur\": ").append((s.getEnd() - s.start) / 1000);
+			sb.append(", \"args\": {\"bytes\": ").append(s.getBytes());
+			sb.append(", \"files\": ").append(s.getFiles());
+			sb.append(", \"heapDelta\": ").append(s.getHeapDelta());
+			sb.append("}}");
+		}
+		for (final Profiler.Event e : profiler.getEvents()) {
+			sb.append(first ? "\n" : ",\n");
+			first = false;
+			sb.append("{\"name\": ");
+			MigrationReport.appendString(sb, e.name);
+			sb.append(", \"cat\": \"notify\", \"ph\": \"i\", \"s\": \"t\", \"pid\": 1, \"tid\": ").append(e.thread);
+			sb.append(", \"ts\": ").append((e.time - profiler.origin) / 1000);
+			sb.append('}');
+		}
+		sb.append(first ? "]}\n" : "\n]}\n");
+		return sb.toString();
+	}
+
+	static List<String> toTable(final Profiler profiler) {
+		final Map<String, Summary> summaries = new HashMap<String, Summary>();
+		for (final Profiler.Span s : profiler.getSpans()) {
+			Summary sum = summaries.get(s.name);
+			if (sum == null) {
+				sum = new Summary(s.name);
+				summaries.put(s.name, sum);
+			}
+			final long duration = s.getEnd() - s.start;
+			sum.count++;
+			sum.total += duration;
+			sum.max = Math.max(sum.max, duration);
+			sum.bytes += s.getBytes();
+			sum.files += s.getFiles();
+			sum.heap += s.getHeapDelta();
+		}
+		final List<Summary> ordered = new ArrayList<Summary>(summaries.values());
+		Collections.sort(ordered, new Comparator<Summary>() {
+			@Override
+			public int compare(final Summary a, final Summary b) {
+				return a.total < b.total ? 1 : a.total > b.total ? -1 : a.name.compareTo(b.name);
+			}
+		});
+		int width = 4;
+		for (final Summary s : ordered) {
+			width = Math.max(width, s.name.length());
+		}
+		final String format = "%-" + width + "s %6s %10s %10s %12s %7s %12s";
+		final List<String> lines = new ArrayList<String>(ordered.size() + 1);
+		lines.add(String.format(format, "Span", "Count", "Total ms", "Max ms", "Bytes", "Files", "Heap kB"));
+		for (final Summary s : ordered) {
+			lines.add(String.format(format,
+					s.name,
+					s.count,
+					s.total / 1000000,
+					s.max / 1000000,
+					s.bytes,
+					s.files,
+					s.heap / 1024));
+		}
+		return lines;
+	}
+
+	/**
+	 * Save trace of collected spans and show summary table.
+	 * Trace can be opened in Chrome (chrome://tracing) or other trace event viewers.
+	 */
+	public static void report(final Context context) {
+		final Profiler profiler = context.load(Profiler.KEY);
+		if (profiler == null) return;
+		final File file = new File(context.get(INSTANCE));
+		try {
+			Utils.saveFile(context, file, toTrace(profiler));
+			context.show("Profile saved to: " + file.getAbsolutePath());
+		} catch (IOException ex) {
+			context.warning("Unable to save profile: " + ex.getMessage());
+		}
+		for (final String line : toTable(profiler)) {
+			context.show(line);
+		}
+	}
+
+	@Override
+	public boolean check(final Context context) throws ExitException {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			context.error("Profile path not specified");
+			throw new ExitException();
+		}
+		final File file = new File(value);
+		if (file.isDirectory()) {
+			context.error("Profile path is a directory: " + file.getAbsolutePath());
+			throw new ExitException();
+		}
+		final File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			context.error("Unable to create folder for profile: " + parent.getAbsolutePath());
+			throw new ExitException();
+		}
+		if (context.load(Profiler.KEY) == null) {
+			context.cache(Profiler.KEY, new Profiler());
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Save timing profile of the run";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Measure duration, processed bytes, file count and heap change of the main phases:\n" +
+				"parameter checks and actions, DSL discovery, compiler calls, XML decoding, writing generated files,\n" +
+				"javac/scalac/csc and jar, downloads and applying SQL migrations.\n" +
+				"Spans are saved as Chrome trace event JSON to the specified path and summarized at the end of the run.\n" +
+				"Example:\n" +
+				"\tprofile=build/dsl-profile.json";
+	}
+}
@@ -0,0 +1,81 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public enum Repository implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "repository";
+	}
+
+	@Override
+	public String getUsage() {
+		return "url";
+	}
+
+	private static final List<String> DEFAULT_REPOSITORIES = Arrays.asList(
+			"https://oss.sonatype.org/content/repositories/releases/",
+			"https://repo1.maven.org/maven2/");
+
+	public static List<String> getRepositories(final Context context) {
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			return DEFAULT_REPOSITORIES;
+		}
+		final List<String> result = new ArrayList<String>();
+		for (final String url : value.split(",")) {
+			final String trimmed = url.trim();
+			if (trimmed.length() > 0) {
+				result.add(trimmed.endsWith("/") ? trimmed : trimmed + "/");
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		final String value = context.get(INSTANCE);
+		if (context.contains(INSTANCE) && (value == null || value.length() == 0)) {
+			context.error("Repository parameter specified, but url not provided.");
+			return false;
+		}
+		for (final String url : getRepositories(context)) {
+			try {
+				new URL(url);
+			} catch (MalformedURLException e) {
+				context.error("Unable to parse provided repository url: " + url + ". " + e.getMessage());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Maven repository used for library download";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "Java and Scala libraries are downloaded from Maven repositories.\n" +
+				"By default Sonatype releases and Maven Central are used.\n" +
+				"Custom repository or local mirror can be specified instead.\n" +
+				"Multiple repositories can be separated with a comma.\n\n" +
+				"Example:\n" +
+				"\trepository=http://nexus.company.domain/repository/maven-public/\n" +
+				"\trepository=file:///var/cache/maven-mirror/";
+	}
+}
@@ -1,10 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 
 import java.io.File;
+import java.util.EnumSet;
+import java.util.Set;
 
-public enum ScalaPath implements CompileParameter {
+public enum ScalaPath implements CompileParameter, LazyCheck {
 	INSTANCE;
 
 	@Override
@@ -12,6 +15,11 @@ public enum ScalaPath implements CompileParameter {
 	@Override
 	public String getUsage() { return "file"; }
 
+	@Override
+	public Set<Resource> prepares(final Context context) {
+		return EnumSet.of(Resource.LIBRARIES);
+	}
+
 	public static Either<String> findCompiler(final Context context) {
 		if (context.contains(INSTANCE)) {
 			final File scalac = new File(context.get(INSTANCE));
@@ -55,10 +55,10 @@ public enum Settings implements CompileParameter, ParameterParser {
 		}
 	}
 
-	private static final String CACHE_NAME = "settings_option_cache";
+	private static final Context.Key<List<String>> CACHE = new Context.Key<List<String>>("settings_option_cache");
 
 	public static List<String> get(final Context context) {
-		return context.load(CACHE_NAME);
+		return context.load(CACHE);
 	}
 
 	public static boolean hasSourceOnly(final Context context) {
@@ -125,7 +125,7 @@ public enum Settings implements CompileParameter, ParameterParser {
 				options.add(name);
 			} else options.add(o.value);
 		}
-		context.cache(CACHE_NAME, options);
+		context.cache(CACHE, options);
 		return true;
 	}
 
@@ -1,12 +1,13 @@
 package com.dslplatform.compiler.client.parameters;
 
 import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
 import com.dslplatform.compiler.client.parameters.build.*;
 
 import java.io.*;
 import java.util.*;
 
-public enum Targets implements CompileParameter, ParameterParser {
+public enum Targets implements CompileParameter, ActionResources, ParameterParser {
 	INSTANCE;
 
 	@Override
@@ -120,7 +121,7 @@ public enum Targets implements CompileParameter, ParameterParser {
 		context.show("\t-java_client -revenj.net=./model/SeverModel.dll");
 	}
 
-	private static final String CACHE_NAME = "target_option_cache";
+	private static final Context.Key<List<Option>> CACHE = new Context.Key<List<Option>>("target_option_cache");
 
 	@Override
 	public Either<Boolean> tryParse(final String name, final String value, final Context context) {
@@ -161,6 +162,32 @@ public enum Targets implements CompileParameter, ParameterParser {
 		return Either.success(false);
 	}
 
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		return isRequested(context)
+				? EnumSet.of(Resource.DSL, Resource.COMPILER)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return isRequested(context)
+				? EnumSet.of(Resource.LIBRARIES)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	private static boolean isRequested(final Context context) {
+		if (context.contains(INSTANCE)) {
+			return true;
+		}
+		for (final Option o : Option.values()) {
+			if (context.contains(o.value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		final List<String> targets = new ArrayList<String>();
@@ -210,19 +237,24 @@ public enum Targets implements CompileParameter, ParameterParser {
 			return false;
 		}
 		if (!Settings.hasSourceOnly(context)) {
+			for (final Option o : options) {
+				if (o.action instanceof DependencyPrefetch) {
+					((DependencyPrefetch) o.action).prefetch(context);
+				}
+			}
 			for (final Option o : options) {
 				if (!o.action.check(context)) {
 					return false;
 				}
 			}
 		}
-		context.cache(CACHE_NAME, options);
+		context.cache(CACHE, options);
 		return true;
 	}
 
 	@Override
 	public void run(final Context context) throws ExitException {
-		final List<Option> targets = context.load(CACHE_NAME);
+		final List<Option> targets = context.load(CACHE);
 		if (targets == null) {
 			return;
 		}
@@ -235,7 +267,7 @@ public enum Targets implements CompileParameter, ParameterParser {
 			final File file = new File(custom, target.name());
 			try {
 				if (file.exists()) {
-					Utils.deletePath(file);
+					Graveyard.clear(file);
 				}
 				return custom;
 			} catch (IOException e) {
@@ -262,15 +294,19 @@ public enum Targets implements CompileParameter, ParameterParser {
 							context.get(Version.INSTANCE),
 							dsls,
 							context.get("library:" + t.value));
+			final Profiler.Span span = Profiler.start(context, "io", "write sources").files(files.size());
 			try {
 				for (final Map.Entry<String, String> kv : files.entrySet()) {
 					final String fullName = t.name() + "/" + kv.getKey() + t.extension;
 					saveFile(context, temp, t.convertToPath, fullName, kv.getValue());
+					span.bytes(kv.getValue().length());
 				}
 			} catch (IOException e) {
 				context.error("Can't create temporary target file. Compilation results can't be saved locally.");
 				context.error(e);
 				throw new ExitException();
+			} finally {
+				span.end();
 			}
 			context.notify("TARGET", t);
 			if (!sourceOnly && t.action != null) {
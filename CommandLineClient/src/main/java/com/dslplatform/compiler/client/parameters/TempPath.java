@@ -19,17 +19,17 @@ public enum TempPath implements CompileParameter {
 		return "path";
 	}
 
-	private static final String CACHE_NAME = "temp_path_cache";
+	static final Context.Key<File> CACHE = new Context.Key<File>("temp_path_cache");
 
 	public static File getTempProjectPath(final Context context) {
-		return context.load(CACHE_NAME);
+		return context.load(CACHE);
 	}
 
 	public static File getTempRootPath(final Context context) throws ExitException {
-		File temp = context.load(CACHE_NAME);
+		File temp = context.load(CACHE);
 		if (temp == null) {
 			if (prepareSystemTempPath(context)) {
-				temp = context.load(CACHE_NAME);
+				temp = context.load(CACHE);
 			}
 			if (temp == null) {
 				context.error("Unable to setup temporary path");
@@ -55,13 +55,14 @@ public enum TempPath implements CompileParameter {
 				context.error("Unable to remove temporary created file: " + temp.getAbsolutePath());
 				return false;
 			}
+			Graveyard.sweepAll();
 			if (path.exists()) {
-				Utils.deletePath(path);
+				Graveyard.clear(path);
 			} else if (!path.mkdirs()) {
 				context.error("Error creating temporary path in: " + path.getAbsolutePath());
 				return false;
 			}
-			context.cache(CACHE_NAME, path);
+			context.cache(CACHE, path);
 			return true;
 		} catch (IOException e) {
 			context.error("Error preparing system temporary path.");
@@ -72,8 +73,8 @@ public enum TempPath implements CompileParameter {
 
 	private static boolean prepareCustomPath(final Context context, final File path) {
 		try {
-			Utils.deletePath(path);
-			context.cache(CACHE_NAME, path);
+			Graveyard.clear(path);
+			context.cache(CACHE, path);
 			return true;
 		} catch (IOException e) {
 			context.error("Error preparing custom temporary path.");
@@ -119,7 +120,7 @@ public enum TempPath implements CompileParameter {
 					} else context.log("Cleaning up TEMP folder due to force option");
 					return prepareCustomPath(context, path);
 				}
-				context.cache(CACHE_NAME, path);
+				context.cache(CACHE, path);
 				return true;
 			}
 		}
@@ -0,0 +1,60 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.CompileParameter;
+import com.dslplatform.compiler.client.Context;
+
+public enum TenantWorkers implements CompileParameter {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "tenant-workers";
+	}
+
+	@Override
+	public String getUsage() {
+		return "count";
+	}
+
+	private static final int DEFAULT_WORKERS = 4;
+
+	public static int getWorkers(final Context context) {
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			return DEFAULT_WORKERS;
+		}
+		return Integer.parseInt(value);
+	}
+
+	@Override
+	public boolean check(final Context context) {
+		final String value = context.get(INSTANCE);
+		if (value != null && value.length() > 0) {
+			try {
+				if (Integer.parseInt(value) < 1) {
+					context.error("Number of tenant workers must be a positive number. Provided: " + value);
+					return false;
+				}
+			} catch (NumberFormatException ex) {
+				context.error("Unable to parse number of tenant workers: " + value);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) {
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Number of tenant databases processed at the same time. Default is 4";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "When tenants option is used, databases are inspected and migrated in parallel.\n" +
+				"This option limits the number of simultaneous database connections.";
+	}
+}
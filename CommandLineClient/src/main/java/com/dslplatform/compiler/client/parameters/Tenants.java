@@ -0,0 +1,399 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.ActionResources.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public enum Tenants implements CompileParameter, ActionResources {
+	INSTANCE;
+
+	@Override
+	public String getAlias() {
+		return "tenants";
+	}
+
+	@Override
+	public String getUsage() {
+		return "file";
+	}
+
+	private static final Context.Key<List<String>> CACHE = new Context.Key<List<String>>("tenant_connections");
+
+	//Context for a single tenant database. Output is prefixed with the database name.
+	//Connection and previous DSL are cached per tenant, everything else is read from the main context
+	private static class TenantContext extends ScopedContext {
+		private volatile String lastError;
+
+		TenantContext(final Context parent, final String label, final String connectionString) {
+			super(parent, label);
+			put(PostgresConnection.INSTANCE, connectionString);
+		}
+
+		@Override
+		public void error(final String value) {
+			lastError = value;
+			super.error(value);
+		}
+	}
+
+	private static class Tenant {
+		final String label;
+		final TenantContext context;
+		DatabaseInfo info;
+		int group;
+		File script;
+		String sql;
+		String status = "pending";
+		String error;
+		long duration;
+
+		Tenant(final Context parent, final String connectionString) {
+			final int questionIndex = connectionString.indexOf('?');
+			this.label = questionIndex == -1 ? connectionString : connectionString.substring(0, questionIndex);
+			this.context = new TenantContext(parent, label, connectionString);
+		}
+
+		boolean failed() {
+			return error != null;
+		}
+
+		void fail(final String message) {
+			status = "failed";
+			error = message != null ? message : "unknown error";
+		}
+	}
+
+	//database operations used for each tenant, replaced in tests
+	interface Database {
+		DatabaseInfo load(Context context) throws ExitException;
+
+		Either<String> migration(Context context, DatabaseInfo info, List<File> dsls) throws ExitException;
+
+		void apply(Context context, String sql) throws ExitException;
+	}
+
+	private static final Database POSTGRES = new Database() {
+		@Override
+		public DatabaseInfo load(final Context context) throws ExitException {
+			return PostgresConnection.getDatabaseDslAndVersion(context);
+		}
+
+		@Override
+		public Either<String> migration(final Context context, final DatabaseInfo info, final List<File> dsls) throws ExitException {
+			return DslCompiler.migration(context, info, dsls);
+		}
+
+		@Override
+		public void apply(final Context context, final String sql) throws ExitException {
+			PostgresConnection.execute(context, sql, null);
+		}
+	};
+
+	private static String fingerprint(final DatabaseInfo info) {
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update((info.dbVersion + "\u0000" + info.compilerVersion + "\u0000").getBytes("UTF-8"));
+			for (final Map.Entry<String, String> kv : info.dsl.entrySet()) {
+				md.update((kv.getKey() + "\u0000" + kv.getValue() + "\u0000").getBytes("UTF-8"));
+			}
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : md.digest()) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException(ex);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static void awaitAll(final List<Future<?>> futures) throws ExitException {
+		for (final Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException ex) {
+				throw new ExitException();
+			} catch (ExecutionException ignore) {
+				//failures are recorded on the tenant
+			}
+		}
+		futures.clear();
+	}
+
+	private static void loadPreviousDsl(
+			final List<Tenant> tenants,
+			final ExecutorService pool,
+			final Database database) throws ExitException {
+		final List<Future<?>> futures = new ArrayList<Future<?>>(tenants.size());
+		for (final Tenant t : tenants) {
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						t.info = database.load(t.context);
+					} catch (ExitException ex) {
+						t.fail(t.context.lastError);
+					} catch (RuntimeException ex) {
+						t.fail(ex.getMessage());
+					}
+				}
+			}));
+		}
+		awaitAll(futures);
+	}
+
+	private static int createMigrations(
+			final Context context,
+			final List<Tenant> tenants,
+			final File path,
+			final boolean apply,
+			final Database database) throws ExitException {
+		final Map<String, List<Tenant>> groups = new LinkedHashMap<String, List<Tenant>>();
+		for (final Tenant t : tenants) {
+			if (t.failed()) continue;
+			final String key = fingerprint(t.info);
+			List<Tenant> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Tenant>();
+				groups.put(key, group);
+			}
+			group.add(t);
+		}
+		context.show("Found " + groups.size() + " distinct database version(s)");
+		final List<File> currentDsl = DslPath.getDslPaths(context);
+		final long now = new Date().getTime();
+		int index = 0;
+		for (final List<Tenant> group : groups.values()) {
+			index++;
+			for (final Tenant t : group) {
+				t.group = index;
+			}
+			context.show("Creating SQL migration for group " + index + " (" + group.size() + " databases) ...");
+			final Either<String> migration = database.migration(context, group.get(0).info, currentDsl);
+			if (!migration.isSuccess()) {
+				for (final Tenant t : group) {
+					t.fail("Error creating SQL migration: " + migration.explainError());
+				}
+				continue;
+			}
+			final String sql = migration.get();
+			if (sql.length() == 0) {
+				for (final Tenant t : group) {
+					t.status = "up to date";
+				}
+				continue;
+			}
+			final File script = new File(path, "postgres-sql-migration-" + now + "-" + index + ".sql");
+			try {
+				Utils.saveFile(context, script, sql);
+			} catch (IOException ex) {
+				for (final Tenant t : group) {
+					t.fail("Error saving migration script to " + script.getAbsolutePath());
+				}
+				continue;
+			}
+			context.show("Migration saved to " + script.getAbsolutePath());
+			final boolean destructive = ApplyMigration.hasDestructive(Migration.extractDescriptions(sql));
+			for (final Tenant t : group) {
+				t.script = script;
+				t.sql = sql;
+				t.status = "migration created";
+				if (apply && destructive && !context.contains(Force.INSTANCE)) {
+					t.fail("Destructive migration detected. Use force option to apply it");
+				}
+			}
+		}
+		return groups.size();
+	}
+
+	private static void applyMigrations(
+			final List<Tenant> tenants,
+			final ExecutorService pool,
+			final Database database) throws ExitException {
+		final List<Future<?>> futures = new ArrayList<Future<?>>(tenants.size());
+		for (final Tenant t : tenants) {
+			if (t.failed() || t.sql == null) continue;
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					final long start = System.currentTimeMillis();
+					try {
+						database.apply(t.context, t.sql);
+						t.status = "applied";
+					} catch (ExitException ex) {
+						t.fail(t.context.lastError);
+					} catch (RuntimeException ex) {
+						t.fail(ex.getMessage());
+					}
+					t.duration = System.currentTimeMillis() - start;
+				}
+			}));
+		}
+		awaitAll(futures);
+	}
+
+	private static void saveReport(final Context context, final File path, final List<Tenant> tenants) {
+		final StringBuilder sb = new StringBuilder("{\n  \"tenants\": [");
+		for (int i = 0; i < tenants.size(); i++) {
+			final Tenant t = tenants.get(i);
+			sb.append(i == 0 ? "\n    {" : ",\n    {");
+			sb.append("\"database\": ");
+			MigrationReport.appendString(sb, t.label);
+			sb.append(", \"group\": ").append(t.group);
+			sb.append(", \"status\": ");
+			MigrationReport.appendString(sb, t.status);
+			sb.append(", \"duration\": ").append(t.duration);
+			sb.append(", \"script\": ");
+			MigrationReport.appendString(sb, t.script != null ? t.script.getAbsolutePath() : null);
+			sb.append(", \"error\": ");
+			MigrationReport.appendString(sb, t.error);
+			sb.append('}');
+		}
+		sb.append("\n  ]\n}\n");
+		final File report = new File(path, "tenants-report-" + new Date().getTime() + ".json");
+		try {
+			Utils.saveFile(context, report, sb.toString());
+			context.show("Tenant report saved to: " + report.getAbsolutePath());
+		} catch (IOException ex) {
+			context.warning("Unable to save tenant report: " + ex.getMessage());
+		}
+	}
+
+	@Override
+	public Set<Resource> consumes(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.DSL, Resource.COMPILER)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public Set<Resource> produces(final Context context) {
+		return context.contains(INSTANCE)
+				? EnumSet.of(Resource.MIGRATION)
+				: EnumSet.noneOf(Resource.class);
+	}
+
+	@Override
+	public boolean check(final Context context) throws ExitException {
+		if (!context.contains(INSTANCE)) {
+			return true;
+		}
+		final String value = context.get(INSTANCE);
+		if (value == null || value.length() == 0) {
+			context.error("Tenants parameter specified, but file with connection strings not provided.");
+			return false;
+		}
+		final File file = new File(value);
+		final Either<String> content = Utils.readFile(file);
+		if (!content.isSuccess()) {
+			context.error("Unable to read tenants file: " + file.getAbsolutePath());
+			context.error(content.whyNot());
+			return false;
+		}
+		final List<String> connections = new ArrayList<String>();
+		for (final String line : content.get().split("\n")) {
+			final String cs = line.trim();
+			if (cs.length() == 0 || cs.startsWith("#")) continue;
+			if (!cs.contains("/")) {
+				context.error("Invalid connection string found in tenants file: " + cs);
+				return false;
+			}
+			connections.add(cs);
+		}
+		if (connections.isEmpty()) {
+			context.error("No connection strings found in tenants file: " + file.getAbsolutePath());
+			return false;
+		}
+		try {
+			Class.forName("org.postgresql.Driver");
+		} catch (ClassNotFoundException ex) {
+			context.error("Error loading Postgres driver.");
+			throw new ExitException();
+		}
+		context.cache(CACHE, connections);
+		return true;
+	}
+
+	@Override
+	public void run(final Context context) throws ExitException {
+		if (!context.contains(INSTANCE)) {
+			return;
+		}
+		final List<String> connections = context.load(CACHE);
+		final File path = Migration.getMigrationPath(context);
+		final int failed = process(context, connections, path, context.contains(ApplyMigration.INSTANCE), POSTGRES);
+		if (failed > 0) {
+			context.error(failed + " tenant database(s) failed");
+			throw new ExitException();
+		}
+	}
+
+	/**
+	 * Create (and apply) migrations for all tenants, show the summary and save the report.
+	 *
+	 * @return number of failed tenants
+	 */
+	static int process(
+			final Context context,
+			final List<String> connections,
+			final File path,
+			final boolean apply,
+			final Database database) throws ExitException {
+		final List<Tenant> tenants = new ArrayList<Tenant>(connections.size());
+		for (final String cs : connections) {
+			tenants.add(new Tenant(context, cs));
+		}
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(TenantWorkers.getWorkers(context), tenants.size()));
+		try {
+			context.show("Loading previous DSL from " + tenants.size() + " tenant databases ...");
+			loadPreviousDsl(tenants, pool, database);
+			createMigrations(context, tenants, path, apply, database);
+			if (apply) {
+				context.show("Applying migrations ...");
+				applyMigrations(tenants, pool, database);
+			}
+		} finally {
+			pool.shutdownNow();
+			for (final Tenant t : tenants) {
+				t.context.close();
+			}
+		}
+		int failed = 0;
+		context.show();
+		context.show("Tenant summary:");
+		for (final Tenant t : tenants) {
+			if (t.failed()) failed++;
+			context.show("  " + t.label + ": " + t.status
+					+ (t.group > 0 ? " (group " + t.group + ")" : "")
+					+ (t.duration > 0 ? " in " + t.duration + "ms" : "")
+					+ (t.error != null ? " - " + t.error : ""));
+		}
+		context.show((tenants.size() - failed) + " of " + tenants.size() + " databases processed successfully");
+		saveReport(context, path, tenants);
+		return failed;
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Create (and apply) migration for multiple Postgres databases listed in a file";
+	}
+
+	@Override
+	public String getDetailedDescription() {
+		return "For multi-tenant deployments with a database per tenant, same migration is usually applied to many databases.\n" +
+				"Tenants file contains one Postgres connection string per line (lines starting with # are ignored).\n" +
+				"Databases are grouped by their previously applied DSL and migration is created once for each group.\n" +
+				"When used together with apply option, migrations are applied in parallel.\n" +
+				"Failure in one database doesn't stop migration of others and summary is shown at the end.\n" +
+				"\n" +
+				"Example:\n" +
+				"\ttenants=tenants.txt apply force";
+	}
+}
@@ -0,0 +1,98 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Utils;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of remote version checks (last modified and ETag per url).
+ * Shared between runs through the user cache folder.
+ */
+final class VersionCache {
+
+	private static final String CACHE_FILE = "versions.properties";
+
+	static class Entry {
+		final long checkedAt;
+		final long lastModified;
+		final String etag;
+
+		Entry(final long checkedAt, final long lastModified, final String etag) {
+			this.checkedAt = checkedAt;
+			this.lastModified = lastModified;
+			this.etag = etag;
+		}
+
+		boolean isFresh(final long ttl) {
+			return System.currentTimeMillis() - checkedAt < ttl;
+		}
+	}
+
+	private static final Map<String, Entry> MEMORY = new ConcurrentHashMap<String, Entry>();
+	private static boolean loaded;
+
+	private static File cacheFile() {
+		return new File(Utils.getUserCachePath(), CACHE_FILE);
+	}
+
+	private static synchronized void load() {
+		if (loaded) return;
+		loaded = true;
+		final File file = cacheFile();
+		if (!file.exists()) return;
+		final Properties properties = new Properties();
+		try {
+			final InputStream is = new FileInputStream(file);
+			try {
+				properties.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (IOException ignore) {
+			return;
+		}
+		for (final String url : properties.stringPropertyNames()) {
+			final String[] parts = properties.getProperty(url).split("\\|", 3);
+			if (parts.length != 3) continue;
+			try {
+				MEMORY.put(url, new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2].length() > 0 ? parts[2] : null));
+			} catch (NumberFormatException ignore) {
+			}
+		}
+	}
+
+	static Entry get(final String url) {
+		load();
+		return MEMORY.get(url);
+	}
+
+	static synchronized void put(final String url, final Entry entry) {
+		load();
+		MEMORY.put(url, entry);
+		final Properties properties = new Properties();
+		for (final Map.Entry<String, Entry> kv : MEMORY.entrySet()) {
+			final Entry e = kv.getValue();
+			properties.setProperty(kv.getKey(), e.checkedAt + "|" + e.lastModified + "|" + (e.etag != null ? e.etag : ""));
+		}
+		final File file = cacheFile();
+		final File tmp = new File(file.getAbsolutePath() + ".tmp");
+		try {
+			final OutputStream os = new FileOutputStream(tmp);
+			try {
+				properties.store(os, "dsl-clc version checks");
+			} finally {
+				os.close();
+			}
+			if (!tmp.renameTo(file)) {
+				if (!file.delete() || !tmp.renameTo(file)) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException ignore) {
+			tmp.delete();
+		}
+	}
+}
@@ -6,7 +6,7 @@ import com.dslplatform.compiler.client.parameters.Download;
 
 import java.io.File;
 
-public class CompileJavaClient implements BuildAction {
+public class CompileJavaClient implements BuildAction, DependencyPrefetch {
 
 	private final String name;
 	private final String zip;
@@ -30,6 +30,11 @@ public class CompileJavaClient implements BuildAction {
 		this.jar = jar;
 	}
 
+	@Override
+	public void prefetch(final Context context) {
+		Download.prefetchJars(context, library, zip, path, maven);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		return Download.checkJars(context, name, zip, library, path, maven);
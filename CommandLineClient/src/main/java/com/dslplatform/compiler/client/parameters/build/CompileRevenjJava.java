@@ -8,7 +8,7 @@ import com.dslplatform.compiler.client.parameters.Namespace;
 import java.io.File;
 import java.util.*;
 
-public class CompileRevenjJava implements BuildAction {
+public class CompileRevenjJava implements BuildAction, DependencyPrefetch {
 
 	private final String id;
 	private final String zip;
@@ -23,6 +23,11 @@ public class CompileRevenjJava implements BuildAction {
 		this.maven = maven;
 	}
 
+	@Override
+	public void prefetch(final Context context) {
+		Download.prefetchJars(context, id, zip, "org/revenj", maven);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		return Download.checkJars(context, "Revenj Java server", zip, id, "org/revenj", maven);
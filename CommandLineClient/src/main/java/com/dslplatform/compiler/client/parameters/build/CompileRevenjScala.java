@@ -13,7 +13,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class CompileRevenjScala implements BuildAction {
+public class CompileRevenjScala implements BuildAction, DependencyPrefetch {
 
 	private final String id;
 	private final String zip;
@@ -28,6 +28,11 @@ public class CompileRevenjScala implements BuildAction {
 		this.maven = maven;
 	}
 
+	@Override
+	public void prefetch(final Context context) {
+		Download.prefetchJars(context, id, zip, "net/revenj", maven);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		return Download.checkJars(context, "Revenj Scala server", zip, id, "net/revenj", maven);
@@ -6,7 +6,7 @@ import com.dslplatform.compiler.client.parameters.Download;
 
 import java.io.File;
 
-public class CompileScalaClient implements BuildAction {
+public class CompileScalaClient implements BuildAction, DependencyPrefetch {
 
 	private final String name;
 	private final String zip;
@@ -27,6 +27,11 @@ public class CompileScalaClient implements BuildAction {
 		this.jar = jar;
 	}
 
+	@Override
+	public void prefetch(final Context context) {
+		Download.prefetchJars(context, library, zip, "com/dslplatform", maven);
+	}
+
 	@Override
 	public boolean check(final Context context) throws ExitException {
 		return Download.checkJars(context, name, zip, library, "com/dslplatform", maven);
@@ -0,0 +1,11 @@
+package com.dslplatform.compiler.client.parameters.build;
+
+import com.dslplatform.compiler.client.Context;
+
+/**
+ * Build actions which can start downloading their dependencies
+ * before the check phase needs them.
+ */
+public interface DependencyPrefetch {
+	void prefetch(final Context context);
+}
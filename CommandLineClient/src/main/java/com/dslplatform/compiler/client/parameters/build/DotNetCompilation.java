@@ -2,6 +2,8 @@ package com.dslplatform.compiler.client.parameters.build;
 
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ProcessExecutor;
+import com.dslplatform.compiler.client.Profiler;
 import com.dslplatform.compiler.client.Utils;
 import com.dslplatform.compiler.client.parameters.DotNet;
 
@@ -63,7 +65,11 @@ class DotNetCompilation {
 		arguments.add(escapeChar + "warn:0");
 		arguments.add(escapeChar + "recurse:*.cs");
 		context.notify("CSC", arguments);
-		final Either<Utils.CommandResult> execCompile = Utils.runCommand(context, compiler, source, arguments);
+		final ProcessExecutor.LineCollector errors = new ProcessExecutor.LineCollector("error", false, ProcessExecutor.DEFAULT_CAPTURE_LIMIT);
+		final Profiler.Span span = Profiler.start(context, "build", "csc");
+		final Either<Utils.CommandResult> execCompile =
+				Utils.runCommand(context, compiler, source, arguments, errors, ProcessExecutor.DEFAULT_CAPTURE_LIMIT);
+		span.end();
 		if (!execCompile.isSuccess()) {
 			return Either.fail(execCompile.whyNot());
 		}
@@ -71,17 +77,8 @@ class DotNetCompilation {
 		if (compilation.error.length() > 0) {
 			return Either.fail(compilation.error);
 		}
-		if (compilation.output.contains("error")) {
-			final StringBuilder sb = new StringBuilder();
-			for (final String e : compilation.output.split("\n")) {
-				if (e.contains("error")) {
-					sb.append(e).append("\n");
-				}
-			}
-			if (sb.length() > 0) {
-				return Either.fail(sb.toString());
-			}
-			return Either.fail(compilation.output);
+		if (!errors.isEmpty()) {
+			return Either.fail(errors.toString());
 		}
 		return Either.success(compilation.output);
 	}
@@ -2,6 +2,8 @@ package com.dslplatform.compiler.client.parameters.build;
 
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ProcessExecutor;
+import com.dslplatform.compiler.client.Profiler;
 import com.dslplatform.compiler.client.Utils;
 import com.dslplatform.compiler.client.parameters.JavaPath;
 
@@ -71,7 +73,11 @@ class JavaCompilation {
 			return Either.fail("Unable to find Java generated sources in: " + source.getAbsolutePath());
 		javacArguments.addAll(sources);
 		context.show("Running javac for " + output.getName() + " ...");
-		final Either<Utils.CommandResult> execCompile = Utils.runCommand(context, javac, source, javacArguments);
+		final ProcessExecutor.LineCollector errors = new ProcessExecutor.LineCollector("error", false, ProcessExecutor.DEFAULT_CAPTURE_LIMIT);
+		final Profiler.Span span = Profiler.start(context, "build", "javac").files(sources.size());
+		final Either<Utils.CommandResult> execCompile =
+				Utils.runCommand(context, javac, source, javacArguments, errors, ProcessExecutor.DEFAULT_CAPTURE_LIMIT);
+		span.end();
 		if (!execCompile.isSuccess()) {
 			return Either.fail(execCompile.whyNot());
 		}
@@ -83,17 +89,8 @@ class JavaCompilation {
 				return Either.fail("Non-zero exit code: " + compilation.exitCode);
 			}
 		}
-		if (compilation.output.contains("error")) {
-			final StringBuilder sb = new StringBuilder();
-			for (final String e : compilation.output.split("\n")) {
-				if (e.contains("error")) {
-					sb.append(e).append("\n");
-				}
-			}
-			if (sb.length() > 0) {
-				return Either.fail(sb.toString());
-			}
-			return Either.fail(compilation.output);
+		if (!errors.isEmpty()) {
+			return Either.fail(errors.toString());
 		}
 
 		final Either<Utils.CommandResult> tryArchive = JavaPath.makeArchive(context, classOut, output, services);
@@ -2,6 +2,8 @@ package com.dslplatform.compiler.client.parameters.build;
 
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ProcessExecutor;
+import com.dslplatform.compiler.client.Profiler;
 import com.dslplatform.compiler.client.Utils;
 import com.dslplatform.compiler.client.parameters.JavaPath;
 import com.dslplatform.compiler.client.parameters.ScalaPath;
@@ -76,7 +78,11 @@ class ScalaCompilation {
 		}
 		scalacArguments.addAll(sources);
 		context.show("Running scalac for " + output.getName());
-		final Either<Utils.CommandResult> execCompile = Utils.runCommand(context, scalac, source, scalacArguments);
+		final ProcessExecutor.LineCollector errors = new ProcessExecutor.LineCollector("error", false, ProcessExecutor.DEFAULT_CAPTURE_LIMIT);
+		final Profiler.Span span = Profiler.start(context, "build", "scalac").files(sources.size());
+		final Either<Utils.CommandResult> execCompile =
+				Utils.runCommand(context, scalac, source, scalacArguments, errors, ProcessExecutor.DEFAULT_CAPTURE_LIMIT);
+		span.end();
 		if (!execCompile.isSuccess()) {
 			return Either.fail(execCompile.whyNot());
 		}
@@ -84,17 +90,8 @@ class ScalaCompilation {
 		if (compilation.error.length() > 0) {
 			return Either.fail(compilation.error);
 		}
-		if (compilation.output.contains("error")) {
-			final StringBuilder sb = new StringBuilder();
-			for (final String e : compilation.output.split("\n")) {
-				if (e.contains("error")) {
-					sb.append(e).append("\n");
-				}
-			}
-			if (sb.length() > 0) {
-				return Either.fail(sb.toString());
-			}
-			return Either.fail(compilation.output);
+		if (!errors.isEmpty()) {
+			return Either.fail(errors.toString());
 		}
 		final String compilationOutput = compilation.output;
 		final Either<Utils.CommandResult> tryArchive = JavaPath.makeArchive(context, classOut, output, services);
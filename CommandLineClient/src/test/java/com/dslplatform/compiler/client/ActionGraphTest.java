@@ -0,0 +1,144 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.ActionResources.Resource;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ActionGraphTest {
+
+	private static class OutputContext extends ContextMock {
+		final List<String> output = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void show(final String... values) {
+			Collections.addAll(output, values);
+		}
+
+		@Override
+		public void error(final String value) {
+			super.error(value);
+			output.add(value);
+		}
+	}
+
+	private static abstract class Action implements CompileParameter, ActionResources {
+		private final String name;
+		private final Set<Resource> consumes;
+		private final Set<Resource> produces;
+
+		Action(final String name, final Set<Resource> consumes, final Set<Resource> produces) {
+			this.name = name;
+			this.consumes = consumes;
+			this.produces = produces;
+		}
+
+		public String getAlias() { return name; }
+
+		public String getUsage() { return null; }
+
+		public boolean check(final Context context) { return true; }
+
+		public String getShortDescription() { return null; }
+
+		public String getDetailedDescription() { return null; }
+
+		public Set<Resource> consumes(final Context context) { return consumes; }
+
+		public Set<Resource> produces(final Context context) { return produces; }
+	}
+
+	private static Action show(final String name, final Set<Resource> consumes, final Set<Resource> produces) {
+		return new Action(name, consumes, produces) {
+			public void run(final Context context) {
+				context.show(name);
+			}
+		};
+	}
+
+	private static final Set<Resource> NONE = EnumSet.noneOf(Resource.class);
+
+	@Test
+	public void dependenciesFromResources() {
+		final Action targets = show("targets", EnumSet.of(Resource.DSL, Resource.COMPILER), EnumSet.of(Resource.LIBRARIES));
+		final Action migration = show("migration", EnumSet.of(Resource.DSL, Resource.PREVIOUS_DSL), EnumSet.of(Resource.MIGRATION));
+		final Action apply = show("apply", EnumSet.of(Resource.MIGRATION), EnumSet.of(Resource.PREVIOUS_DSL));
+		final CompileParameter flag = new Action("flag", NONE, NONE) {
+			public void run(final Context context) {
+			}
+		};
+		final List<List<CompileParameter>> deps = ActionGraph.dependencies(
+				new ContextMock(),
+				Arrays.<CompileParameter>asList(targets, migration, apply));
+		assertEquals(0, deps.get(0).size());
+		assertEquals(0, deps.get(1).size());
+		assertEquals(Collections.<CompileParameter>singletonList(migration), deps.get(2));
+		final CompileParameter undeclared = new CompileParameter() {
+			public String getAlias() { return "undeclared"; }
+			public String getUsage() { return null; }
+			public boolean check(final Context context) { return true; }
+			public void run(final Context context) { }
+			public String getShortDescription() { return null; }
+			public String getDetailedDescription() { return null; }
+		};
+		final List<List<CompileParameter>> withUndeclared = ActionGraph.dependencies(
+				new ContextMock(),
+				Arrays.asList(targets, undeclared, flag, migration));
+		assertEquals(Collections.<CompileParameter>singletonList(targets), withUndeclared.get(1));
+		assertEquals(Collections.singletonList(undeclared), withUndeclared.get(2));
+		assertEquals(Collections.singletonList(undeclared), withUndeclared.get(3));
+	}
+
+	@Test
+	public void independentActionsRunConcurrentlyWithOrderedOutput() throws Exception {
+		final CountDownLatch second = new CountDownLatch(1);
+		final Action slow = new Action("slow", EnumSet.of(Resource.DSL), NONE) {
+			public void run(final Context context) throws ExitException {
+				context.show("slow started");
+				try {
+					if (!second.await(10, TimeUnit.SECONDS)) {
+						context.error("actions were not run concurrently");
+						throw new ExitException();
+					}
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				context.show("slow finished");
+			}
+		};
+		final Action fast = new Action("fast", EnumSet.of(Resource.DSL), NONE) {
+			public void run(final Context context) {
+				context.show("fast");
+				second.countDown();
+			}
+		};
+		final OutputContext context = new OutputContext();
+		ActionGraph.run(context, Arrays.<CompileParameter>asList(slow, fast, show("last", NONE, NONE)));
+		assertEquals(Arrays.asList("slow started", "slow finished", "fast", "last"), context.output);
+	}
+
+	@Test
+	public void failureStopsDependentActions() {
+		final Action failing = new Action("failing", NONE, EnumSet.of(Resource.MIGRATION)) {
+			public void run(final Context context) throws ExitException {
+				context.error("migration failed");
+				throw new ExitException();
+			}
+		};
+		final OutputContext context = new OutputContext();
+		try {
+			ActionGraph.run(context, Arrays.<CompileParameter>asList(
+					show("first", NONE, NONE),
+					failing,
+					show("apply", EnumSet.of(Resource.MIGRATION), NONE)));
+			fail("Expecting exit exception");
+		} catch (ExitException ignore) {
+		}
+		assertTrue(context.output.contains("migration failed"));
+		assertFalse(context.output.contains("apply"));
+	}
+}
@@ -0,0 +1,93 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ArtifactStoreTest {
+
+	private File root;
+
+	@Before
+	public void setup() {
+		root = new File(System.getProperty("java.io.tmpdir"), "store-test-" + UUID.randomUUID());
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	@Test
+	public void recordedFolderCanBeRestored() throws IOException {
+		final ContextMock context = new ContextMock();
+		final File deps = new File(root, "project1/revenj_java");
+		assertTrue(new File(deps, "lib").mkdirs());
+		Utils.saveFile(context, new File(deps, "revenj-core.jar"), "core");
+		Utils.saveFile(context, new File(deps, "lib/postgres.jar"), "driver");
+		final String key = "test-" + UUID.randomUUID();
+		ArtifactStore.record(context, key, deps);
+		final File other = new File(root, "project2/revenj_java");
+		assertTrue(ArtifactStore.restore(context, key, other));
+		assertEquals("core", Utils.readFile(new File(other, "revenj-core.jar")).get());
+		assertEquals("driver", Utils.readFile(new File(other, "lib/postgres.jar")).get());
+		assertFalse(ArtifactStore.restore(context, "unknown-" + UUID.randomUUID(), new File(root, "project3")));
+	}
+
+	@Test
+	public void corruptedFileIsNotRestored() throws IOException {
+		final ContextMock context = new ContextMock();
+		final File deps = new File(root, "project1/deps");
+		assertTrue(deps.mkdirs());
+		final String unique = UUID.randomUUID().toString();
+		final File jar = new File(deps, "library.jar");
+		Utils.saveFile(context, jar, unique);
+		final String hash = ArtifactStore.sha256(jar);
+		final String key = "test-" + unique;
+		ArtifactStore.record(context, key, deps);
+		//modify stored file in place, bypassing the store
+		final File blob = new File(Utils.getUserCachePath(), "store/sha256/" + hash.substring(0, 2) + "/" + hash);
+		assertTrue(blob.isFile());
+		final FileOutputStream fos = new FileOutputStream(blob, true);
+		fos.write('x');
+		fos.close();
+		final File other = new File(root, "project2/deps");
+		assertFalse(ArtifactStore.restore(context, key, other));
+		assertFalse(blob.exists());
+		assertTrue(context.hasWarning);
+	}
+
+	@Test
+	public void corruptedFileIsReplacedWhenRecorded() throws IOException {
+		final ContextMock context = new ContextMock();
+		final String unique = UUID.randomUUID().toString();
+		final File deps = new File(root, "project1/deps");
+		assertTrue(deps.mkdirs());
+		final File jar = new File(deps, "library.jar");
+		Utils.saveFile(context, jar, unique);
+		final String hash = ArtifactStore.sha256(jar);
+		ArtifactStore.record(context, "test-" + unique, deps);
+		//replace stored file with a truncated one
+		final File blob = new File(Utils.getUserCachePath(), "store/sha256/" + hash.substring(0, 2) + "/" + hash);
+		assertTrue(blob.delete());
+		Utils.saveFile(context, blob, unique.substring(0, 10));
+		final File download = new File(root, "project2/deps");
+		assertTrue(download.mkdirs());
+		final File downloaded = new File(download, "library.jar");
+		Utils.saveFile(context, downloaded, unique);
+		ArtifactStore.record(context, "test-" + unique, download);
+		assertEquals(unique, Utils.readFile(downloaded).get());
+		assertEquals(hash, ArtifactStore.sha256(blob));
+		final File other = new File(root, "project3/deps");
+		assertTrue(ArtifactStore.restore(context, "test-" + unique, other));
+		assertEquals(unique, Utils.readFile(new File(other, "library.jar")).get());
+	}
+}
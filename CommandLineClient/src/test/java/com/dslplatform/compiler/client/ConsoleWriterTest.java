@@ -0,0 +1,87 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.parameters.LogOutput;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConsoleWriterTest {
+
+	@Test
+	public void writesInOrderWithSmallBuffer() throws Exception {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final ConsoleWriter writer = new ConsoleWriter(new PrintStream(os, false, "UTF-8"), 4);
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			writer.write(i + "\n");
+			expected.append(i).append('\n');
+		}
+		writer.flush();
+		assertEquals(expected.toString(), os.toString("UTF-8"));
+		writer.close();
+	}
+
+	@Test
+	public void concurrentWritersKeepMessagesIntact() throws Exception {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final ConsoleWriter writer = new ConsoleWriter(new PrintStream(os, false, "UTF-8"), 16);
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int id = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 500; i++) {
+						writer.write(id + ":" + i + "\n");
+					}
+				}
+			}));
+		}
+		for (final Thread t : threads) t.start();
+		for (final Thread t : threads) t.join();
+		writer.close();
+		final String[] lines = os.toString("UTF-8").split("\n");
+		assertEquals(2000, lines.length);
+		final int[] next = new int[4];
+		for (final String line : lines) {
+			final String[] parts = line.split(":");
+			final int id = Integer.parseInt(parts[0]);
+			assertEquals(next[id]++, Integer.parseInt(parts[1]));
+		}
+	}
+
+	@Test
+	public void writeAfterCloseIsNotLost() throws Exception {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final ConsoleWriter writer = new ConsoleWriter(new PrintStream(os, false, "UTF-8"), 4);
+		writer.write("a");
+		writer.close();
+		writer.write("b");
+		assertEquals("ab", os.toString("UTF-8"));
+	}
+
+	@Test
+	public void contextWithLogWritesEverythingOnClose() throws Exception {
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		final Context context = new Context(new PrintStream(os, false, "UTF-8"));
+		context.put(LogOutput.INSTANCE, null);
+		for (int i = 0; i < 100; i++) {
+			context.log("log " + i);
+			context.show("show " + i);
+		}
+		context.close();
+		final String output = os.toString("UTF-8");
+		int position = 0;
+		for (int i = 0; i < 100; i++) {
+			position = output.indexOf("log " + i, position);
+			assertTrue(position >= 0);
+			position = output.indexOf("show " + i, position);
+			assertTrue(position >= 0);
+		}
+	}
+}
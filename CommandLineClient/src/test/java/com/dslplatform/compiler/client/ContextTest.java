@@ -0,0 +1,113 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.parameters.Force;
+import com.dslplatform.compiler.client.parameters.LogOutput;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ContextTest {
+
+	private static final Context.Key<List<String>> NAMES = new Context.Key<List<String>>("names");
+	private static final Context.Key<Object> SHARED = new Context.Key<Object>("shared");
+	private static final Context.Key<String> CONNECTION = new Context.Key<String>("connection");
+
+	@Test
+	public void typedKeysShareCacheWithNames() {
+		final Context context = new ContextMock();
+		final List<String> names = new ArrayList<String>();
+		context.cache(NAMES, names);
+		assertSame(names, context.load(NAMES));
+		assertSame(names, context.load("names"));
+		context.cache(NAMES, null);
+		assertNull(context.load(NAMES));
+	}
+
+	@Test
+	public void parametersWithoutValue() {
+		final Context context = new ContextMock();
+		context.put(Force.INSTANCE, null);
+		context.put("custom", null);
+		assertTrue(context.contains(Force.INSTANCE));
+		assertNull(context.get(Force.INSTANCE));
+		assertTrue(context.contains("custom"));
+		assertNull(context.get("custom"));
+		context.put("custom", "");
+		assertEquals("", context.get("custom"));
+		assertFalse(context.contains("missing"));
+	}
+
+	@Test
+	public void concurrentCacheIfAbsentKeepsFirst() throws Exception {
+		final Context context = new ContextMock();
+		final CountDownLatch ready = new CountDownLatch(1);
+		final List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(ProcessExecutor.executor().submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					ready.await();
+					return context.cacheIfAbsent(SHARED, new Object());
+				}
+			}));
+		}
+		ready.countDown();
+		final Object first = results.get(0).get();
+		for (final Future<Object> f : results) {
+			assertSame(first, f.get());
+		}
+		assertSame(first, context.load(SHARED));
+	}
+
+	@Test
+	public void scopedContextIsolatesCacheAndParameters() {
+		final ContextMock parent = new ContextMock();
+		parent.put("shared", "parent");
+		parent.put("override", "parent");
+		parent.cache(CONNECTION, "parent connection");
+		final ScopedContext scope = new ScopedContext(parent, "tenant");
+		scope.put("override", "scope");
+		assertEquals("parent", scope.get("shared"));
+		assertEquals("scope", scope.get("override"));
+		assertEquals("parent", parent.get("override"));
+		assertNull(scope.load(CONNECTION));
+		scope.cache(CONNECTION, "scope connection");
+		assertEquals("parent connection", parent.load(CONNECTION));
+		scope.error("failed");
+		assertEquals("[tenant] failed", parent.error);
+		assertFalse(scope.canInteract());
+	}
+
+	@Test
+	public void scopedContextUsesParentLogSetting() {
+		final List<String> errors = new ArrayList<String>();
+		final ContextMock parent = new ContextMock() {
+			@Override
+			public void error(final String value) {
+				errors.add(value);
+			}
+		};
+		parent.put(LogOutput.INSTANCE, null);
+		final ScopedContext scope = new ScopedContext(parent, "tenant");
+		scope.error(new IllegalStateException("failed"));
+		assertEquals(2, errors.size());
+		assertEquals("[tenant] failed", errors.get(0));
+		assertTrue(errors.get(1).contains("IllegalStateException"));
+	}
+
+	@Test
+	public void scopedContextSharesProfile() {
+		final Context parent = new ContextMock();
+		final Profiler profiler = new Profiler();
+		parent.cache(Profiler.KEY, profiler);
+		final ScopedContext scope = new ScopedContext(parent, "tenant");
+		Profiler.start(scope, "sql", "sql apply").end();
+		assertEquals(1, profiler.getSpans().size());
+	}
+}
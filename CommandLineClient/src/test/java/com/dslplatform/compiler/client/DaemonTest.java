@@ -0,0 +1,223 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.parameters.LogOutput;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class DaemonTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final CompileParameter HELLO = new CompileParameter() {
+		public String getAlias() { return "hello"; }
+
+		public String getUsage() { return "name"; }
+
+		public boolean check(final Context context) {
+			if (context.contains(this) && "nobody".equals(context.get(this))) {
+				context.error("Nobody to greet");
+				return false;
+			}
+			return true;
+		}
+
+		public void run(final Context context) {
+			if (context.contains(this)) {
+				context.show("Hello " + context.get(this));
+				context.log("greeted");
+			}
+		}
+
+		public String getShortDescription() { return "Greet"; }
+
+		public String getDetailedDescription() { return null; }
+	};
+
+	private static final CountDownLatch STARTED = new CountDownLatch(1);
+	private static final CountDownLatch RELEASED = new CountDownLatch(1);
+
+	private static final CompileParameter WAIT = new CompileParameter() {
+		public String getAlias() { return "wait"; }
+
+		public String getUsage() { return null; }
+
+		public boolean check(final Context context) { return true; }
+
+		public void run(final Context context) throws ExitException {
+			if (context.contains(this)) {
+				STARTED.countDown();
+				try {
+					RELEASED.await();
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				context.show("Done waiting");
+			}
+		}
+
+		public String getShortDescription() { return "Wait for release"; }
+
+		public String getDetailedDescription() { return null; }
+	};
+
+	private static class Output {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final PrintStream stream = new PrintStream(bytes);
+
+		@Override
+		public String toString() {
+			return new String(bytes.toByteArray());
+		}
+	}
+
+	private Thread start(final DaemonServer daemon) {
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				daemon.serve(60000);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	@Test
+	public void runsAreForwardedToDaemon() throws Exception {
+		final File portFile = new File(folder.getRoot(), "daemon.port");
+		final List<CompileParameter> parameters = Arrays.asList(HELLO, LogOutput.INSTANCE);
+		final DaemonServer daemon = new DaemonServer(new ContextMock(), parameters, "/project", portFile);
+		final Thread thread = start(daemon);
+		try {
+			assertTrue(DaemonClient.isRunning(portFile));
+
+			final Output first = new Output();
+			assertEquals(Integer.valueOf(0), DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, first.stream));
+			assertEquals("Hello world", first.toString().trim());
+
+			final Output withLog = new Output();
+			assertEquals(Integer.valueOf(0), DaemonClient.run(portFile, "/project", new String[]{"hello=again", "log"}, false, withLog.stream));
+			assertTrue(withLog.toString().contains("Hello again"));
+			assertTrue(withLog.toString().contains("greeted"));
+
+			final Output failed = new Output();
+			assertEquals(Integer.valueOf(1), DaemonClient.run(portFile, "/project", new String[]{"hello=nobody"}, false, failed.stream));
+			assertEquals("Nobody to greet", failed.toString().trim());
+
+			final Output unknown = new Output();
+			assertEquals(Integer.valueOf(2), DaemonClient.run(portFile, "/project", new String[]{"goodbye"}, false, unknown.stream));
+			assertTrue(unknown.toString().contains("Unknown parameter: goodbye"));
+		} finally {
+			assertTrue(DaemonClient.stop(portFile));
+			thread.join(10000);
+		}
+		assertFalse(thread.isAlive());
+		daemon.close();
+		assertFalse(portFile.exists());
+		assertNull(DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, new Output().stream));
+	}
+
+	@Test
+	public void otherFolderIsProcessedLocally() throws Exception {
+		final File portFile = new File(folder.getRoot(), "daemon.port");
+		final DaemonServer daemon = new DaemonServer(new ContextMock(), Arrays.asList(HELLO), "/project", portFile);
+		final Thread thread = start(daemon);
+		try {
+			final Output output = new Output();
+			assertNull(DaemonClient.run(portFile, "/other", new String[]{"hello=world"}, false, output.stream));
+			assertEquals("", output.toString());
+			assertTrue(DaemonClient.isRunning(portFile));
+		} finally {
+			DaemonClient.stop(portFile);
+			thread.join(10000);
+			daemon.close();
+		}
+	}
+
+	@Test
+	public void differentSettingsAreProcessedLocally() throws Exception {
+		final File portFile = new File(folder.getRoot(), "daemon.port");
+		final DaemonServer daemon = new DaemonServer(new ContextMock(), Arrays.asList(HELLO), "/project", portFile);
+		final Thread thread = start(daemon);
+		try {
+			System.setProperty("dsl-platform.daemon-test", "changed");
+			try {
+				final Output output = new Output();
+				assertNull(DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, output.stream));
+				assertEquals("", output.toString());
+			} finally {
+				System.clearProperty("dsl-platform.daemon-test");
+			}
+			assertTrue(DaemonClient.isRunning(portFile));
+			final Output output = new Output();
+			assertEquals(Integer.valueOf(0), DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, output.stream));
+			assertEquals("Hello world", output.toString().trim());
+		} finally {
+			DaemonClient.stop(portFile);
+			thread.join(10000);
+			daemon.close();
+		}
+	}
+
+	@Test
+	public void busyDaemonLeavesRunToClient() throws Exception {
+		final File portFile = new File(folder.getRoot(), "daemon.port");
+		final DaemonServer daemon = new DaemonServer(new ContextMock(), Arrays.asList(HELLO, WAIT), "/project", portFile);
+		final Thread thread = start(daemon);
+		final Output waiting = new Output();
+		final Future<Integer> first = Executors.newSingleThreadExecutor().submit(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return DaemonClient.run(portFile, "/project", new String[]{"wait"}, false, waiting.stream);
+			}
+		});
+		try {
+			assertTrue(STARTED.await(10, TimeUnit.SECONDS));
+			final Output output = new Output();
+			assertNull(DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, output.stream));
+			assertEquals("", output.toString());
+		} finally {
+			RELEASED.countDown();
+		}
+		try {
+			assertEquals(Integer.valueOf(0), first.get(10, TimeUnit.SECONDS));
+			assertEquals("Done waiting", waiting.toString().trim());
+			final Output output = new Output();
+			assertEquals(Integer.valueOf(0), DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, output.stream));
+			assertEquals("Hello world", output.toString().trim());
+		} finally {
+			DaemonClient.stop(portFile);
+			thread.join(10000);
+			daemon.close();
+		}
+	}
+
+	@Test
+	public void staleDaemonFileIsRemoved() throws Exception {
+		final File portFile = new File(folder.getRoot(), "daemon.port");
+		final DaemonServer daemon = new DaemonServer(new ContextMock(), Arrays.asList(HELLO), "/project", portFile);
+		final String content = Utils.readFile(portFile).get();
+		daemon.close();
+		Utils.saveFile(new ContextMock(), portFile, content);
+		assertNull(DaemonClient.run(portFile, "/project", new String[]{"hello=world"}, false, new Output().stream));
+		assertFalse(portFile.exists());
+	}
+
+	@Test
+	public void daemonCommands() {
+		assertEquals("start", DaemonClient.command(new String[]{"-daemon"}));
+		assertEquals(DaemonClient.STOP, DaemonClient.command(new String[]{"daemon=stop"}));
+		assertNull(DaemonClient.command(new String[]{"daemon", "parse"}));
+		assertNull(DaemonClient.command(new String[]{"parse"}));
+	}
+}
@@ -0,0 +1,86 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class FileSyncTest {
+
+	private File root;
+	private File source;
+	private File target;
+
+	@Before
+	public void setup() {
+		root = new File(System.getProperty("java.io.tmpdir"), "filesync-test-" + UUID.randomUUID());
+		source = new File(root, "source");
+		target = new File(root, "target");
+		assertTrue(new File(source, "nested/deep").mkdirs());
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	private static void write(final File file, final byte[] content) throws IOException {
+		final FileOutputStream fos = new FileOutputStream(file);
+		fos.write(content);
+		fos.close();
+	}
+
+	private static byte[] read(final File file) throws IOException {
+		final byte[] content = new byte[(int) file.length()];
+		final FileInputStream fis = new FileInputStream(file);
+		assertEquals(content.length, fis.read(content));
+		fis.close();
+		return content;
+	}
+
+	@Test
+	public void binaryContentIsPreserved() throws IOException {
+		final byte[] binary = new byte[]{(byte) 0xff, (byte) 0xfe, 0, (byte) 0xc3, 0x28, '\r', '\n'};
+		write(new File(source, "nested/deep/data.bin"), binary);
+		final Either<FileSync.Result> result = FileSync.copyFolder(new ContextMock(), source, target, true);
+		assertTrue(result.isSuccess());
+		assertArrayEquals(binary, read(new File(target, "nested/deep/data.bin")));
+	}
+
+	@Test
+	public void matchingFilesAreSkippedAndStaleRemoved() throws IOException {
+		write(new File(source, "a.ts"), "export class A {}".getBytes("UTF-8"));
+		write(new File(source, "nested/b.ts"), "export class B {}".getBytes("UTF-8"));
+		assertTrue(new File(target, "old").mkdirs());
+		write(new File(target, "old/stale.ts"), "stale".getBytes("UTF-8"));
+		write(new File(target, "a.ts"), "export class A {}".getBytes("UTF-8"));
+		final Either<FileSync.Result> result = FileSync.copyFolder(new ContextMock(), source, target, true);
+		assertTrue(result.isSuccess());
+		assertEquals(1, result.get().skipped);
+		assertEquals(1, result.get().copied + result.get().linked);
+		assertEquals(1, result.get().deleted);
+		assertFalse(new File(target, "old").exists());
+		assertEquals("export class B {}", new String(read(new File(target, "nested/b.ts")), "UTF-8"));
+		final Either<FileSync.Result> again = FileSync.copyFolder(new ContextMock(), source, target, true);
+		assertEquals(2, again.get().skipped);
+	}
+
+	@Test
+	public void folderIsReplacedWithFile() throws IOException {
+		write(new File(source, "model"), "export class Model {}".getBytes("UTF-8"));
+		assertTrue(new File(target, "model/nested").mkdirs());
+		write(new File(target, "model/nested/old.ts"), "old".getBytes("UTF-8"));
+		final Either<FileSync.Result> result = FileSync.copyFolder(new ContextMock(), source, target, true);
+		assertTrue(result.isSuccess());
+		assertTrue(new File(target, "model").isFile());
+		assertEquals("export class Model {}", new String(read(new File(target, "model")), "UTF-8"));
+	}
+}
@@ -0,0 +1,57 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class GraveyardTest {
+
+	@Test
+	public void folderIsEmptiedAndGraveyardRemoved() throws IOException {
+		final File root = new File(System.getProperty("java.io.tmpdir"), "graveyard-test-" + UUID.randomUUID());
+		final File folder = new File(root, "output");
+		final File nested = new File(folder, "a/b/c");
+		assertTrue(nested.mkdirs());
+		Utils.saveFile(new ContextMock(), new File(nested, "file.txt"), "content");
+		Utils.saveFile(new ContextMock(), new File(folder, "top.txt"), "content");
+		Graveyard.clear(folder);
+		assertTrue(folder.isDirectory());
+		assertEquals(0, folder.list().length);
+		assertFalse(new File(root, Graveyard.FOLDER_NAME).exists());
+		assertTrue(Graveyard.await(10000));
+		assertFalse(new File(root, Graveyard.FOLDER_NAME).exists());
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	@Test
+	public void emptyFolderIsIgnored() throws IOException {
+		final File root = new File(System.getProperty("java.io.tmpdir"), "graveyard-test-" + UUID.randomUUID());
+		final File folder = new File(root, "output");
+		assertTrue(folder.mkdirs());
+		Graveyard.clear(folder);
+		assertFalse(new File(root, Graveyard.FOLDER_NAME).exists());
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	@Test
+	public void leftoversFromPreviousRunsAreRemoved() throws IOException {
+		final File leftover = new File(Graveyard.locations()[0], "output-" + UUID.randomUUID());
+		assertTrue(new File(leftover, "a").mkdirs());
+		Utils.saveFile(new ContextMock(), new File(leftover, "a/file.txt"), "content");
+		final File root = new File(System.getProperty("java.io.tmpdir"), "graveyard-test-" + UUID.randomUUID());
+		final File folder = new File(root, "output");
+		assertTrue(folder.mkdirs());
+		Utils.saveFile(new ContextMock(), new File(folder, "top.txt"), "content");
+		Graveyard.clear(folder);
+		assertTrue(Graveyard.await(10000));
+		assertFalse(leftover.exists());
+		Utils.deletePath(root);
+		root.delete();
+	}
+}
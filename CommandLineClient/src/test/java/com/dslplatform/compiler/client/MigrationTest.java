@@ -1,6 +1,7 @@
 package com.dslplatform.compiler.client;
 
 import com.dslplatform.compiler.client.parameters.ApplyMigration;
+import com.dslplatform.compiler.client.parameters.Migration;
 import com.dslplatform.compiler.client.parameters.PostgresConnection;
 import org.junit.Test;
 
@@ -50,7 +51,7 @@ public class MigrationTest {
 		@Override
 		public void run(Context context) throws ExitException {
 			inContext = context.contains(this);
-			context.cache("postgres_migration_file", file);
+			context.cache(Migration.POSTGRES_MIGRATION_FILE, file);
 		}
 	}
 
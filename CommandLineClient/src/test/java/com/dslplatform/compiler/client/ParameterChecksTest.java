@@ -0,0 +1,182 @@
+package com.dslplatform.compiler.client;
+
+import com.dslplatform.compiler.client.ActionResources.Resource;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ParameterChecksTest {
+
+	private static class Parameter implements CompileParameter {
+		private final String name;
+		final List<String> checked;
+
+		Parameter(final String name, final List<String> checked) {
+			this.name = name;
+			this.checked = checked;
+		}
+
+		public String getAlias() { return name; }
+
+		public String getUsage() { return null; }
+
+		public boolean check(final Context context) throws ExitException {
+			checked.add(name);
+			return true;
+		}
+
+		public void run(final Context context) { }
+
+		public String getShortDescription() { return null; }
+
+		public String getDetailedDescription() { return null; }
+	}
+
+	private static class Tool extends Parameter implements LazyCheck {
+		private final Set<Resource> prepares;
+
+		Tool(final String name, final List<String> checked, final Resource prepares) {
+			super(name, checked);
+			this.prepares = EnumSet.of(prepares);
+		}
+
+		public Set<Resource> prepares(final Context context) { return prepares; }
+	}
+
+	private static class Action extends Parameter implements ActionResources {
+		private final Set<Resource> consumes;
+
+		Action(final String name, final List<String> checked, final Resource consumes) {
+			super(name, checked);
+			this.consumes = EnumSet.of(consumes);
+		}
+
+		public Set<Resource> consumes(final Context context) {
+			return context.contains(this) ? consumes : EnumSet.noneOf(Resource.class);
+		}
+
+		public Set<Resource> produces(final Context context) { return EnumSet.noneOf(Resource.class); }
+	}
+
+	@Test
+	public void onlyRequiredToolsAreChecked() throws ExitException {
+		final List<String> checked = new ArrayList<String>();
+		final Tool compiler = new Tool("compiler", checked, Resource.COMPILER);
+		final Tool javac = new Tool("javac", checked, Resource.LIBRARIES);
+		final Action parse = new Action("parse", checked, Resource.COMPILER);
+		final ContextMock context = new ContextMock();
+		context.put(parse, null);
+		context.put(javac, "/usr/bin");
+		assertTrue(ParameterChecks.run(context, Arrays.<CompileParameter>asList(compiler, javac, parse)));
+		assertEquals(Arrays.asList("compiler", "parse"), checked);
+	}
+
+	@Test
+	public void checkCanRequestAnotherAction() throws ExitException {
+		final List<String> checked = new ArrayList<String>();
+		final Tool compiler = new Tool("compiler", checked, Resource.COMPILER);
+		final Tool database = new Tool("database", checked, Resource.PREVIOUS_DSL);
+		final Action migration = new Action("migration", checked, Resource.COMPILER);
+		final Action apply = new Action("apply", checked, Resource.PREVIOUS_DSL) {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				context.put(migration, null);
+				return super.check(context);
+			}
+		};
+		final ContextMock context = new ContextMock();
+		context.put(apply, null);
+		assertTrue(ParameterChecks.run(context, Arrays.<CompileParameter>asList(compiler, database, migration, apply)));
+		assertEquals(Arrays.asList("database", "migration", "apply", "compiler"), checked);
+	}
+
+	@Test
+	public void withoutActionsEverythingIsChecked() throws ExitException {
+		final List<String> checked = new ArrayList<String>();
+		final ContextMock context = new ContextMock();
+		assertTrue(ParameterChecks.run(context, Arrays.<CompileParameter>asList(
+				new Tool("compiler", checked, Resource.COMPILER),
+				new Parameter("flag", checked),
+				new Action("parse", checked, Resource.COMPILER))));
+		assertEquals(Arrays.asList("compiler", "flag", "parse"), checked);
+	}
+
+	@Test
+	public void undeclaredPluginRequiresEverything() throws ExitException {
+		//tool checks can run at the same time
+		final List<String> checked = Collections.synchronizedList(new ArrayList<String>());
+		final Parameter plugin = new Parameter("plugin", checked);
+		final ContextMock context = new ContextMock();
+		context.put(plugin, null);
+		assertTrue(ParameterChecks.run(context, Arrays.<CompileParameter>asList(
+				new Tool("compiler", checked, Resource.COMPILER),
+				new Tool("javac", checked, Resource.LIBRARIES),
+				plugin)));
+		assertEquals(3, checked.size());
+		assertEquals(new HashSet<String>(Arrays.asList("compiler", "javac")), new HashSet<String>(checked.subList(0, 2)));
+		assertEquals("plugin", checked.get(2));
+	}
+
+	@Test
+	public void independentChecksRunConcurrentlyWithOrderedOutput() throws ExitException {
+		final List<String> checked = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch second = new CountDownLatch(1);
+		final Tool slow = new Tool("slow", checked, Resource.COMPILER) {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				context.show("slow started");
+				try {
+					if (!second.await(10, TimeUnit.SECONDS)) {
+						context.error("checks were not run concurrently");
+						return false;
+					}
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				context.show("slow finished");
+				return true;
+			}
+		};
+		final Tool fast = new Tool("fast", checked, Resource.COMPILER) {
+			@Override
+			public boolean check(final Context context) throws ExitException {
+				context.show("fast");
+				second.countDown();
+				return true;
+			}
+		};
+		final Action parse = new Action("parse", checked, Resource.COMPILER);
+		final List<String> output = Collections.synchronizedList(new ArrayList<String>());
+		final ContextMock context = new ContextMock() {
+			@Override
+			public void show(final String... values) {
+				Collections.addAll(output, values);
+			}
+		};
+		context.put(parse, null);
+		assertTrue(ParameterChecks.run(context, Arrays.<CompileParameter>asList(slow, fast, parse)));
+		assertEquals(Arrays.asList("slow started", "slow finished", "fast"), output);
+	}
+
+	@Test
+	public void failedCheckStopsRun() throws ExitException {
+		final List<String> checked = new ArrayList<String>();
+		final Tool broken = new Tool("broken", checked, Resource.COMPILER) {
+			@Override
+			public boolean check(final Context context) {
+				context.error("compiler not found");
+				return false;
+			}
+		};
+		final Action parse = new Action("parse", checked, Resource.COMPILER);
+		final ContextMock context = new ContextMock();
+		context.put(parse, null);
+		assertFalse(ParameterChecks.run(context, Arrays.<CompileParameter>asList(broken, parse)));
+		assertEquals("compiler not found", context.error);
+		assertTrue(checked.isEmpty());
+	}
+}
@@ -0,0 +1,74 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class ProcessExecutorTest {
+
+	private static String java() {
+		return new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+	}
+
+	@Test
+	public void linesArePassedToListener() {
+		final List<String> lines = new ArrayList<String>();
+		final ProcessExecutor.LineListener listener = new ProcessExecutor.LineListener() {
+			@Override
+			public synchronized void onLine(final String line, final boolean isError) {
+				lines.add(line);
+			}
+		};
+		final Either<Utils.CommandResult> result =
+				ProcessExecutor.run(new ContextMock(), Arrays.asList(java(), "-version"), null, listener, ProcessExecutor.UNLIMITED, 0);
+		assertTrue(result.isSuccess());
+		assertEquals(0, result.get().exitCode);
+		assertFalse(lines.isEmpty());
+		assertTrue(result.get().error.contains("version"));
+		assertFalse(result.get().truncated);
+		assertTrue(result.get().wallTime >= 0);
+	}
+
+	@Test
+	public void captureIsBounded() {
+		final Either<Utils.CommandResult> result =
+				ProcessExecutor.run(new ContextMock(), Arrays.asList(java(), "-version"), null, null, 5, 0);
+		assertTrue(result.isSuccess());
+		assertTrue(result.get().truncated);
+		assertTrue(result.get().error.length() <= 5);
+	}
+
+	@Test
+	public void captureStopsAtFirstLineOverLimit() {
+		assumeFalse(Utils.isWindows());
+		final Either<Utils.CommandResult> result = ProcessExecutor.run(
+				new ContextMock(),
+				Arrays.asList("sh", "-c", "echo short; echo a-much-longer-line; echo x"),
+				null, null, 20, 0);
+		assertTrue(result.isSuccess());
+		assertTrue(result.get().truncated);
+		assertEquals("short\n", result.get().output);
+	}
+
+	@Test
+	public void testCommandMatchesLine() {
+		assertTrue(Utils.testCommand(new ContextMock(), java(), "version", Arrays.asList("-version")));
+		assertFalse(Utils.testCommand(new ContextMock(), java(), "no such banner", Arrays.asList("-version")));
+	}
+
+	@Test
+	public void timeoutTerminatesProcess() {
+		assumeFalse(Utils.isWindows());
+		final long start = System.currentTimeMillis();
+		final Either<Utils.CommandResult> result =
+				ProcessExecutor.run(new ContextMock(), Arrays.asList("sleep", "30"), null, null, 0, 200);
+		assertFalse(result.isSuccess());
+		assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+}
@@ -0,0 +1,118 @@
+package com.dslplatform.compiler.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ResumableDownloadTest {
+
+	private File root;
+	private HttpServer server;
+	private final List<String> ranges = new ArrayList<String>();
+	private final byte[] content = new byte[100000];
+
+	@Before
+	public void setup() throws IOException {
+		root = new File(System.getProperty("java.io.tmpdir"), "download-test-" + UUID.randomUUID());
+		assertTrue(root.mkdirs());
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/flaky.bin", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final String range = exchange.getRequestHeaders().getFirst("Range");
+				ranges.add(range);
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				if (range == null) {
+					exchange.sendResponseHeaders(200, content.length);
+					final OutputStream os = exchange.getResponseBody();
+					os.write(content, 0, content.length / 2);
+					os.flush();
+					//drop the connection in the middle of the transfer
+					exchange.close();
+					return;
+				}
+				final int offset = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+				exchange.getResponseHeaders().add("Content-Range", "bytes " + offset + "-" + (content.length - 1) + "/" + content.length);
+				exchange.sendResponseHeaders(206, content.length - offset);
+				final OutputStream os = exchange.getResponseBody();
+				os.write(content, offset, content.length - offset);
+				os.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		server.stop(0);
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	@Test
+	public void interruptedDownloadIsResumed() throws IOException {
+		final File target = new File(root, "flaky.bin");
+		final URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/flaky.bin");
+		Utils.downloadFile(new ContextMock(), target, url, null);
+		assertEquals(content.length, target.length());
+		final byte[] downloaded = new byte[content.length];
+		final FileInputStream fis = new FileInputStream(target);
+		assertEquals(content.length, fis.read(downloaded));
+		fis.close();
+		assertArrayEquals(content, downloaded);
+		assertNull(ranges.get(0));
+		assertNotNull(ranges.get(ranges.size() - 1));
+		assertFalse(new File(root, "flaky.bin.part").exists());
+	}
+
+	@Test
+	public void checksumMismatchKeepsTargetUntouched() throws IOException {
+		final File source = new File(root, "source.txt");
+		Utils.saveFile(new ContextMock(), source, "content");
+		final File target = new File(root, "target.txt");
+		try {
+			Utils.downloadFile(new ContextMock(), target, source.toURI().toURL(), "0000000000000000000000000000000000000000");
+			fail("Expecting checksum mismatch");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage().contains("Checksum"));
+		}
+		assertFalse(target.exists());
+		Utils.downloadFile(new ContextMock(), target, source.toURI().toURL(), Utils.checksum(source, "SHA-1"));
+		assertEquals("content", Utils.readFile(target).get());
+	}
+
+	@Test
+	public void zipIsExtractedIntoFolder() throws IOException {
+		final File zip = new File(root, "lib.zip");
+		final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip));
+		zos.putNextEntry(new ZipEntry("lib/"));
+		zos.putNextEntry(new ZipEntry("lib/a.dll"));
+		zos.write(content);
+		zos.putNextEntry(new ZipEntry("b.dll"));
+		zos.write("b".getBytes("UTF-8"));
+		zos.close();
+		final File target = new File(root, "deps");
+		assertTrue(target.mkdirs());
+		Utils.unpackZip(new ContextMock(), target, zip.toURI().toURL());
+		assertEquals(content.length, new File(target, "lib/a.dll").length());
+		assertEquals("b", Utils.readFile(new File(target, "b.dll")).get());
+		assertEquals(2, target.list().length);
+	}
+}
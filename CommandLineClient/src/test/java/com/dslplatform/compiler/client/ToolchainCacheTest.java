@@ -0,0 +1,38 @@
+package com.dslplatform.compiler.client;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ToolchainCacheTest {
+
+	@Test
+	public void resultIsInvalidatedWhenBinaryChanges() throws IOException {
+		final File tool = File.createTempFile("fake-tool", ".sh");
+		tool.deleteOnExit();
+		final String key = ToolchainCache.key(tool.getAbsolutePath(), "Usage", Collections.<String>emptyList());
+		final String fingerprint = ToolchainCache.fingerprint(tool.getAbsolutePath(), Collections.<String>emptyList());
+		assertNull(ToolchainCache.lookup(key, fingerprint));
+		ToolchainCache.store(key, fingerprint, true);
+		assertEquals(Boolean.TRUE, ToolchainCache.lookup(key, fingerprint));
+		Utils.saveFile(new ContextMock(), tool, "changed");
+		final String changed = ToolchainCache.fingerprint(tool.getAbsolutePath(), Collections.<String>emptyList());
+		assertNotEquals(fingerprint, changed);
+		assertNull(ToolchainCache.lookup(key, changed));
+	}
+
+	@Test
+	public void fileArgumentsAreIncluded() throws IOException {
+		final File argument = File.createTempFile("compiler", ".exe");
+		argument.deleteOnExit();
+		final String without = ToolchainCache.fingerprint("mono", Collections.<String>emptyList());
+		final String with = ToolchainCache.fingerprint("mono", Arrays.asList(argument.getAbsolutePath()));
+		assertNotEquals(without, with);
+		assertTrue(with.contains(argument.getAbsolutePath()));
+	}
+}
@@ -0,0 +1,87 @@
+package com.dslplatform.compiler.client.diff;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistogramDiffTest {
+
+	private static List<diff_match_patch.Diff> diff(final String previous, final String current) {
+		final List<diff_match_patch.Diff> diffs = new HistogramDiff().diff(previous, current, System.currentTimeMillis() + 1000);
+		LineDiffTest.assertValid(previous, current, diffs);
+		for (final diff_match_patch.Diff d : diffs) {
+			assertFalse(d.text.isEmpty());
+		}
+		return diffs;
+	}
+
+	@Test
+	public void lineStarts() {
+		assertArrayEquals(new int[]{0}, HistogramDiff.lineStarts(""));
+		assertArrayEquals(new int[]{0, 1}, HistogramDiff.lineStarts("a"));
+		assertArrayEquals(new int[]{0, 2, 4}, HistogramDiff.lineStarts("a\nb\n"));
+		assertArrayEquals(new int[]{0, 2, 3}, HistogramDiff.lineStarts("a\nb"));
+	}
+
+	@Test
+	public void sameShapeAsLegacyEngine() {
+		final String previous = "module A {\n  aggregate B {\n    int x;\n  }\n}\n";
+		final String current = "module A {\n  aggregate B {\n    long x;\n  }\n}\n";
+		assertEquals(
+				new LineDiff().diff(previous, current, System.currentTimeMillis() + 1000),
+				diff(previous, current));
+	}
+
+	@Test
+	public void addedAndRemovedFiles() {
+		assertEquals(
+				Arrays.asList(new diff_match_patch.Diff(diff_match_patch.Operation.INSERT, "module A;\n")),
+				diff("", "module A;\n"));
+		assertEquals(
+				Arrays.asList(new diff_match_patch.Diff(diff_match_patch.Operation.DELETE, "module A;\n")),
+				diff("module A;\n", ""));
+		assertEquals(0, diff("", "").size());
+	}
+
+	@Test
+	public void randomEditsAreValid() {
+		final Random rnd = new Random(7);
+		final String[] words = {"module", "aggregate", "{", "}", "int x;", "string name;", "", "entity"};
+		for (int t = 0; t < 200; t++) {
+			final StringBuilder previous = new StringBuilder();
+			final StringBuilder current = new StringBuilder();
+			final int lines = rnd.nextInt(40);
+			for (int i = 0; i < lines; i++) {
+				final String line = words[rnd.nextInt(words.length)] + (rnd.nextBoolean() ? "\n" : " ");
+				if (rnd.nextInt(4) != 0) previous.append(line);
+				if (rnd.nextInt(4) != 0) current.append(line);
+			}
+			diff(previous.toString(), current.toString());
+		}
+	}
+
+	@Test
+	public void expiredDeadlineProducesValidDiff() {
+		final StringBuilder previous = new StringBuilder();
+		final StringBuilder current = new StringBuilder();
+		LineDiffTest.refactoring(2000, previous, current);
+		LineDiffTest.assertValid(
+				previous.toString(),
+				current.toString(),
+				new HistogramDiff().diff(previous.toString(), current.toString(), System.currentTimeMillis() - 1));
+	}
+
+	@Test
+	public void largeRefactoringIsFast() {
+		final StringBuilder previous = new StringBuilder();
+		final StringBuilder current = new StringBuilder();
+		LineDiffTest.refactoring(20000, previous, current);
+		final long start = System.currentTimeMillis();
+		diff(previous.toString(), current.toString());
+		assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+}
@@ -0,0 +1,94 @@
+package com.dslplatform.compiler.client.diff;
+
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineDiffTest {
+
+	static void refactoring(final int size, final StringBuilder previous, final StringBuilder current) {
+		final Random rnd = new Random(42);
+		for (int i = 0; i < size; i++) {
+			final String line = "  aggregate Entity" + i + " { string(" + rnd.nextInt(100) + ") name; }\n";
+			previous.append(line);
+			final int change = rnd.nextInt(10);
+			if (change == 0) {
+				current.append("  aggregate Renamed").append(i).append(" { string name; }\n");
+			} else if (change != 1) {
+				current.append(line);
+			}
+		}
+	}
+
+	static void assertValid(final String previous, final String current, final List<diff_match_patch.Diff> diffs) {
+		final diff_match_patch dmp = new diff_match_patch();
+		final LinkedList<diff_match_patch.Diff> list = new LinkedList<diff_match_patch.Diff>(diffs);
+		assertEquals(previous, dmp.diff_text1(list));
+		assertEquals(current, dmp.diff_text2(list));
+	}
+
+	@Test
+	public void changedLineIsRefined() {
+		final String previous = "module A {\n  aggregate B {\n    int x;\n  }\n}\n";
+		final String current = "module A {\n  aggregate B {\n    long x;\n  }\n}\n";
+		final List<diff_match_patch.Diff> diffs = new LineDiff().diff(previous, current, System.currentTimeMillis() + 1000);
+		assertValid(previous, current, diffs);
+		for (final diff_match_patch.Diff d : diffs) {
+			if (d.operation != diff_match_patch.Operation.EQUAL) {
+				assertFalse(d.text.contains("\n"));
+			}
+		}
+	}
+
+	@Test
+	public void expiredDeadlineProducesValidDiff() {
+		final String previous = "a\nb\nc\nd\n";
+		final String current = "a\nx\nc\ny\n";
+		assertValid(previous, current, new LineDiff().diff(previous, current, System.currentTimeMillis() - 1));
+	}
+
+	@Test
+	public void largeRefactoringIsFast() {
+		final StringBuilder previous = new StringBuilder();
+		final StringBuilder current = new StringBuilder();
+		refactoring(5000, previous, current);
+		final long start = System.currentTimeMillis();
+		final List<diff_match_patch.Diff> diffs = new LineDiff().diff(previous.toString(), current.toString(), start + 1000);
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		assertValid(previous.toString(), current.toString(), diffs);
+	}
+
+	private static String randomLines(final Random rnd) {
+		final StringBuilder sb = new StringBuilder();
+		final int lines = rnd.nextInt(5);
+		for (int i = 0; i < lines; i++) {
+			final int length = rnd.nextInt(4);
+			for (int j = 0; j < length; j++) {
+				sb.append((char) ('a' + rnd.nextInt(3)));
+			}
+			if (rnd.nextInt(4) != 0) {
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void randomChangesHaveNoEmptySegments() {
+		final Random rnd = new Random(7);
+		final LineDiff engine = new LineDiff();
+		for (int i = 0; i < 20000; i++) {
+			final String previous = randomLines(rnd);
+			final String current = randomLines(rnd);
+			final List<diff_match_patch.Diff> diffs = engine.diff(previous, current, Long.MAX_VALUE);
+			assertValid(previous, current, diffs);
+			for (final diff_match_patch.Diff d : diffs) {
+				assertTrue(previous + " -> " + current, d.text.length() > 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.diff.HistogramDiff;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConceptDiffTest {
+
+	//Simplified tokenizer: lines are tokens, "{" starts and "}" ends a rule, first word after keyword is an identifier
+	private static final ConceptDiff.Tokenizer TOKENIZER = new ConceptDiff.Tokenizer() {
+		@Override
+		public Either<DslCompiler.ParseResult> parse(final String dsl) {
+			final List<Map<String, Object>> tokens = new ArrayList<Map<String, Object>>();
+			final String[] lines = dsl.split("\n");
+			for (int i = 0; i < lines.length; i++) {
+				final String line = lines[i].trim();
+				if (line.length() == 0) continue;
+				if (line.endsWith("{")) {
+					tokens.add(token(DslCompiler.SyntaxType.RuleStart, "", i + 1));
+					final String[] parts = line.substring(0, line.length() - 1).trim().split("\\s+");
+					tokens.add(token(DslCompiler.SyntaxType.Keyword, parts[0], i + 1));
+					tokens.add(token(DslCompiler.SyntaxType.Identifier, parts[1], i + 1));
+				} else if (line.equals("}")) {
+					tokens.add(token(DslCompiler.SyntaxType.RuleEnd, "", i + 1));
+				} else {
+					tokens.add(token(DslCompiler.SyntaxType.RuleStart, "", i + 1));
+					for (final String part : line.split("\\s+")) {
+						tokens.add(token(DslCompiler.SyntaxType.Identifier, part, i + 1));
+					}
+					tokens.add(token(DslCompiler.SyntaxType.RuleEnd, "", i + 1));
+				}
+			}
+			final Map<String, Object> result = new HashMap<String, Object>();
+			result.put("Tokens", tokens);
+			return Either.success(new DslCompiler.ParseResult(result));
+		}
+	};
+
+	private static Map<String, Object> token(final DslCompiler.SyntaxType type, final String value, final int line) {
+		final Map<String, Object> map = new HashMap<String, Object>();
+		map.put("Type", type.name());
+		map.put("Value", value);
+		map.put("Line", line);
+		return map;
+	}
+
+	private static Map<String, ConceptDiff.Concept> index(final String... fileAndDsl) {
+		final Map<String, String> dsls = new HashMap<String, String>();
+		for (int i = 0; i < fileAndDsl.length; i += 2) {
+			dsls.put(fileAndDsl[i], fileAndDsl[i + 1]);
+		}
+		final Either<Map<String, ConceptDiff.Concept>> result = ConceptDiff.index(TOKENIZER, dsls);
+		assertTrue(result.isSuccess());
+		return result.get();
+	}
+
+	private static class Output extends ContextMock {
+		final StringBuilder shown = new StringBuilder();
+
+		@Override
+		public void show(final String... values) {
+			for (final String v : values) {
+				shown.append(v).append('\n');
+			}
+		}
+	}
+
+	private static boolean compare(
+			final Output context,
+			final Map<String, ConceptDiff.Concept> previous,
+			final Map<String, ConceptDiff.Concept> current) {
+		return ConceptDiff.compare(context, previous, current, new HistogramDiff(), Long.MAX_VALUE, false);
+	}
+
+	private static final String MODEL =
+			"module shop {\n" +
+			"  aggregate Order {\n" +
+			"    string code\n" +
+			"    Item[] items\n" +
+			"  }\n" +
+			"  entity Item {\n" +
+			"    int quantity\n" +
+			"  }\n" +
+			"}\n";
+
+	@Test
+	public void conceptsAreIndexedByFullName() {
+		final Map<String, ConceptDiff.Concept> concepts = index("model.dsl", MODEL);
+		assertEquals(new TreeSet<String>(Arrays.asList("shop", "shop.Order", "shop.Item")), concepts.keySet());
+		final ConceptDiff.Concept order = concepts.get("shop.Order");
+		assertEquals("model.dsl", order.file);
+		assertEquals("  aggregate Order {\n    string code\n    Item[] items\n  }\n", order.text);
+	}
+
+	@Test
+	public void movedReorderedAndReformattedConceptsAreNotChanges() {
+		final Map<String, ConceptDiff.Concept> previous = index("model.dsl", MODEL);
+		final Map<String, ConceptDiff.Concept> current = index(
+				"order.dsl",
+				"module shop {\n" +
+				"\taggregate   Order {\n" +
+				"\t\tstring   code\n" +
+				"\n" +
+				"\t\tItem[] items\n" +
+				"\t}\n" +
+				"}\n",
+				"item.dsl",
+				"module shop {\n" +
+				"  entity Item {\n" +
+				"    int quantity\n" +
+				"  }\n" +
+				"}\n");
+		final Output context = new Output();
+		assertFalse(compare(context, previous, current));
+		assertEquals("", context.shown.toString());
+	}
+
+	@Test
+	public void onlyChangedConceptsAreShown() {
+		final Map<String, ConceptDiff.Concept> previous = index("model.dsl", MODEL);
+		final Map<String, ConceptDiff.Concept> current = index("model.dsl", MODEL
+				.replace("    int quantity\n", "    long quantity\n")
+				.replace("  entity Item {", "  value Money {\n    decimal amount\n  }\n  entity Item {"));
+		final Output context = new Output();
+		assertTrue(compare(context, previous, current));
+		final String output = context.shown.toString();
+		assertTrue(output.contains("Changed concept: shop.Item in model.dsl"));
+		assertTrue(output.contains("long quantity") || output.contains("[+ "));
+		assertTrue(output.contains("New concept: shop.Money in model.dsl"));
+		assertFalse(output.contains("shop.Order"));
+	}
+
+	@Test
+	public void tokensWithSameHashCodeAreChanges() {
+		//"Aa" and "BB" have the same String.hashCode
+		final Map<String, ConceptDiff.Concept> previous = index("model.dsl", MODEL.replace("int quantity", "int Aa"));
+		final Map<String, ConceptDiff.Concept> current = index("model.dsl", MODEL.replace("int quantity", "int BB"));
+		final Output context = new Output();
+		assertTrue(compare(context, previous, current));
+		assertTrue(context.shown.toString().contains("Changed concept: shop.Item in model.dsl"));
+	}
+
+	@Test
+	public void removedConcept() {
+		final Map<String, ConceptDiff.Concept> previous = index("model.dsl", MODEL);
+		final Map<String, ConceptDiff.Concept> current = index("model.dsl", MODEL
+				.replace("  entity Item {\n    int quantity\n  }\n", ""));
+		final Output context = new Output();
+		assertTrue(compare(context, previous, current));
+		assertTrue(context.shown.toString().contains("Removed concept: shop.Item from model.dsl"));
+	}
+
+	@Test
+	public void unknownMode() {
+		final ContextMock context = new ContextMock();
+		context.put(Diff.INSTANCE, "words");
+		context.put(PostgresConnection.INSTANCE, "localhost/db");
+		try {
+			Diff.INSTANCE.check(context);
+			fail("Expecting exit");
+		} catch (ExitException ignore) {
+		}
+		assertTrue(context.error.contains("Unknown diff mode: words"));
+		final ContextMock valid = new ContextMock();
+		assertTrue(Diff.INSTANCE.tryParse("diff", null, valid).get());
+		assertFalse(Diff.INSTANCE.tryParse("diff", "structure", valid).get());
+	}
+}
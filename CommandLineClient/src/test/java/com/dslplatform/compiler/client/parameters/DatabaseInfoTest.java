@@ -0,0 +1,68 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.ExitException;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DatabaseInfoTest {
+
+	@Test
+	public void parseHstore() throws ExitException {
+		final Map<String, String> map = DatabaseInfo.convertToMap(
+				"\"b.dsl\"=>\"module B { string s = \\\"x\\\\y\\\"; }\", \"a.dsl\"=>\"module A {\n}\",\"c.dsl\"=>\"\"",
+				new ContextMock());
+		assertEquals(3, map.size());
+		final Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+		Map.Entry<String, String> kv = it.next();
+		assertEquals("b.dsl", kv.getKey());
+		assertEquals("module B { string s = \"x\\y\"; }", kv.getValue());
+		kv = it.next();
+		assertEquals("a.dsl", kv.getKey());
+		assertEquals("module A {\n}", kv.getValue());
+		kv = it.next();
+		assertEquals("c.dsl", kv.getKey());
+		assertEquals("", kv.getValue());
+	}
+
+	@Test
+	public void parseEmpty() throws ExitException {
+		assertTrue(DatabaseInfo.convertToMap("", new ContextMock()).isEmpty());
+		assertTrue(DatabaseInfo.convertToMap(new StringReader("  "), new ContextMock()).isEmpty());
+	}
+
+	@Test
+	public void largeInputFromReader() throws ExitException {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append("\"file").append(i).append(".dsl\"=>\"module M").append(i).append(" { \\\"quoted\\\" }\"");
+		}
+		final Map<String, String> map = DatabaseInfo.convertToMap(new StringReader(sb.toString()), new ContextMock());
+		assertEquals(1000, map.size());
+		assertEquals("module M999 { \"quoted\" }", map.get("file999.dsl"));
+	}
+
+	@Test
+	public void errorPosition() {
+		final ContextMock context = new ContextMock();
+		try {
+			DatabaseInfo.convertToMap("\"a.dsl\"=>\"module A {}\" \"b.dsl\"", context);
+			fail("Expecting error");
+		} catch (ExitException ignore) {
+		}
+		assertTrue(context.hasError);
+		assertTrue(context.error, context.error.contains("Expecting ',' at position 24"));
+		try {
+			DatabaseInfo.convertToMap("\"a.dsl\"=>\"module A {}", context);
+			fail("Expecting error");
+		} catch (ExitException ignore) {
+		}
+		assertTrue(context.error, context.error.contains("end of input"));
+	}
+}
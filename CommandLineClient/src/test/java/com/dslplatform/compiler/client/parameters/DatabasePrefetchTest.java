@@ -0,0 +1,99 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.ExitException;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DatabasePrefetchTest {
+
+	private static final Context.Key<DatabasePrefetch> PREFETCH = new Context.Key<DatabasePrefetch>("prefetch");
+	private static final Context.Key<String> LOADED_BY = new Context.Key<String>("loaded_by");
+
+	@Test
+	public void outputIsDeferredUntilResultIsUsed() throws Exception {
+		final ContextMock context = new ContextMock();
+		context.put(Migration.INSTANCE, null);
+		final CountDownLatch loaded = new CountDownLatch(1);
+		DatabasePrefetch.start(context, PREFETCH, new DatabasePrefetch.Loader() {
+			@Override
+			public DatabaseInfo load(final Context ctx) {
+				ctx.warning("Unable to detect version");
+				ctx.cache(LOADED_BY, "prefetch");
+				loaded.countDown();
+				return new DatabaseInfo("Postgres", "1.0", "9.6", new HashMap<String, String>());
+			}
+		});
+		loaded.await();
+		assertFalse(context.hasWarning);
+		assertEquals("prefetch", context.load(LOADED_BY));
+		final DatabaseInfo info = DatabasePrefetch.await(context, PREFETCH);
+		assertEquals("9.6", info.dbVersion);
+		assertEquals("Unable to detect version", context.warning);
+		assertSame(info, DatabasePrefetch.await(context, PREFETCH));
+	}
+
+	@Test
+	public void concurrentRequestsShareLoad() throws Exception {
+		final ContextMock context = new ContextMock();
+		final AtomicInteger loads = new AtomicInteger();
+		final DatabasePrefetch.Loader loader = new DatabasePrefetch.Loader() {
+			@Override
+			public DatabaseInfo load(final Context ctx) throws ExitException {
+				loads.incrementAndGet();
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ex) {
+					throw new ExitException();
+				}
+				return new DatabaseInfo("Postgres", "", "10.1", new HashMap<String, String>());
+			}
+		};
+		final Future<DatabaseInfo> other = Executors.newSingleThreadExecutor().submit(new Callable<DatabaseInfo>() {
+			@Override
+			public DatabaseInfo call() throws ExitException {
+				return DatabasePrefetch.load(context, PREFETCH, loader);
+			}
+		});
+		final DatabaseInfo info = DatabasePrefetch.load(context, PREFETCH, loader);
+		assertSame(info, other.get());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void failureIsReportedOnAwait() throws Exception {
+		final ContextMock context = new ContextMock();
+		context.put(Diff.INSTANCE, null);
+		DatabasePrefetch.start(context, PREFETCH, new DatabasePrefetch.Loader() {
+			@Override
+			public DatabaseInfo load(final Context ctx) throws ExitException {
+				ctx.error("Error opening connection");
+				throw new ExitException();
+			}
+		});
+		try {
+			DatabasePrefetch.await(context, PREFETCH);
+			fail("Expecting exit exception");
+		} catch (ExitException ignore) {
+		}
+		assertEquals("Error opening connection", context.error);
+	}
+
+	@Test
+	public void notStartedWithoutMigrationOrDiff() throws Exception {
+		final ContextMock context = new ContextMock();
+		DatabasePrefetch.start(context, PREFETCH, new DatabasePrefetch.Loader() {
+			@Override
+			public DatabaseInfo load(final Context ctx) {
+				throw new IllegalStateException("should not run");
+			}
+		});
+		assertNull(DatabasePrefetch.await(context, PREFETCH));
+	}
+}
@@ -0,0 +1,40 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class DslCacheTest {
+
+	@Test
+	public void identityIgnoresPassword() {
+		assertEquals(
+				DslCache.identity("Postgres", "localhost/db?user=postgres&password=secret"),
+				DslCache.identity("Postgres", "localhost/db?user=postgres&password=other"));
+		assertNotEquals(
+				DslCache.identity("Postgres", "localhost/db?user=postgres"),
+				DslCache.identity("Oracle", "localhost/db?user=postgres"));
+	}
+
+	@Test
+	public void dslIsReusedWhileFingerprintMatches() {
+		final ContextMock context = new ContextMock();
+		final String identity = DslCache.identity("Postgres", "localhost/" + UUID.randomUUID());
+		final Map<String, String> dsl = new LinkedHashMap<String, String>();
+		dsl.put("z.dsl", "module Z { aggregate A { string s; } }");
+		dsl.put("a.dsl", "module A {\n\tvalue V { int i; }\n}");
+		assertNull(DslCache.load(context, identity, "5:abc"));
+		DslCache.store(context, identity, "5:abc", "1.9.3", dsl);
+		final DslCache.Entry cached = DslCache.load(context, identity, "5:abc");
+		assertNotNull(cached);
+		assertEquals("1.9.3", cached.compiler);
+		assertEquals(dsl, cached.dsl);
+		assertEquals("z.dsl", cached.dsl.keySet().iterator().next());
+		assertNull(DslCache.load(context, identity, "6:def"));
+	}
+}
@@ -0,0 +1,170 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MavenResolverTest {
+
+	private File root;
+	private File remote;
+	private File local;
+
+	@Before
+	public void setup() {
+		root = new File(System.getProperty("java.io.tmpdir"), "maven-resolver-test-" + UUID.randomUUID());
+		remote = new File(root, "remote");
+		local = new File(root, "local");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	private void publish(final String group, final String artifact, final String... versions) throws IOException {
+		final ContextMock context = new ContextMock();
+		final File folder = new File(remote, group + "/" + artifact);
+		final StringBuilder metadata = new StringBuilder("<metadata><versioning><release>")
+				.append(versions[versions.length - 1])
+				.append("</release><versions>");
+		for (final String v : versions) {
+			metadata.append("<version>").append(v).append("</version>");
+			final File versionFolder = new File(folder, v);
+			assertTrue(versionFolder.mkdirs());
+			Utils.saveFile(context, new File(versionFolder, artifact + "-" + v + ".pom"), "<project/>");
+			Utils.saveFile(context, new File(versionFolder, artifact + "-" + v + ".jar"), artifact + v);
+		}
+		metadata.append("</versions></versioning></metadata>");
+		Utils.saveFile(context, new File(folder, "maven-metadata.xml"), metadata.toString());
+	}
+
+	@Test
+	public void latestReleaseFromFileRepository() throws Exception {
+		publish("org/revenj", "revenj-servlet", "1.0.0", "1.1.0");
+		publish("org/revenj", "revenj-storage", "2.0.0");
+		final MavenResolver resolver = new MavenResolver(
+				new ContextMock(),
+				Arrays.asList(remote.toURI().toString()),
+				local);
+		final Future<MavenResolver.Artifact> servlet = resolver.resolveLatest("org/revenj", "revenj-servlet");
+		final Future<MavenResolver.Artifact> storage = resolver.resolveLatest("org/revenj", "revenj-storage");
+		assertSame(servlet, resolver.resolveLatest("org/revenj", "revenj-servlet"));
+		assertEquals("1.1.0", servlet.get().version);
+		assertEquals("2.0.0", storage.get().version);
+		assertEquals("revenj-servlet1.1.0", Utils.readFile(servlet.get().jar).get());
+		assertTrue(servlet.get().pom.getAbsolutePath().startsWith(local.getAbsolutePath()));
+	}
+
+	@Test
+	public void latestVersionIsResolvedWithoutDownload() throws Exception {
+		publish("org/revenj", "revenj-java", "1.0.0");
+		final List<String> repositories = Arrays.asList(remote.toURI().toString());
+		assertEquals("1.0.0", new MavenResolver(new ContextMock(), repositories, local).latestVersion("org/revenj", "revenj-java"));
+		assertFalse(new File(local, "org/revenj/revenj-java/1.0.0/revenj-java-1.0.0.jar").exists());
+		publish("org/revenj", "revenj-java", "1.1.0");
+		final MavenResolver resolver = new MavenResolver(new ContextMock(), repositories, local);
+		assertEquals("1.1.0", resolver.latestVersion("org/revenj", "revenj-java"));
+		assertEquals("1.1.0", resolver.resolveLatest("org/revenj", "revenj-java").get().version);
+	}
+
+	@Test
+	public void fallbackToNextRepository() throws Exception {
+		publish("com/dslplatform", "dsl-client-java", "1.5.0");
+		final MavenResolver resolver = new MavenResolver(
+				new ContextMock(),
+				Arrays.asList(new File(root, "missing").toURI().toString(), remote.toURI().toString()),
+				local);
+		assertEquals("1.5.0", resolver.resolveLatest("com/dslplatform", "dsl-client-java").get().version);
+	}
+
+	private void deploy(final String group, final String artifact, final String version, final String body) throws IOException {
+		final ContextMock context = new ContextMock();
+		final File folder = new File(remote, group.replace('.', '/') + "/" + artifact + "/" + version);
+		assertTrue(folder.mkdirs());
+		Utils.saveFile(context, new File(folder, artifact + "-" + version + ".pom"),
+				"<project><groupId>" + group + "</groupId><artifactId>" + artifact + "</artifactId>"
+						+ "<version>" + version + "</version>" + body + "</project>");
+		Utils.saveFile(context, new File(folder, artifact + "-" + version + ".jar"), artifact + version);
+	}
+
+	private static String dependency(final String artifact, final String version, final String extra) {
+		return "<dependency><groupId>org.example</groupId><artifactId>" + artifact + "</artifactId>"
+				+ (version != null ? "<version>" + version + "</version>" : "") + extra + "</dependency>";
+	}
+
+	@Test
+	public void transitiveRuntimeClosure() throws Exception {
+		deploy("org.example", "bom", "1.0",
+				"<dependencyManagement><dependencies>"
+						+ dependency("fromBom", "3.0", "")
+						+ dependency("managed", "9.9", "")
+						+ "</dependencies></dependencyManagement>");
+		deploy("org.example", "parent", "1.0",
+				"<properties><lib.version>2.0</lib.version></properties>"
+						+ "<dependencyManagement><dependencies>"
+						+ dependency("managed", "${lib.version}", "")
+						+ dependency("bom", "1.0", "<type>pom</type><scope>import</scope>")
+						+ "</dependencies></dependencyManagement>");
+		deploy("org.example", "app", "1.0",
+				"<parent><groupId>org.example</groupId><artifactId>parent</artifactId><version>1.0</version></parent>"
+						+ "<dependencies>"
+						+ dependency("managed", null, "")
+						+ dependency("fromBom", null, "")
+						+ dependency("opt", "1.0", "<optional>true</optional>")
+						+ dependency("tst", "1.0", "<scope>test</scope>")
+						+ dependency("lib", "${project.version}",
+						"<exclusions><exclusion><groupId>org.example</groupId><artifactId>excluded</artifactId></exclusion></exclusions>")
+						+ "</dependencies>");
+		deploy("org.example", "lib", "1.0",
+				"<dependencies>"
+						+ dependency("excluded", "1.0", "")
+						+ dependency("transitiveOpt", "1.0", "<optional>true</optional>")
+						+ dependency("deep", "1.0", "<scope>runtime</scope>")
+						+ dependency("managed", "1.5", "")
+						+ "</dependencies>");
+		deploy("org.example", "deep", "1.0",
+				"<dependencies>" + dependency("prov", "1.0", "<scope>provided</scope>") + "</dependencies>");
+		for (final String leaf : new String[]{"managed/2.0", "fromBom/3.0", "opt/1.0"}) {
+			final String[] parts = leaf.split("/");
+			deploy("org.example", parts[0], parts[1], "");
+		}
+		final MavenResolver resolver = new MavenResolver(
+				new ContextMock(),
+				Arrays.asList(remote.toURI().toString()),
+				local);
+		final List<String> names = new ArrayList<String>();
+		for (final File f : resolver.resolveDependencies("org.example", "app", "1.0")) {
+			names.add(f.getName());
+		}
+		assertEquals(
+				Arrays.asList("managed-2.0.jar", "fromBom-3.0.jar", "opt-1.0.jar", "lib-1.0.jar", "deep-1.0.jar"),
+				names);
+	}
+
+	@Test
+	public void versionRangesAreReported() throws Exception {
+		deploy("org.example", "ranged", "1.0",
+				"<dependencies>" + dependency("other", "[1.0,2.0)", "") + "</dependencies>");
+		final MavenResolver resolver = new MavenResolver(
+				new ContextMock(),
+				Arrays.asList(remote.toURI().toString()),
+				local);
+		try {
+			resolver.resolveDependencies("org.example", "ranged", "1.0");
+			fail("Expecting error");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage().contains("Version ranges"));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MigrationCacheTest {
+
+	private File root;
+	private ContextMock context;
+	private File compiler;
+	private File dsl;
+
+	@Before
+	public void setup() throws IOException {
+		root = new File(System.getProperty("java.io.tmpdir"), "migration-cache-test-" + UUID.randomUUID());
+		assertTrue(root.mkdirs());
+		context = new ContextMock();
+		compiler = new File(root, "dsl-compiler.exe");
+		Utils.saveFile(context, compiler, "compiler");
+		dsl = new File(root, "model.dsl");
+		Utils.saveFile(context, dsl, "module A { aggregate B; }");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	private String key(final DatabaseInfo info, final String... arguments) throws IOException {
+		return MigrationCache.key(compiler, Arrays.asList(arguments), info, Collections.singletonList(dsl));
+	}
+
+	@Test
+	public void keyCoversInputs() throws Exception {
+		final Map<String, String> previous = new LinkedHashMap<String, String>();
+		previous.put("model.dsl", "module A;");
+		final DatabaseInfo info = new DatabaseInfo("Postgres", "1.0", "9.6", previous);
+		final String original = key(info, "target=postgres9.6");
+		assertEquals(original, key(info, "target=postgres9.6"));
+		assertNotEquals(original, key(info, "target=postgres9.6", "role=admin"));
+		assertNotEquals(original, key(new DatabaseInfo("Postgres", "1.0", "10.1", previous), "target=postgres9.6"));
+		assertNotEquals(original, key(new DatabaseInfo("Postgres", "1.0", "9.6", new HashMap<String, String>()), "target=postgres9.6"));
+		Utils.saveFile(context, dsl, "module A { aggregate C; }");
+		assertNotEquals(original, key(info, "target=postgres9.6"));
+	}
+
+	@Test
+	public void emptyMigrationIsCached() throws Exception {
+		final String key = key(new DatabaseInfo("Postgres", "", "9.6", new HashMap<String, String>()), "target=postgres9.6");
+		assertNull(MigrationCache.load(context, key));
+		MigrationCache.store(context, key, "");
+		assertEquals("", MigrationCache.load(context, key));
+		MigrationCache.store(context, key, "CREATE TABLE x();");
+		assertEquals("CREATE TABLE x();", MigrationCache.load(context, key));
+	}
+
+	@Test
+	public void migrationIsStoredOutsideTempFolder() throws Exception {
+		final String key = key(new DatabaseInfo("Postgres", "", "9.6", new HashMap<String, String>()), "target=postgres10");
+		MigrationCache.store(context, key, "CREATE TABLE y();");
+		final File file = new File(new File(Utils.getUserCachePath(), "migration-cache"), key + ".sql");
+		try {
+			assertTrue(file.isFile());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void portCompilerIsNotCached() throws Exception {
+		assertNull(MigrationCache.key(null, new ArrayList<String>(), new DatabaseInfo("Postgres", "", "9.6", new HashMap<String, String>()), Collections.singletonList(dsl)));
+	}
+}
@@ -0,0 +1,62 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.json.JSON;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PostgresScriptTest {
+
+	@Test
+	public void splitRespectsQuotingAndComments() {
+		final String sql = "/*MIGRATION_DESCRIPTION\n--CREATE: module\nMIGRATION_DESCRIPTION*/\n" +
+				"CREATE SCHEMA \"semi;colon\";\n" +
+				"-- comment; with semicolon\n" +
+				"INSERT INTO t VALUES ('a;b', 'it''s; fine', E'esc\\';aped');\n" +
+				"DO $$ BEGIN\n  PERFORM 1;\n  RAISE NOTICE 'x;y';\nEND $$ LANGUAGE plpgsql;\n" +
+				"CREATE FUNCTION f() RETURNS int AS $body$ SELECT 1; $body$ LANGUAGE sql;\n" +
+				"SELECT $1 /* nested /* comment; */ still; */ FROM t;\n" +
+				"SELECT 1";
+		final List<PostgresScript.Statement> statements = PostgresScript.split(sql);
+		assertEquals(6, statements.size());
+		assertEquals("CREATE SCHEMA \"semi;colon\"", statements.get(0).sql);
+		assertEquals(4, statements.get(0).line);
+		assertEquals("INSERT INTO t VALUES ('a;b', 'it''s; fine', E'esc\\';aped')", statements.get(1).sql);
+		assertEquals(6, statements.get(1).line);
+		assertEquals("DO $$ BEGIN\n  PERFORM 1;\n  RAISE NOTICE 'x;y';\nEND $$ LANGUAGE plpgsql", statements.get(2).sql);
+		assertEquals(7, statements.get(2).line);
+		assertEquals("CREATE FUNCTION f() RETURNS int AS $body$ SELECT 1; $body$ LANGUAGE sql", statements.get(3).sql);
+		assertEquals(11, statements.get(3).line);
+		assertEquals("SELECT $1 /* nested /* comment; */ still; */ FROM t", statements.get(4).sql);
+		assertEquals("SELECT 1", statements.get(5).sql);
+		assertEquals(13, statements.get(5).line);
+	}
+
+	@Test
+	public void emptyScript() {
+		assertTrue(PostgresScript.split("  \n-- only comment\n/* and block */ ;\n").isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void reportIsValidJson() throws Exception {
+		final MigrationReport report = new MigrationReport("Postgres", 2);
+		report.add(new MigrationReport.Entry(1, 3, "CREATE TABLE \"x\"\n(\tid int)", 15, 0, 0, null, null));
+		report.add(new MigrationReport.Entry(2, 5, "UPDATE x SET id = 1", 2500, 42, 2000, "relation lock held by {123}", null));
+		report.finish("committed");
+		final byte[] json = report.toJson().getBytes("UTF-8");
+		final Map<String, Object> map = JSON.readMap(json, json.length);
+		assertEquals("committed", map.get("status"));
+		final List<Object> statements = (List<Object>) map.get("statements");
+		assertEquals(2, statements.size());
+		final Map<String, Object> second = (Map<String, Object>) statements.get(1);
+		assertEquals(42L, ((Number) second.get("rows")).longValue());
+		assertEquals(2000L, ((Number) second.get("lockWait")).longValue());
+		assertEquals("CREATE TABLE \"x\"\n(\tid int)", ((Map<String, Object>) statements.get(0)).get("sql"));
+		assertEquals(2515L, ((Number) map.get("duration")).longValue());
+		assertEquals(2, report.slowest().index);
+	}
+}
@@ -0,0 +1,76 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.*;
+import com.dslplatform.compiler.client.json.JSON;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ProfileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void disabledProfilingRecordsNothing() {
+		final ContextMock context = new ContextMock();
+		final Profiler.Span span = Profiler.start(context, "io", "discovery");
+		span.files(10).bytes(100).end();
+		assertNull(context.load(Profiler.KEY));
+		assertSame(span, Profiler.start(context, "io", "write sources"));
+		assertSame(span, Profiler.start(null, "io", "download"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void spansAreSavedAsTrace() throws Exception {
+		final File file = new File(folder.getRoot(), "out/profile.json");
+		final ContextMock context = new ContextMock();
+		context.put(Profile.INSTANCE, file.getAbsolutePath());
+		assertTrue(Profile.INSTANCE.check(context));
+		final Profiler profiler = context.load(Profiler.KEY);
+		assertNotNull(profiler);
+		Profiler.start(context, "io", "write sources").files(2).bytes(300).end();
+		Profiler.start(context, "io", "write sources").files(1).bytes(100).end();
+		final Profiler.Span compiler = Profiler.start(context, "compiler", "compiler round trip");
+		Thread.sleep(5);
+		compiler.bytes(1000).end();
+		compiler.end();
+		Profile.report(context);
+
+		assertTrue(file.exists());
+		final byte[] content = Utils.readFile(file).get().getBytes("UTF-8");
+		final Map<String, Object> trace = JSON.readMap(content, content.length);
+		final List<Map<String, Object>> events = (List<Map<String, Object>>) trace.get("traceEvents");
+		assertEquals(3, events.size());
+		final Map<String, Object> round = events.get(2);
+		assertEquals("compiler round trip", round.get("name"));
+		assertEquals("X", round.get("ph"));
+		assertTrue(((Number) round.get("dur")).longValue() >= 5000);
+		assertEquals(1000, ((Number) ((Map<String, Object>) round.get("args")).get("bytes")).intValue());
+
+		final List<String> table = Profile.toTable(profiler);
+		assertEquals(3, table.size());
+		assertTrue(table.get(0).startsWith("Span"));
+		assertTrue(table.get(1).startsWith("compiler round trip"));
+		assertTrue(table.get(2).matches("write sources\\s+2\\s+\\d+\\s+\\d+\\s+400\\s+3\\s+-?\\d+"));
+	}
+
+	@Test
+	public void directoryIsNotAllowed() throws Exception {
+		final ContextMock context = new ContextMock();
+		context.put(Profile.INSTANCE, folder.getRoot().getAbsolutePath());
+		try {
+			Profile.INSTANCE.check(context);
+			fail("Expecting exit");
+		} catch (ExitException ignore) {
+		}
+		assertTrue(context.error.startsWith("Profile path is a directory"));
+	}
+}
@@ -0,0 +1,157 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.Context;
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.ExitException;
+import com.dslplatform.compiler.client.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TenantsTest {
+
+	private static final String MIGRATION = "/*MIGRATION_DESCRIPTION\n--CREATE: A.B\nMIGRATION_DESCRIPTION*/\nCREATE TABLE b();";
+	private static final String DESTRUCTIVE = "/*MIGRATION_DESCRIPTION\n--REMOVE: A.C\nMIGRATION_DESCRIPTION*/\nDROP TABLE c;";
+
+	private File root;
+	private ContextMock context;
+	private final List<String> output = Collections.synchronizedList(new ArrayList<String>());
+
+	//previous DSL per database, with migration created from it and failures on load or apply
+	private static class StubDatabase implements Tenants.Database {
+		final Map<String, String> previous = new HashMap<String, String>();
+		final Map<String, String> migrations = new HashMap<String, String>();
+		final Set<String> failOnLoad = new HashSet<String>();
+		final Set<String> failOnApply = new HashSet<String>();
+		final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+		final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+
+		private static String database(final Context context) {
+			final String cs = context.get(PostgresConnection.INSTANCE);
+			return cs.substring(cs.indexOf('/') + 1, cs.indexOf('?'));
+		}
+
+		@Override
+		public DatabaseInfo load(final Context context) throws ExitException {
+			final String db = database(context);
+			if (failOnLoad.contains(db)) {
+				context.error("Connection refused");
+				throw new ExitException();
+			}
+			return new DatabaseInfo("Postgres", "1.0", "9.6", Collections.singletonMap("model.dsl", previous.get(db)));
+		}
+
+		@Override
+		public Either<String> migration(final Context context, final DatabaseInfo info, final List<File> dsls) {
+			final String dsl = info.dsl.get("model.dsl");
+			created.add(dsl);
+			return Either.success(migrations.get(dsl));
+		}
+
+		@Override
+		public void apply(final Context context, final String sql) throws ExitException {
+			final String db = database(context);
+			if (failOnApply.contains(db)) {
+				context.error("Lock timeout");
+				throw new ExitException();
+			}
+			applied.add(db);
+		}
+	}
+
+	@Before
+	public void setup() throws IOException {
+		root = new File(System.getProperty("java.io.tmpdir"), "tenants-test-" + UUID.randomUUID());
+		assertTrue(root.mkdirs());
+		context = new ContextMock() {
+			@Override
+			public void show(final String... values) {
+				Collections.addAll(output, values);
+			}
+		};
+		final File dsl = new File(root, "model.dsl");
+		Utils.saveFile(context, dsl, "module A { aggregate B; }");
+		context.put(DslPath.INSTANCE, dsl.getAbsolutePath());
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Utils.deletePath(root);
+		root.delete();
+	}
+
+	private static List<String> connections(final String... databases) {
+		final List<String> result = new ArrayList<String>();
+		for (final String db : databases) {
+			result.add("localhost/" + db + "?user=test");
+		}
+		return result;
+	}
+
+	private String report() {
+		final String[] files = root.list();
+		for (final String fn : files) {
+			if (fn.startsWith("tenants-report-")) {
+				return Utils.readFile(new File(root, fn)).get();
+			}
+		}
+		fail("Tenant report not found");
+		return null;
+	}
+
+	@Test
+	public void databasesAreGroupedAndFailuresIsolated() throws ExitException {
+		final StubDatabase database = new StubDatabase();
+		database.previous.put("db1", "module A;");
+		database.previous.put("db2", "module A;");
+		database.previous.put("db3", "module A { aggregate B; }");
+		database.previous.put("db4", "module A;");
+		database.previous.put("db5", "module A;");
+		database.migrations.put("module A;", MIGRATION);
+		database.migrations.put("module A { aggregate B; }", "");
+		database.failOnLoad.add("db4");
+		database.failOnApply.add("db5");
+		final int failed = Tenants.process(context, connections("db1", "db2", "db3", "db4", "db5"), root, true, database);
+		assertEquals(2, failed);
+		assertEquals(2, database.created.size());
+		assertEquals(new HashSet<String>(Arrays.asList("db1", "db2")), new HashSet<String>(database.applied));
+		assertTrue(output.contains("Found 2 distinct database version(s)"));
+		assertTrue(output.contains("3 of 5 databases processed successfully"));
+		final String report = report();
+		assertTrue(report.contains("{\"database\": \"localhost/db1\", \"group\": 1, \"status\": \"applied\""));
+		assertTrue(report.contains("{\"database\": \"localhost/db3\", \"group\": 2, \"status\": \"up to date\""));
+		assertTrue(report.contains("{\"database\": \"localhost/db4\", \"group\": 0, \"status\": \"failed\""));
+		assertTrue(report.contains("\"error\": \"Connection refused\"}"));
+		assertTrue(report.contains("\"error\": \"Lock timeout\"}"));
+	}
+
+	@Test
+	public void destructiveMigrationRequiresForce() throws ExitException {
+		final StubDatabase database = new StubDatabase();
+		database.previous.put("db1", "module A;");
+		database.migrations.put("module A;", DESTRUCTIVE);
+		assertEquals(1, Tenants.process(context, connections("db1"), root, true, database));
+		assertTrue(database.applied.isEmpty());
+		assertTrue(report().contains("Destructive migration detected"));
+		context.put(Force.INSTANCE, null);
+		assertEquals(0, Tenants.process(context, connections("db1"), root, true, database));
+		assertEquals(Collections.singletonList("db1"), database.applied);
+	}
+
+	@Test
+	public void migrationIsOnlyCreatedWithoutApply() throws ExitException {
+		final StubDatabase database = new StubDatabase();
+		database.previous.put("db1", "module A;");
+		database.migrations.put("module A;", DESTRUCTIVE);
+		assertEquals(0, Tenants.process(context, connections("db1"), root, false, database));
+		assertTrue(database.applied.isEmpty());
+		assertTrue(report().contains("\"status\": \"migration created\""));
+	}
+}
@@ -0,0 +1,81 @@
+package com.dslplatform.compiler.client.parameters;
+
+import com.dslplatform.compiler.client.ContextMock;
+import com.dslplatform.compiler.client.Either;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class VersionCheckTest {
+
+	private static final long LAST_MODIFIED = 1400000000000L;
+
+	private HttpServer server;
+	//version checks are cached by url between runs, so each test uses its own
+	private final String prefix = UUID.randomUUID().toString();
+	private final List<Integer> responses = Collections.synchronizedList(new ArrayList<Integer>());
+
+	@Before
+	public void setup() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final boolean notModified = "\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				exchange.getResponseHeaders().add("Last-Modified", "Tue, 13 May 2014 16:53:20 GMT");
+				final int code = notModified ? 304 : 200;
+				responses.add(code);
+				exchange.sendResponseHeaders(code, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void cleanup() {
+		server.stop(0);
+	}
+
+	private ContextMock context(final String ttl) {
+		final ContextMock context = new ContextMock();
+		context.put(Download.INSTANCE, "http://127.0.0.1:" + server.getAddress().getPort() + "/" + prefix + "/");
+		context.put(DownloadTtl.INSTANCE, ttl);
+		return context;
+	}
+
+	@Test
+	public void freshResultIsReused() {
+		final Either<Long> first = Download.lastModified(context("10"), "dsl-compiler", "DSL Platform", 0);
+		assertTrue(first.isSuccess());
+		assertEquals(LAST_MODIFIED, first.get().longValue());
+		final Either<Long> second = Download.lastModified(context("10"), "dsl-compiler", "DSL Platform", 0);
+		assertTrue(second.isSuccess());
+		assertEquals(LAST_MODIFIED, second.get().longValue());
+		assertEquals(1, responses.size());
+	}
+
+	@Test
+	public void staleResultIsRevalidated() {
+		assertTrue(Download.lastModified(context("0"), "dsl-compiler", "DSL Platform", 0).isSuccess());
+		final Either<Long> second = Download.lastModified(context("0"), "dsl-compiler", "DSL Platform", 0);
+		assertTrue(second.isSuccess());
+		assertEquals(LAST_MODIFIED, second.get().longValue());
+		assertEquals(2, responses.size());
+		assertEquals(Integer.valueOf(200), responses.get(0));
+		assertEquals(Integer.valueOf(304), responses.get(1));
+	}
+}
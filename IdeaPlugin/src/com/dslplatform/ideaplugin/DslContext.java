@@ -17,6 +17,10 @@ class DslContext extends Context {
 		}
 	}
 
+	public boolean isLogEnabled() {
+		return logger.isDebugEnabled();
+	}
+
 	public void log(String value) {
 		if (logger.isDebugEnabled()) {
 			logger.debug(value);
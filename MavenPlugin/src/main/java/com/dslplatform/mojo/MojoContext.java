@@ -73,6 +73,10 @@ class MojoContext extends Context {
 		}
 	}
 
+	public boolean isLogEnabled() {
+		return log.isDebugEnabled();
+	}
+
 	public void log(String value) {
 		if (log.isDebugEnabled()) {
 			log.debug(value);
@@ -3,6 +3,7 @@ package com.dslplatform.mojo;
 import com.dslplatform.compiler.client.CompileParameter;
 import com.dslplatform.compiler.client.Context;
 import com.dslplatform.compiler.client.Either;
+import com.dslplatform.compiler.client.FileSync;
 import com.dslplatform.compiler.client.Main;
 import com.dslplatform.compiler.client.parameters.*;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -81,25 +82,12 @@ abstract class Utils {
 	}
 
 	static void copyFolder(final File sources, final File target, final Context context) throws MojoExecutionException {
-		for (final String fn : sources.list()) {
-			final File sf = new File(sources, fn);
-			final File tf = new File(target, fn);
-			if (sf.isDirectory()) {
-				if (!tf.mkdirs() && !tf.exists()) {
-					String msg = "Failed to create target folder: " + tf.getAbsolutePath();
-					context.error(msg);
-					throw new MojoExecutionException(msg);
-				}
-				copyFolder(sf, tf, context);
-			} else {
-				final Either<String> content = com.dslplatform.compiler.client.Utils.readFile(sf);
-				if (!content.isSuccess()) {
-					String msg = "Error reading source file: " + sf.getAbsolutePath();
-					context.error(msg);
-					throw new MojoExecutionException(msg);
-				}
-				writeToFile(context, tf, content.get());
-			}
+		final Either<FileSync.Result> copy = FileSync.copyFolder(context, sources, target, false);
+		if (!copy.isSuccess()) {
+			String msg = "Error copying files from " + sources.getAbsolutePath() + " to " + target.getAbsolutePath();
+			context.error(msg);
+			context.error(copy.whyNot());
+			throw new MojoExecutionException(msg, copy.whyNot());
 		}
 	}
 
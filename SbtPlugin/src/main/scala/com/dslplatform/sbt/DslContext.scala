@@ -35,6 +35,8 @@ private[sbt] class DslContext(logger: Option[Logger]) extends Context {
     }
   }
 
+  override def isLogEnabled: Boolean = logger.isDefined
+
   override def log(value: String): Unit = {
     if (logger.isDefined) {
       if (inColor) {